@@ -0,0 +1,123 @@
+package ca.sfu.teambeta.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Ladder against the LinkedList copy-on-write version it replaced,
+ * for moving a pair, finding a pair's position, checking whether a pair is in the
+ * ladder and reading a position. Run with: gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LadderBenchmark {
+    @Param({"100", "1000", "10000"})
+    private int size;
+
+    private Ladder ladder;
+    private CopyOnWriteLadder copyOnWriteLadder;
+    private List<Pair> pairs;
+    private Random random;
+
+    // The Ladder as it was: every change copies the list into a new LinkedList
+    private static class CopyOnWriteLadder {
+        private List<Pair> pairs;
+
+        CopyOnWriteLadder(List<Pair> pairs) {
+            this.pairs = new LinkedList<>(pairs);
+        }
+
+        boolean removePair(Pair pair) {
+            List<Pair> newList = new LinkedList<>(pairs);
+            boolean success = newList.remove(pair);
+            pairs = newList;
+            return success;
+        }
+
+        void insertAtIndex(int index, Pair pair) {
+            List<Pair> newList = new LinkedList<>(pairs);
+            newList.add(index, pair);
+            pairs = newList;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        pairs = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player")));
+        }
+        ladder = new Ladder(pairs);
+        copyOnWriteLadder = new CopyOnWriteLadder(pairs);
+        random = new Random(42);
+    }
+
+    private Pair randomPair() {
+        return pairs.get(random.nextInt(size));
+    }
+
+    @Benchmark
+    public boolean moveIndexed() {
+        Pair pair = randomPair();
+        ladder.removePair(pair);
+        return ladder.insertAtIndex(random.nextInt(size), pair);
+    }
+
+    @Benchmark
+    public List<Pair> moveCopyOnWrite() {
+        Pair pair = randomPair();
+        copyOnWriteLadder.removePair(pair);
+        copyOnWriteLadder.insertAtIndex(random.nextInt(size), pair);
+        return copyOnWriteLadder.pairs;
+    }
+
+    @Benchmark
+    public int positionOfIndexed() {
+        return ladder.getPosition(randomPair());
+    }
+
+    @Benchmark
+    public int positionOfCopyOnWrite() {
+        return copyOnWriteLadder.pairs.indexOf(randomPair());
+    }
+
+    @Benchmark
+    public boolean containsIndexed() {
+        return ladder.contains(randomPair());
+    }
+
+    @Benchmark
+    public boolean containsCopyOnWrite() {
+        return copyOnWriteLadder.pairs.contains(randomPair());
+    }
+
+    @Benchmark
+    public Pair getAtIndexIndexed() {
+        return ladder.getPairAtIndex(random.nextInt(size));
+    }
+
+    @Benchmark
+    public Pair getAtIndexCopyOnWrite() {
+        return copyOnWriteLadder.pairs.get(random.nextInt(size));
+    }
+}
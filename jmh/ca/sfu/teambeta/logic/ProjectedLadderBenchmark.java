@@ -0,0 +1,87 @@
+package ca.sfu.teambeta.logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ca.sfu.teambeta.core.Ladder;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Penalty;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Scorecard;
+
+/**
+ * Times getting next week's ladder after one more group's results are in:
+ * reordering the whole GameSession again, against bringing a ProjectedLadder
+ * up to date. A few pairs have penalties.
+ * Run with: gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectedLadderBenchmark {
+    @Param({"100", "1000"})
+    private int pairCount;
+
+    private GameSession gameSession;
+    private VrcLadderReorderer reorderer;
+    private ProjectedLadder projection;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < pairCount; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), random.nextDouble() < 0.7));
+        }
+        gameSession = new GameSession(new Ladder(pairs));
+        gameSession.initializeActivePlayers();
+        gameSession.createGroups(new VrcScorecardGenerator(), new VrcTimeSelection());
+        for (int i = 0; i < 3; i++) {
+            gameSession.setPenaltyToPair(pairs.get(random.nextInt(pairCount)), Penalty.LATE);
+        }
+        reorderer = new VrcLadderReorderer();
+        projection = new ProjectedLadder(gameSession, reorderer);
+    }
+
+    @Benchmark
+    public List<Pair> reorderAgain() {
+        enterResults();
+        return gameSession.previewReorderedLadder(reorderer);
+    }
+
+    @Benchmark
+    public List<Pair> updateProjection() {
+        enterResults();
+        projection.update(gameSession);
+        return projection.getProjectedLadder();
+    }
+
+    private void enterResults() {
+        List<Scorecard> scorecards = gameSession.getScorecards();
+        Scorecard scorecard = scorecards.get(random.nextInt(scorecards.size()));
+        List<Pair> group = scorecard.getPairs();
+        int shift = random.nextInt(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            scorecard.setGameResults(group.get(i), (i + shift) % group.size() + 1);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ca.sfu.teambeta.logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.core.Time;
+
+/**
+ * Times assigning time slots to groups of three pairs, each pair choosing a
+ * random slot, with VrcTimeSelection and with OptimalTimeSelection. The gym has
+ * courts for every group, or when crowded for half of them.
+ * Run with: gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeSelectionBenchmark {
+    @Param({"100", "300", "600"})
+    private int groups;
+
+    @Param({"false", "true"})
+    private boolean crowded;
+
+    private List<Scorecard> scorecards;
+    private Map<Pair, Time> timeSlots;
+    private TimeSelection vrcTimeSelection;
+    private TimeSelection optimalTimeSelection;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        Time[] times = Time.values();
+        List<Pair> pairs = new ArrayList<>();
+        timeSlots = new HashMap<>();
+        for (int i = 0; i < groups * 3; i++) {
+            Pair pair = new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"));
+            pairs.add(pair);
+            timeSlots.put(pair, times[random.nextInt(times.length)]);
+        }
+        scorecards = new VrcScorecardGenerator().generateScorecards(pairs);
+
+        int slots = times.length - 1;
+        int courtsPerSlot = (crowded ? groups / 2 : groups) / slots;
+        vrcTimeSelection = new VrcTimeSelection(capacities(courtsPerSlot * 3));
+        optimalTimeSelection = new OptimalTimeSelection(courtsPerSlot);
+    }
+
+    private static Map<Time, Integer> capacities(int pairsPerSlot) {
+        Map<Time, Integer> capacities = new HashMap<>();
+        for (Time time : Time.values()) {
+            if (time != Time.NO_SLOT) {
+                capacities.put(time, pairsPerSlot);
+            }
+        }
+        return capacities;
+    }
+
+    @Benchmark
+    public List<Scorecard> vrc() {
+        vrcTimeSelection.distributePairs(scorecards, timeSlots);
+        return scorecards;
+    }
+
+    @Benchmark
+    public List<Scorecard> optimal() {
+        optimalTimeSelection.distributePairs(scorecards, timeSlots);
+        return scorecards;
+    }
+}
@@ -8,7 +8,10 @@ import com.google.gson.JsonParser;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -37,8 +40,11 @@ import ca.sfu.teambeta.core.exceptions.NoSuchUserException;
 import ca.sfu.teambeta.logic.GameSession;
 import ca.sfu.teambeta.logic.InputValidator;
 import ca.sfu.teambeta.logic.TimeManager;
-import ca.sfu.teambeta.logic.VrcTimeSelection;
+import ca.sfu.teambeta.persistence.ConnectionPoolMetrics;
 import ca.sfu.teambeta.persistence.DBManager;
+import ca.sfu.teambeta.persistence.LocalFirstReplicator;
+import ca.sfu.teambeta.persistence.RolloverJobs;
+import ca.sfu.teambeta.persistence.WriteBehindQueue;
 
 import static spark.Spark.before;
 import static spark.Spark.delete;
@@ -90,6 +96,7 @@ public class AppController {
     private static final int NOT_AUTHENTICATED = 401;
     private static final int SERVER_ERROR = 500;
     private static final int OK = 200;
+    private static final int ACCEPTED = 202;
     private static final String KEYSTORE_LOCATION = "testkeystore.jks";
     private static final String KEYSTORE_PASSWORD = "password";
     private static final String SESSION_TOKEN_KEY = "sessionToken";
@@ -97,6 +104,15 @@ public class AppController {
     private static Gson gson;
 
     public AppController(DBManager dbManager, CredentialsManager credentialsManager, int port, String staticFilePath) {
+        this(dbManager, credentialsManager, port, staticFilePath, null);
+    }
+
+    // Rollover jobs are kept in rolloverJobsFile, if given, so those a restart
+    // cuts short are run again
+    public AppController(DBManager dbManager, CredentialsManager credentialsManager, int port,
+                         String staticFilePath, Path rolloverJobsFile) {
+        final RolloverJobs rolloverJobs = new RolloverJobs(dbManager, rolloverJobsFile,
+                () -> TimeManager.getInstance().updateTime());
         final AccountDatabaseHandler accountDatabaseHandler = new AccountDatabaseHandler(dbManager);
         final AccountManager accountManager = new AccountManager(accountDatabaseHandler);
         port(port);
@@ -137,8 +153,8 @@ public class AppController {
 
         //homepage: return ladder
         get("/api/ladder", (request, response) -> {
-            String json = dbManager.getJSONLadder(dbManager.getGameSessionLatest());
-            if (!json.isEmpty()) {
+            byte[] json = dbManager.getCachedJSONLadder(DBManager.GameSessionVersion.CURRENT);
+            if (json != null && json.length > 0) {
                 return json;
             } else {
                 response.status(NOT_FOUND);
@@ -252,7 +268,7 @@ public class AppController {
                 int existingId = newPlayers.get(i).getExistingId();
                 if (existingId >= 0) {
                     newPlayers.remove(i);
-                    newPlayers.add(i, dbManager.getPlayerFromID(existingId));
+                    newPlayers.add(i, dbManager.getPlayerFromID(gameSession, existingId));
                 }
             }
 
@@ -290,23 +306,32 @@ public class AppController {
             return getOkResponse("");
         });
 
+        //Reorder the ladder, and start next week's if it is the latest, in the
+        //background; returns the job to poll for how far it has got
         post("/api/matches", ((request, response) -> {
             GameSession gameSession = getRequestedGameSession(dbManager,
                     request.queryParams(GAMESESSION));
-
-            dbManager.reorderLadder(gameSession);
-            dbManager.saveGameSession(gameSession);
-
-            if (request.queryParams(GAMESESSION).equals(GAMESESSION_LATEST)) {
-                GameSession newGameSession = dbManager.createNewGameSession(gameSession);
-                dbManager.saveGameSession(newGameSession);
+            if (gameSession == null) {
+                response.status(NOT_FOUND);
+                return getErrResponse("No such gameSession was found");
             }
 
-            //Update timeManager which enables ladder editing
-            TimeManager.getInstance().updateTime();
-            return getOkResponse("");
+            boolean startNextWeek = request.queryParams(GAMESESSION).equals(GAMESESSION_LATEST);
+            RolloverJobs.Job job = rolloverJobs.submit(gameSession.getID(), startNextWeek);
+            response.status(ACCEPTED);
+            return job.toJson();
         }));
 
+        get("/api/matches/rollover/:id", (request, response) -> {
+            RolloverJobs.Job job = rolloverJobs.getJob(request.params(ID));
+            if (job == null) {
+                response.status(NOT_FOUND);
+                return getErrResponse("No rollover was found with given id");
+            }
+            response.status(OK);
+            return job.toJson();
+        });
+
         //add a penalty to a pair
         post("/api/matches/:id", (request, response) -> {
             int id;
@@ -344,16 +369,19 @@ public class AppController {
 
         //Show a list of matches
         get("/api/matches", (request, response) -> {
-            GameSession gameSession = getRequestedGameSession(dbManager,
-                    request.queryParams(GAMESESSION));
-            if (gameSession == null) {
+            DBManager.GameSessionVersion version =
+                    getRequestedGameSessionVersion(request.queryParams(GAMESESSION));
+            byte[] json = null;
+            if (version != null) {
+                json = dbManager.getCachedJSONScorecards(version);
+            }
+            if (json == null) {
                 response.status(OK);
                 return "[]";
             }
 
-            String json = dbManager.getJSONScorecards(gameSession);
-            final String EMPTY_JSON_ARRAY = "[]";
-            if (!json.equals(EMPTY_JSON_ARRAY)) {
+            final byte[] EMPTY_JSON_ARRAY = "[]".getBytes(StandardCharsets.UTF_8);
+            if (!Arrays.equals(json, EMPTY_JSON_ARRAY)) {
                 response.status(OK);
                 return json;
             } else {
@@ -363,6 +391,46 @@ public class AppController {
             }
         });
 
+        //Show every pair's and player's rating
+        get("/api/ratings", (request, response) -> {
+            String json = dbManager.getJSONRatings();
+            if (json == null) {
+                response.status(NOT_FOUND);
+                return getErrResponse("No ladder was found");
+            }
+            response.status(OK);
+            return json;
+        });
+
+        //Rate every result again, in the background
+        post("/api/ratings/rebuild", (request, response) -> {
+            dbManager.requestRatingsRebuild();
+            response.status(ACCEPTED);
+            return getOkResponse("");
+        });
+
+        //Show what the ladder would be if the matches were reordered now,
+        //without reordering anything
+        get("/api/matches/preview", (request, response) -> {
+            String requestedGameSession = request.queryParams(GAMESESSION);
+            DBManager.GameSessionVersion version = requestedGameSession == null
+                    ? null : getRequestedGameSessionVersion(requestedGameSession);
+            if (version == null) {
+                response.status(BAD_REQUEST);
+                return getErrResponse("Must specify gameSession: latest or previous");
+            }
+
+            byte[] json = dbManager.getCachedJSONReorderPreview(version);
+            final byte[] EMPTY_JSON_ARRAY = "[]".getBytes(StandardCharsets.UTF_8);
+            if (json != null && !Arrays.equals(json, EMPTY_JSON_ARRAY)) {
+                response.status(OK);
+                return json;
+            } else {
+                response.status(NOT_FOUND);
+                return getErrResponse("No scorecards were found");
+            }
+        });
+
         //Input match results
         patch("/api/matches/:id", (request, response) -> {
             int id;
@@ -396,15 +464,14 @@ public class AppController {
                 return getErrResponse(ID_NOT_INT);
             }
 
-            if (!InputValidator.checkPairExists(dbManager, id)) {
-                response.status(NOT_FOUND);
-                return getErrResponse(PAIR_NOT_FOUND);
-            }
-
             GameSession gameSession = getRequestedGameSession(dbManager,
                     request.queryParams(GAMESESSION));
 
             if (!InputValidator.checkPairActive(dbManager, gameSession, id)) {
+                if (!InputValidator.checkPairExists(dbManager, id)) {
+                    response.status(NOT_FOUND);
+                    return getErrResponse(PAIR_NOT_FOUND);
+                }
                 response.status(BAD_REQUEST);
                 return getErrResponse("The pair is not on the scorecard " + id);
             }
@@ -586,6 +653,25 @@ public class AppController {
             return getOkResponse("Security question set.");
         });
 
+        //the pair a player is playing in this week
+        get("/api/players/:id/pair", (request, response) -> {
+            int id;
+            try {
+                id = Integer.parseInt(request.params(ID));
+            } catch (Exception e) {
+                response.status(BAD_REQUEST);
+                return getErrResponse(ID_NOT_INT);
+            }
+
+            GameSession gameSession = dbManager.getGameSessionLatest();
+            Pair pair = gameSession == null ? null : dbManager.getActivePairOfPlayer(gameSession, id);
+            if (pair == null) {
+                response.status(NOT_FOUND);
+                return getErrResponse("Player " + id + " is not playing");
+            }
+            return gson.toJson(pair);
+        });
+
         //Set time to a pair and dynamically assign times to scorecards.
         patch("/api/ladder/time/:id", (request, response) -> {
             if (TimeManager.getInstance().isExpired()) {
@@ -600,7 +686,8 @@ public class AppController {
                 return getErrResponse(ID_NOT_INT);
             }
 
-            if (!InputValidator.checkPairExists(dbManager, id)) {
+            if (!InputValidator.checkPairExists(dbManager,
+                    dbManager.getGameSessionLatest(), id)) {
                 response.status(NOT_FOUND);
                 return getErrResponse(PAIR_NOT_FOUND + id);
             }
@@ -617,10 +704,6 @@ public class AppController {
                 dbManager.setTimeSlot(id, Time.NO_SLOT);
             }
 
-            GameSession gameSession = dbManager.getGameSessionLatest();
-            VrcTimeSelection timeSelector = new VrcTimeSelection();
-            timeSelector.distributePairs(gameSession.getScorecards(), gameSession.getTimeSlots());
-            dbManager.persistEntity(gameSession);
             return getOkResponse("");
 
         });
@@ -655,6 +738,44 @@ public class AppController {
             return getOkResponse("");
         });
 
+        //connection pool statistics, used to size hibernate.connection.pool_size
+        get("/api/metrics/pool", (request, response) -> {
+            ConnectionPoolMetrics metrics = dbManager.getConnectionPoolMetrics();
+            if (metrics == null) {
+                response.status(NOT_FOUND);
+                return getErrResponse("Connection pool metrics are not available");
+            }
+            return metrics.toJson();
+        });
+
+        //hit and miss counts for the cached /api/ladder and /api/matches responses
+        get("/api/metrics/cache", (request, response) ->
+                dbManager.getResponseCache().toJson());
+
+        //second-level cache hits and misses for players, pairs and users
+        get("/api/metrics/second-level-cache", (request, response) ->
+                dbManager.getSecondLevelCacheMetrics().toJson());
+
+        //queue depth and flush latency, when status and time slot changes are written behind
+        get("/api/metrics/write-behind", (request, response) -> {
+            WriteBehindQueue queue = dbManager.getWriteBehindQueue();
+            if (queue == null) {
+                response.status(NOT_FOUND);
+                return getErrResponse("Write-behind is not enabled");
+            }
+            return queue.toJson();
+        });
+
+        //how far the production database is behind, when running local-first
+        get("/api/metrics/replication", (request, response) -> {
+            LocalFirstReplicator replicator = dbManager.getReplicator();
+            if (replicator == null) {
+                response.status(NOT_FOUND);
+                return getErrResponse("Replication is not enabled");
+            }
+            return replicator.toJson();
+        });
+
         exception(Exception.class, (exception, request, response) -> {
             exception.printStackTrace();
             response.status(SERVER_ERROR);
@@ -662,6 +783,17 @@ public class AppController {
         });
     }
 
+    private DBManager.GameSessionVersion getRequestedGameSessionVersion(
+            String requestedGameSession) {
+        if (requestedGameSession.equals(GAMESESSION_LATEST)) {
+            return DBManager.GameSessionVersion.CURRENT;
+        } else if (requestedGameSession.equals(GAMESESSION_PREVIOUS)) {
+            return DBManager.GameSessionVersion.PREVIOUS;
+        } else {
+            return null;
+        }
+    }
+
     private GameSession getRequestedGameSession(DBManager dbManager, String requestedGameSession) {
         if (requestedGameSession.equals(GAMESESSION_LATEST)) {
             return dbManager.getGameSessionLatest();
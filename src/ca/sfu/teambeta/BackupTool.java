@@ -0,0 +1,48 @@
+package ca.sfu.teambeta;
+
+import org.hibernate.SessionFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import ca.sfu.teambeta.persistence.DBManager;
+
+// Copies the production database to a binary snapshot, or back into an empty one:
+//   java -cp vrc-project.jar ca.sfu.teambeta.BackupTool backup|restore <file>
+public class BackupTool {
+    private static final String BACKUP = "backup";
+    private static final String RESTORE = "restore";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 || !(args[0].equals(BACKUP) || args[0].equals(RESTORE))) {
+            System.out.println("Usage: BackupTool backup|restore <file>");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[1]);
+
+        boolean succeeded;
+        SessionFactory sessionFactory = DBManager.getProductionSession();
+        try {
+            DBManager dbManager = new DBManager(sessionFactory);
+            if (args[0].equals(BACKUP)) {
+                dbManager.writeBinarySnapshot(file);
+                System.out.println("Wrote " + Files.size(file) + " bytes to " + file);
+                succeeded = true;
+            } else {
+                try (InputStream in = Files.newInputStream(file)) {
+                    succeeded = dbManager.restoreBinarySnapshot(in);
+                }
+                System.out.println(succeeded ? "Restored " + file
+                        : "Nothing restored: the database isn't empty");
+            }
+        } finally {
+            sessionFactory.close();
+        }
+        if (!succeeded) {
+            System.exit(1);
+        }
+    }
+}
@@ -2,21 +2,150 @@ package ca.sfu.teambeta;
 
 import org.hibernate.SessionFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 import ca.sfu.teambeta.accounts.AccountDatabaseHandler;
 import ca.sfu.teambeta.accounts.CredentialsManager;
+import ca.sfu.teambeta.logic.OptimalTimeSelection;
 import ca.sfu.teambeta.persistence.DBManager;
+import ca.sfu.teambeta.persistence.LadderJournal;
 
 // Entry Point for Program when executing via a jar file
 // Do not call me via the IDE!
 public class JarEntry {
+    static final String LADDER_JOURNAL_DIR = "ladder-journal";
+    // Set to have status and time slot changes committed in the background
+    private static final String WRITE_BEHIND_ENV_VAR = "WRITE_BEHIND";
+    private static final int WRITE_BEHIND_CAPACITY = 1000;
+    private static final int WRITE_BEHIND_BATCH_SIZE = 50;
+    private static final long WRITE_BEHIND_MAX_DELAY_MILLIS = 200;
+    // Everything in the database, written every few minutes and on shutdown,
+    // and read at startup to serve the ladder before the database is first read
+    static final String BINARY_SNAPSHOT_FILE = "vrc-snapshot.bin";
+    private static final long BINARY_SNAPSHOT_PERIOD_MINUTES = 15;
+    // How often the first read of the database is tried again while it can't
+    // be reached
+    private static final long DATABASE_RETRY_MILLIS = 5000;
+    // Set to read and write an embedded database on this host, and have every
+    // change copied on to the production database in the background
+    private static final String LOCAL_FIRST_ENV_VAR = "LOCAL_FIRST";
+    // Optional, with LOCAL_FIRST: delays every round trip to the production
+    // database by this many milliseconds
+    private static final String REMOTE_LATENCY_ENV_VAR = "REMOTE_LATENCY_MILLIS";
+    private static final long REPLICATION_RETRY_MILLIS = 5000;
+    // Set to the number of courts in each time slot to have groups placed on
+    // courts, missing as few pairs' time slots as possible
+    private static final String OPTIMAL_TIME_SLOTS_ENV_VAR = "OPTIMAL_TIME_SLOTS";
+    // Weekly rollovers asked for and how far each got, so any cut short are
+    // run again on the next start
+    static final String ROLLOVER_JOBS_FILE = "rollover-jobs.json";
+
     public static void main(String[] args) {
-        SessionFactory sessionFactory = DBManager.getProductionSession();
+        boolean localFirst = System.getenv(LOCAL_FIRST_ENV_VAR) != null;
+        SessionFactory sessionFactory = localFirst
+                ? DBManager.getLocalSession() : DBManager.getProductionSession();
         DBManager dbManager = new DBManager(sessionFactory);
+        String courtsPerSlot = System.getenv(OPTIMAL_TIME_SLOTS_ENV_VAR);
+        if (courtsPerSlot != null) {
+            dbManager.setTimeSelection(
+                    new OptimalTimeSelection(Integer.parseInt(courtsPerSlot)));
+        }
+        // Before anything reads the database, which may not be reachable yet
+        Path snapshotFile = Paths.get(BINARY_SNAPSHOT_FILE);
+        warmFromSnapshot(dbManager, snapshotFile);
+        try {
+            dbManager.setLadderJournal(new LadderJournal(Paths.get(LADDER_JOURNAL_DIR)));
+        } catch (IOException e) {
+            // The database is the source of truth; run without the audit trail
+            e.printStackTrace();
+        }
+        if (System.getenv(WRITE_BEHIND_ENV_VAR) != null) {
+            dbManager.enableWriteBehind(WRITE_BEHIND_CAPACITY, WRITE_BEHIND_BATCH_SIZE,
+                    WRITE_BEHIND_MAX_DELAY_MILLIS);
+        }
+        if (localFirst) {
+            String latency = System.getenv(REMOTE_LATENCY_ENV_VAR);
+            Supplier<SessionFactory> remote = latency == null
+                    ? DBManager::getProductionSession
+                    : () -> DBManager.getProductionSession(Long.parseLong(latency));
+            dbManager.enableReplication(remote, REPLICATION_RETRY_MILLIS);
+        }
+        readDatabaseInBackground(dbManager);
+
+        ScheduledExecutorService snapshotWriter = Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+                    Thread thread = new Thread(runnable, "binary-snapshot-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        snapshotWriter.scheduleWithFixedDelay(() -> writeSnapshot(dbManager, snapshotFile),
+                BINARY_SNAPSHOT_PERIOD_MINUTES, BINARY_SNAPSHOT_PERIOD_MINUTES, TimeUnit.MINUTES);
+        // Commit whatever is still queued before the JVM exits, so the last
+        // snapshot and the production database have it too
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            snapshotWriter.shutdownNow();
+            if (!dbManager.disableWriteBehind()) {
+                System.err.println("Write-behind queue not committed; "
+                        + dbManager.getWriteBehindQueue().getDepth() + " changes lost");
+            }
+            dbManager.disableReplication();
+            writeSnapshot(dbManager, snapshotFile);
+        }));
 
         AccountDatabaseHandler accountDatabaseHandler = new AccountDatabaseHandler(dbManager);
         CredentialsManager credentialsManager = new CredentialsManager(accountDatabaseHandler);
 
         AppController appController = new AppController(dbManager, credentialsManager, AppController.JAR_SERVER_PORT,
-                AppController.JAR_STATIC_HTML_PATH);
+                AppController.JAR_STATIC_HTML_PATH, Paths.get(ROLLOVER_JOBS_FILE));
+    }
+
+    // The warm state is only served until the database has been read. Reading
+    // the file only needs the entity mapping, not a connection.
+    private static void warmFromSnapshot(DBManager dbManager, Path snapshotFile) {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(snapshotFile)) {
+            dbManager.warmReadModel(dbManager.readBinarySnapshot(in));
+        } catch (IOException e) {
+            // Stale or unreadable; the read model is built from the database as usual
+            e.printStackTrace();
+        }
+    }
+
+    // The first reads of the database, made in the background so starting up
+    // doesn't wait on it, and tried again until it can be reached
+    private static void readDatabaseInBackground(DBManager dbManager) {
+        Thread reader = new Thread(() -> {
+            while (!dbManager.refreshReadModel()) {
+                try {
+                    Thread.sleep(DATABASE_RETRY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            // Results from before ratings were kept, or from a database copied in
+            if (dbManager.getRatings().isEmpty()) {
+                dbManager.requestRatingsRebuild();
+            }
+        }, "read-model-refresh");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private static void writeSnapshot(DBManager dbManager, Path snapshotFile) {
+        try {
+            dbManager.writeBinarySnapshot(snapshotFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 }
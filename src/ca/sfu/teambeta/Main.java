@@ -9,6 +9,9 @@ import ca.sfu.teambeta.accounts.AccountManager;
 import ca.sfu.teambeta.logic.GameSession;
 import ca.sfu.teambeta.persistence.CSVReader;
 import ca.sfu.teambeta.persistence.DBManager;
+import ca.sfu.teambeta.persistence.LadderJournal;
+
+import java.nio.file.Paths;
 
 class Main {
     public static void main(String[] args) throws Exception {
@@ -16,6 +19,8 @@ class Main {
         if (args.length > 0 && args[0].equals("production")) {
             SessionFactory sessionFactory = DBManager.getProductionSession();
             dbManager = new DBManager(sessionFactory);
+            dbManager.setLadderJournal(
+                    new LadderJournal(Paths.get(JarEntry.LADDER_JOURNAL_DIR)));
         } else {
             Ladder newLadder = null;
             try {
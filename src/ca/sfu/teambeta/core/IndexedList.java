@@ -0,0 +1,336 @@
+package ca.sfu.teambeta.core;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * List kept in a balanced tree (a treap ordered by position), so reading, inserting
+ * or removing at any index takes O(log n) instead of the O(n) of an ArrayList or a
+ * LinkedList. The first lookup by value also indexes every element by value, after
+ * which contains, indexOf and remove(Object) take O(log n) as well.
+ * <p>
+ * Elements must not change their hashCode while they are in the list. Null
+ * elements and duplicates are allowed, but looking them up falls back to a scan.
+ */
+public class IndexedList<E> extends AbstractList<E> {
+    private Node<E> root;
+    // Built on the first lookup by value and kept up to date from then on;
+    // null while not built, or while the list holds duplicates. Volatile as
+    // lists shared between threads for reading can build it from any of them.
+    private volatile Map<E, Node<E>> index;
+    // Set once the list is found to hold duplicates, so lookups go straight to
+    // a scan instead of trying to build the index each time. Only a change that
+    // takes an element out can end that, so those clear it.
+    private volatile boolean hasDuplicates = false;
+    private int seed = 0x2545F491;
+
+    private static class Node<E> {
+        private E value;
+        private final int priority;
+        private Node<E> left;
+        private Node<E> right;
+        private Node<E> parent;
+        private int size = 1;
+
+        Node(E value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    public IndexedList() {
+    }
+
+    public IndexedList(Collection<? extends E> elements) {
+        addAll(elements);
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public E get(int position) {
+        return nodeAt(position).value;
+    }
+
+    @Override
+    public E set(int position, E element) {
+        Node<E> node = nodeAt(position);
+        E old = node.value;
+        unindex(node);
+        node.value = element;
+        hasDuplicates = false;
+        index(node);
+        return old;
+    }
+
+    @Override
+    public void add(int position, E element) {
+        if (position < 0 || position > size()) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size());
+        }
+        Node<E> node = new Node<>(element, nextPriority());
+        Node<E>[] parts = split(root, position);
+        setRoot(merge(merge(parts[0], node), parts[1]));
+        index(node);
+        modCount++;
+    }
+
+    @Override
+    public E remove(int position) {
+        Node<E> node = nodeAt(position);
+        Node<E>[] parts = split(root, position);
+        Node<E>[] rest = split(parts[1], 1);
+        setRoot(merge(parts[0], rest[1]));
+        unindex(node);
+        hasDuplicates = false;
+        modCount++;
+        return node.value;
+    }
+
+    @Override
+    public boolean remove(Object element) {
+        int position = indexOf(element);
+        if (position < 0) {
+            return false;
+        }
+        remove(position);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return indexOf(element) >= 0;
+    }
+
+    @Override
+    public int indexOf(Object element) {
+        Map<E, Node<E>> built = element == null ? null : buildIndex();
+        if (built == null) {
+            return super.indexOf(element);
+        }
+        Node<E> node = built.get(element);
+        return node == null ? -1 : positionOf(node);
+    }
+
+    @Override
+    public int lastIndexOf(Object element) {
+        if (element == null || buildIndex() == null) {
+            return super.lastIndexOf(element);
+        }
+        return indexOf(element);
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        hasDuplicates = false;
+        if (index != null) {
+            index = new HashMap<>();
+        }
+        modCount++;
+    }
+
+    // Walks the tree in order rather than looking up each position
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private Node<E> next = first(root);
+            private int position = 0;
+            private boolean canRemove = false;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                checkForComodification();
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                E value = next.value;
+                next = successor(next);
+                position++;
+                canRemove = true;
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                checkForComodification();
+                IndexedList.this.remove(--position);
+                canRemove = false;
+                expectedModCount = modCount;
+            }
+
+            private void checkForComodification() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+        };
+    }
+
+    private Node<E> nodeAt(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size());
+        }
+        Node<E> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (position < leftSize) {
+                node = node.left;
+            } else if (position == leftSize) {
+                return node;
+            } else {
+                position -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private static int positionOf(Node<?> node) {
+        int position = size(node.left);
+        while (node.parent != null) {
+            if (node == node.parent.right) {
+                position += size(node.parent.left) + 1;
+            }
+            node = node.parent;
+        }
+        return position;
+    }
+
+    // Returns null if the list holds duplicates
+    private Map<E, Node<E>> buildIndex() {
+        Map<E, Node<E>> built = index;
+        if (built != null || hasDuplicates) {
+            return built;
+        }
+        built = new HashMap<>();
+        for (Node<E> node = first(root); node != null; node = successor(node)) {
+            if (node.value == null) {
+                continue;
+            }
+            if (built.putIfAbsent(node.value, node) != null) {
+                hasDuplicates = true;
+                return null;
+            }
+        }
+        index = built;
+        return built;
+    }
+
+    private void index(Node<E> node) {
+        Map<E, Node<E>> built = index;
+        if (built != null && node.value != null && built.putIfAbsent(node.value, node) != null) {
+            index = null;
+            hasDuplicates = true;
+        }
+    }
+
+    private void unindex(Node<E> node) {
+        Map<E, Node<E>> built = index;
+        if (built != null && node.value != null) {
+            built.remove(node.value, node);
+        }
+    }
+
+    // Splits a tree into its first count elements and the rest
+    @SuppressWarnings("unchecked")
+    private static <E> Node<E>[] split(Node<E> tree, int count) {
+        if (tree == null) {
+            return (Node<E>[]) new Node[2];
+        }
+        Node<E>[] parts;
+        if (count <= size(tree.left)) {
+            parts = split(tree.left, count);
+            tree.left = parts[1];
+            parts[1] = tree;
+        } else {
+            parts = split(tree.right, count - size(tree.left) - 1);
+            tree.right = parts[0];
+            parts[0] = tree;
+        }
+        update(tree);
+        return parts;
+    }
+
+    private static <E> Node<E> merge(Node<E> first, Node<E> second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            update(first);
+            return first;
+        }
+        second.left = merge(first, second.left);
+        update(second);
+        return second;
+    }
+
+    private static <E> void update(Node<E> node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        if (node.left != null) {
+            node.left.parent = node;
+        }
+        if (node.right != null) {
+            node.right.parent = node;
+        }
+    }
+
+    private void setRoot(Node<E> node) {
+        root = node;
+        if (node != null) {
+            node.parent = null;
+        }
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static <E> Node<E> first(Node<E> node) {
+        if (node == null) {
+            return null;
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private static <E> Node<E> successor(Node<E> node) {
+        if (node.right != null) {
+            return first(node.right);
+        }
+        while (node.parent != null && node == node.parent.right) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    // xorshift; the priorities only have to look random to keep the tree balanced
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+}
@@ -2,11 +2,10 @@ package ca.sfu.teambeta.core;
 
 import com.google.gson.annotations.Expose;
 
+import org.hibernate.annotations.CollectionType;
 import org.hibernate.annotations.Type;
 
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 
 import javax.persistence.CascadeType;
@@ -14,11 +13,14 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.ManyToMany;
 import javax.persistence.OrderColumn;
+import javax.persistence.Version;
 
 import ca.sfu.teambeta.persistence.Persistable;
 
 /**
- * Ladder ranking object. Contains a List of pairs to indicate the ranking of each pair
+ * Ladder ranking object. Contains a List of pairs to indicate the ranking of each pair.
+ * The List is an IndexedList, so changing, searching or reading a position of the
+ * ladder takes O(log n) however long it is.
  */
 @Entity(name = "Ladder")
 public class Ladder extends Persistable {
@@ -32,14 +34,18 @@ public class Ladder extends Persistable {
 
     @ManyToMany(cascade = CascadeType.ALL)
     @OrderColumn
+    @CollectionType(type = "ca.sfu.teambeta.persistence.IndexedListType")
     @Expose
     private List<Pair> pairs;
 
+    @Version
+    private int version;
+
     public Ladder() {
     }
 
     public Ladder(List<Pair> ladder) {
-        this.pairs = ladder;
+        this.pairs = ladder == null ? null : new IndexedList<>(ladder);
     }
 
     public boolean contains(Pair pair) {
@@ -47,54 +53,38 @@ public class Ladder extends Persistable {
     }
 
     //returns false if pair was not found
-    // Must create a new List and reassign to Pairs
-    // Hibernate may sometimes use an ImmutableList,
-    // so may cause exceptions when trying to remove
     public boolean removePair(Pair pair) {
-        List<Pair> newList = new LinkedList<>(pairs);
-        boolean success = newList.remove(pair);
-        pairs = newList;
+        boolean success = pairs.remove(pair);
         modifiedDate = new Date();
         return success;
     }
 
     public boolean insertAtIndex(int index, Pair pair) {
-        List<Pair> newList;
         if (pairs == null) {
-            newList = new ArrayList<Pair>() {
-                {
-                    add(pair);
-                }
-            };
-            pairs = newList;
+            pairs = new IndexedList<>();
+            pairs.add(pair);
+        } else if (0 <= index && index <= pairs.size()) {
+            pairs.add(index, pair);
         } else {
-            newList = new LinkedList<>(pairs);
-
-            if (0 <= index && index <= pairs.size()) {
-                newList.add(index, pair);
-                pairs = newList;
-            } else {
-                return false;
-            }
+            return false;
         }
         modifiedDate = new Date();
         return true;
     }
 
     public void insertAtEnd(Pair pair) {
-        List<Pair> newList;
-
         if (pairs == null) {
-            newList = new ArrayList<>();
-        } else {
-            newList = new LinkedList<>(pairs);
+            pairs = new IndexedList<>();
         }
-
-        newList.add(pair);
-        pairs = newList;
+        pairs.add(pair);
         modifiedDate = new Date();
     }
 
+    // Returns -1 if the pair is not in the ladder
+    public int getPosition(Pair pair) {
+        return pairs.indexOf(pair);
+    }
+
     public List<Pair> getPairs() {
         return pairs;
     }
@@ -109,7 +99,7 @@ public class Ladder extends Persistable {
 
     // DO NOT USE ME!! Unless you are specifically dealing with manual override
     public void setNewPairs(List<Pair> newPairList) {
-        pairs = newPairList;
+        pairs = new IndexedList<>(newPairList);
         modifiedDate = new Date();
     }
 
@@ -117,6 +107,10 @@ public class Ladder extends Persistable {
         return modifiedDate;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
     @Override
     public boolean equals(Object other) {
         if (this == other) {
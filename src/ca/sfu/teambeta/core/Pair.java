@@ -5,14 +5,20 @@ package ca.sfu.teambeta.core;
 
 import com.google.gson.annotations.Expose;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Type;
 
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Embeddable;
@@ -28,9 +34,12 @@ import ca.sfu.teambeta.persistence.Persistable;
  */
 @Entity(name = "Pair")
 @Embeddable
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pair")
 public class Pair extends Persistable {
 
     @ManyToMany(cascade = CascadeType.ALL)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pair.players")
     @Expose
     private Set<Player> players = new HashSet<>();
     @Column(name = "date_created")
@@ -45,6 +54,18 @@ public class Pair extends Persistable {
     @Expose
     private int pairScore;
 
+    // Identity key: the players' UUIDs, lowest first, so comparing and hashing
+    // pairs doesn't walk the Set. Taken once the Set is complete and kept until
+    // it is replaced, as Hibernate does when it saves a pair.
+    @Transient
+    private Set<Player> keyedPlayers;
+    @Transient
+    private UUID firstKey;
+    @Transient
+    private UUID secondKey;
+    @Transient
+    private int keyHash;
+
     public Pair() {
     }
 
@@ -71,8 +92,7 @@ public class Pair extends Persistable {
     }
 
     public boolean hasPlayer(Player searchPlayer) {
-        return (getPlayers().get(0).equals(searchPlayer)
-                || getPlayers().get(1).equals(searchPlayer));
+        return players.contains(searchPlayer);
     }
 
     @Override
@@ -85,18 +105,54 @@ public class Pair extends Persistable {
         }
 
         Pair otherPair = (Pair) other;
-
-        return players.equals(otherPair.players);
+        updateKey();
+        otherPair.updateKey();
+        return keyHash == otherPair.keyHash
+                && Objects.equals(firstKey, otherPair.firstKey)
+                && Objects.equals(secondKey, otherPair.secondKey);
     }
 
     @Override
     public int hashCode() {
-        return getPlayers().hashCode();
+        updateKey();
+        return keyHash;
+    }
+
+    private void updateKey() {
+        if (keyedPlayers == players) {
+            return;
+        }
+        UUID first = null;
+        UUID second = null;
+        for (Player player : players) {
+            UUID uuid = player.getUuid();
+            if (first == null || uuid.compareTo(first) < 0) {
+                second = first;
+                first = uuid;
+            } else {
+                second = uuid;
+            }
+        }
+        firstKey = first;
+        secondKey = second;
+        keyHash = 31 * Objects.hashCode(first) + Objects.hashCode(second);
+        // A Set Hibernate loads is handed over empty and filled in place, so the
+        // key is only kept once Hibernate has marked it complete; walking a lazy
+        // one above has already loaded it
+        if (Hibernate.isInitialized(players)) {
+            keyedPlayers = players;
+        }
     }
 
     public String toString() {
-        return getPlayers().get(0).getFirstName()
-                + " & " + getPlayers().get(1).getFirstName();
+        StringBuilder names = new StringBuilder();
+        for (Player player : players) {
+            if (names.length() > 0) {
+                names.append(" & ");
+            }
+            names.append(player.getFirstName());
+        }
+        return names.toString();
     }
 
     public int getPairScore() {
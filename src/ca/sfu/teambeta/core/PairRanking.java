@@ -20,6 +20,13 @@ public class PairRanking extends Persistable {
         this.rank = rank;
     }
 
+    // Same row, but a rank set on the copy leaves the original untouched
+    PairRanking(PairRanking other) {
+        super(other);
+        this.pair = other.pair;
+        this.rank = other.rank;
+    }
+
     boolean hasPair(Pair pair) {
         return this.pair.equals(pair);
     }
@@ -3,8 +3,12 @@ package ca.sfu.teambeta.core;
 
 import com.google.gson.annotations.Expose;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import java.util.UUID;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.Transient;
 
@@ -14,6 +18,8 @@ import ca.sfu.teambeta.persistence.Persistable;
  * Created by Gordon Shieh on 25/05/16.
  */
 @Entity(name = "Player")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "player")
 public class Player extends Persistable {
     private UUID uuid = UUID.randomUUID();
     @Expose
@@ -32,6 +38,13 @@ public class Player extends Persistable {
         this.lastName = lastName;
     }
 
+    // For players made up from a seeded Random, so that everything hashed by
+    // player comes out in the same order from one run to the next
+    public Player(String firstName, String lastName, UUID uuid) {
+        this(firstName, lastName);
+        this.uuid = uuid;
+    }
+
     public String getFirstName() {
         return firstName;
     }
@@ -48,6 +61,12 @@ public class Player extends Persistable {
         this.lastName = lastName;
     }
 
+    // A player is the same player by its UUID alone, which is set once and saved
+    // with the row; names can be corrected without changing who it is
+    UUID getUuid() {
+        return uuid;
+    }
+
     @Override
     public boolean equals(Object other) {
         if (this == other) {
@@ -58,15 +77,12 @@ public class Player extends Persistable {
         }
 
         final Player otherPlayer = (Player) other;
-        return getFirstName().equals(otherPlayer.getFirstName())
-                && getLastName().equals(otherPlayer.getLastName())
-                && uuid.equals(otherPlayer.uuid);
+        return uuid.equals(otherPlayer.uuid);
     }
 
     @Override
     public int hashCode() {
-        return 23 * getFirstName().hashCode()
-                * getLastName().hashCode() + uuid.hashCode();
+        return uuid.hashCode();
     }
 
     public int getExistingId() {
@@ -0,0 +1,128 @@
+package ca.sfu.teambeta.core;
+
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+
+import ca.sfu.teambeta.persistence.Persistable;
+
+/**
+ * A pair's or a player's rating, in hundredths of a point, kept up to date as
+ * results come in. Whole hundredths add up to the same total in any order, so
+ * ratings changed one result at a time match ratings worked out again from
+ * every result.
+ * <p>
+ * Results are rated against the ratings everyone had when their GameSession
+ * started, so the rating from then is kept too; a result changed later in the
+ * same GameSession takes back exactly what it gave before.
+ */
+@Entity(name = "Rating")
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"ownerType", "ownerId"}))
+public class Rating extends Persistable {
+    public static final int INITIAL_RATING = 150000;
+
+    public enum OwnerType {
+        PAIR, PLAYER
+    }
+
+    private OwnerType ownerType;
+    private int ownerId;
+    private int rating = INITIAL_RATING;
+    // As it was when gameSessionId started
+    private int periodRating = INITIAL_RATING;
+    private int gameSessionId;
+    // Scorecards with results against at least one other pair
+    private int games;
+
+    @Version
+    private int version;
+
+    // Default constructor for Hibernate
+    public Rating() {
+    }
+
+    public Rating(OwnerType ownerType, int ownerId) {
+        this.ownerType = ownerType;
+        this.ownerId = ownerId;
+    }
+
+    // Identifies a pair's or player's rating in maps of them
+    public static long key(OwnerType ownerType, int ownerId) {
+        return ((long) ownerType.ordinal() << Integer.SIZE) | (ownerId & 0xffffffffL);
+    }
+
+    public long getKey() {
+        return key(ownerType, ownerId);
+    }
+
+    public OwnerType getOwnerType() {
+        return ownerType;
+    }
+
+    public int getOwnerId() {
+        return ownerId;
+    }
+
+    public int getRating() {
+        return rating;
+    }
+
+    public int getGames() {
+        return games;
+    }
+
+    public int getGameSessionId() {
+        return gameSessionId;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    // The rating results in the GameSession are worked out from
+    public int getPeriodRating(int gameSessionId) {
+        return this.gameSessionId == gameSessionId ? periodRating : rating;
+    }
+
+    // Before the first result of a GameSession with a greater id
+    public void startPeriod(int gameSessionId) {
+        if (this.gameSessionId != gameSessionId) {
+            periodRating = rating;
+            this.gameSessionId = gameSessionId;
+        }
+    }
+
+    public void addResults(int change, int games) {
+        rating += change;
+        this.games += games;
+    }
+
+    // Takes on other's values, keeping its own row and version
+    public void setTo(Rating other) {
+        rating = other.rating;
+        periodRating = other.periodRating;
+        gameSessionId = other.gameSessionId;
+        games = other.games;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || getClass() != other.getClass()) {
+            return false;
+        }
+
+        final Rating otherRating = (Rating) other;
+        return ownerType == otherRating.ownerType && ownerId == otherRating.ownerId
+                && rating == otherRating.rating && periodRating == otherRating.periodRating
+                && gameSessionId == otherRating.gameSessionId && games == otherRating.games;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * ownerType.hashCode() + ownerId;
+    }
+}
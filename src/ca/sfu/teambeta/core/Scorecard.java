@@ -12,6 +12,7 @@ import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.ManyToMany;
 import javax.persistence.OneToMany;
+import javax.persistence.Version;
 
 import ca.sfu.teambeta.persistence.Persistable;
 
@@ -29,6 +30,12 @@ public class Scorecard extends Persistable {
     private boolean isDone;
     @Expose
     private Time timeSlot;
+    // Numbered from 1 within the time slot; 0 until one is assigned
+    @Expose
+    private int court;
+
+    @Version
+    private int version;
 
     public Scorecard() {
 
@@ -40,6 +47,21 @@ public class Scorecard extends Persistable {
         this.isDone = false;
     }
 
+    // Same row, but time slot and result changes to the copy leave the
+    // original untouched
+    public Scorecard(Scorecard other) {
+        super(other);
+        this.pairRankings = new HashSet<>();
+        for (PairRanking ranking : other.pairRankings) {
+            this.pairRankings.add(new PairRanking(ranking));
+        }
+        this.pairs = new ArrayList<>(other.pairs);
+        this.isDone = other.isDone;
+        this.timeSlot = other.timeSlot;
+        this.court = other.court;
+        this.version = other.version;
+    }
+
     // PairRanking's hash code is the same as Pair, and as such only one
     // PairRanking can exist for each Pair in a Set
     public void setGameResults(Pair winner, int rank) {
@@ -78,6 +100,10 @@ public class Scorecard extends Persistable {
         return isDone;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
     @Override
     public String toString() {
         List<Pair> teams = this.getReorderedPairs();
@@ -115,4 +141,12 @@ public class Scorecard extends Persistable {
     public void setTimeSlot(Time timeSlot) {
         this.timeSlot = timeSlot;
     }
+
+    public int getCourt() {
+        return court;
+    }
+
+    public void setCourt(int court) {
+        this.court = court;
+    }
 }
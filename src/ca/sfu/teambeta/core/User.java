@@ -1,8 +1,12 @@
 package ca.sfu.teambeta.core;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import ca.sfu.teambeta.accounts.UserRole;
 import ca.sfu.teambeta.persistence.Persistable;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.OneToOne;
@@ -15,6 +19,8 @@ import javax.persistence.OneToOne;
  */
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "user")
 public class User extends Persistable {
     @Column(name = "email", unique = true)
     private String email;
@@ -2,6 +2,7 @@ package ca.sfu.teambeta.logic;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -15,10 +16,14 @@ import java.util.stream.Collectors;
 import javax.persistence.CascadeType;
 import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.ManyToMany;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.persistence.OrderColumn;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+import javax.persistence.Version;
 
 import ca.sfu.teambeta.core.Ladder;
 import ca.sfu.teambeta.core.Pair;
@@ -29,6 +34,7 @@ import ca.sfu.teambeta.core.Time;
 import ca.sfu.teambeta.persistence.Persistable;
 
 @Entity(name = "session")
+@Table(indexes = @Index(name = "session_timestamp_idx", columnList = "timestamp, id"))
 public class GameSession extends Persistable {
     @OneToOne(cascade = CascadeType.ALL)
     private Ladder ladder;
@@ -51,15 +57,82 @@ public class GameSession extends Persistable {
 
     private long timestamp;
 
+    // The last rollover to reorder this GameSession, committed with the reorder
+    // so that the same rollover run again can tell it has already been made
+    private String rolloverId;
+
+    // Checked on every write, so one made against a GameSession that has since
+    // been changed by another write fails instead of overwriting it
+    @Version
+    private int version;
+
+    // Moved on by every change to the ladder, to who is active, or to the
+    // groups, whether committed or not; results and penalties leave it be
+    private int lineupVersion;
+
+    // Set on graphs shared between requests through DBManager's read model.
+    // Those are never modified; writes against them go to a private copy.
+    @Transient
+    private boolean published = false;
+
+    // Built from activePairs when first needed and kept up to date by the
+    // methods below; built again if Hibernate replaces activePairs, which it
+    // does on load and on save, by when new pairs and players have their ids
+    @Transient
+    private volatile ActivePairIndex activePairIndex;
+
+    // Which pair each active player is in, by player and by player id, and
+    // which pair ids are active
+    private static final class ActivePairIndex {
+        private final Set<Pair> source;
+        private final Map<Player, Pair> pairsByPlayer = new HashMap<>();
+        private final Map<Integer, Pair> pairsByPlayerId = new HashMap<>();
+        private final BitSet activePairIds = new BitSet();
+
+        private ActivePairIndex(Set<Pair> source) {
+            this.source = source;
+            for (Pair pair : source) {
+                add(pair);
+            }
+        }
+
+        private void add(Pair pair) {
+            for (Player player : pair.getPlayers()) {
+                pairsByPlayer.put(player, pair);
+                if (player.getID() > 0) {
+                    pairsByPlayerId.put(player.getID(), pair);
+                }
+            }
+            if (pair.getID() > 0) {
+                activePairIds.set(pair.getID());
+            }
+        }
+
+        private void remove(Pair pair) {
+            for (Player player : pair.getPlayers()) {
+                pairsByPlayer.remove(player, pair);
+                pairsByPlayerId.remove(player.getID(), pair);
+            }
+            if (pair.getID() > 0) {
+                activePairIds.clear(pair.getID());
+            }
+        }
+    }
+
     // Default constructor for Hibernate
     public GameSession() {
         setTimestamp();
     }
 
     public GameSession(Ladder ladder) {
+        this(ladder, new VrcTimeSelection());
+    }
+
+    // Groups given time slots, and courts, by timeSelector
+    public GameSession(Ladder ladder, TimeSelection timeSelector) {
         this.ladder = ladder;
         initializeActivePlayers();
-        createGroups(new VrcScorecardGenerator(), new VrcTimeSelection());
+        createGroups(new VrcScorecardGenerator(), timeSelector);
         setTimestamp();
     }
 
@@ -71,28 +144,71 @@ public class GameSession extends Persistable {
         this.timestamp = timestamp;
     }
 
+    // A copy of the same GameSession that can be regrouped, or have pairs
+    // activated and time slots changed, without touching the original. The
+    // ladders and pairs are shared, so those must not be changed through it.
+    public GameSession(GameSession other) {
+        super(other);
+        this.ladder = other.ladder;
+        this.reorderedLadder = other.reorderedLadder;
+        this.activePairs = new HashSet<>(other.activePairs);
+        this.scorecards = new ArrayList<>();
+        for (Scorecard scorecard : other.scorecards) {
+            this.scorecards.add(new Scorecard(scorecard));
+        }
+        this.penalties = new HashMap<>(other.penalties);
+        this.timeSlots = new HashMap<>(other.timeSlots);
+        this.timestamp = other.timestamp;
+        this.rolloverId = other.rolloverId;
+        this.version = other.version;
+        this.lineupVersion = other.lineupVersion;
+    }
+
     private void setTimestamp() {
         this.timestamp = Instant.now().getEpochSecond();
     }
 
     // Use me ONLY for importing a CSV file!!
-    public void replaceLadder(Ladder ladder) {
+    public void replaceLadder(Ladder ladder, TimeSelection timeSelector) {
         this.ladder = ladder;
+        lineupVersion++;
         initializeActivePlayers();
         updatePairsLastWeekPositions();
-        createGroups(new VrcScorecardGenerator(), new VrcTimeSelection());
+        createGroups(new VrcScorecardGenerator(), timeSelector);
         setTimestamp();
     }
 
     public List<Scorecard> createGroups(ScorecardGenerator generator, TimeSelection timeSelector) {
         //Generate groups
         scorecards = generator.generateScorecards(getActivePairs());
+        lineupVersion++;
         //Set dominant time slots for each group
         timeSelector.distributePairs(scorecards, timeSlots);
 
         return Collections.unmodifiableList(scorecards);
     }
 
+    // Same groups as createGroups, for when a pair has just been activated or
+    // deactivated: scorecards whose group is unchanged are kept, and the list is
+    // changed in place, so only the changed positions are written back
+    public List<Scorecard> updateGroups(ScorecardGenerator generator, TimeSelection timeSelector) {
+        List<Scorecard> regrouped = generator.regenerateScorecards(scorecards, getActivePairs());
+        for (int i = 0; i < regrouped.size(); i++) {
+            if (i == scorecards.size()) {
+                scorecards.add(regrouped.get(i));
+            } else if (scorecards.get(i) != regrouped.get(i)) {
+                scorecards.set(i, regrouped.get(i));
+            }
+        }
+        while (scorecards.size() > regrouped.size()) {
+            scorecards.remove(scorecards.size() - 1);
+        }
+        lineupVersion++;
+        timeSelector.distributePairs(scorecards, timeSlots);
+
+        return Collections.unmodifiableList(scorecards);
+    }
+
     public List<Pair> getAllPairs() {
         return new LinkedList<>(ladder.getPairs());
     }
@@ -121,12 +237,23 @@ public class GameSession extends Persistable {
                 .collect(Collectors.toList());
     }
 
+    // So that ProjectedLadder can tell on every result whether more than results
+    // and penalties have changed, without comparing the whole GameSession
+    int getLineupVersion() {
+        return lineupVersion;
+    }
+
+    Map<Pair, Penalty> getPenaltyView() {
+        return Collections.unmodifiableMap(penalties);
+    }
+
     public List<Scorecard> getScorecards() {
         return Collections.unmodifiableList(scorecards);
     }
 
     public void setScorecards(List<Scorecard> scorecards) {
         this.scorecards = scorecards;
+        lineupVersion++;
     }
 
     public Ladder getReorderedLadder() {
@@ -136,7 +263,9 @@ public class GameSession extends Persistable {
     public boolean setPairActive(Pair pair) {
         try {
             if (getAlreadyActivePlayer(pair) == null) {
+                getActivePairIndex().add(pair);
                 activePairs.add(pair);
+                lineupVersion++;
                 timeSlots.put(pair, Time.NO_SLOT);
                 return true;
             } else {
@@ -148,7 +277,7 @@ public class GameSession extends Persistable {
     }
 
     public Player getAlreadyActivePlayer(Pair pair) throws Exception {
-        if (ladder.getPairs().contains(pair)) {
+        if (ladder.contains(pair)) {
             List<Player> team = pair.getPlayers();
             Player first = team.get(0);
             Player second = team.get(1);
@@ -165,7 +294,10 @@ public class GameSession extends Persistable {
     }
 
     public void setPairInactive(Pair pair) {
-        activePairs.remove(pair);
+        getActivePairIndex().remove(pair);
+        if (activePairs.remove(pair)) {
+            lineupVersion++;
+        }
     }
 
     public void setPenaltyToPair(Pair pair, Penalty penalty) {
@@ -177,16 +309,31 @@ public class GameSession extends Persistable {
     }
 
     public boolean isActivePair(Pair pair) {
-        List<Pair> activeList = getActivePairs();
-        boolean active = activeList.contains(pair);
+        return activePairs.contains(pair) && ladder.contains(pair);
+    }
+
+    public boolean isActivePair(int pairId) {
+        return pairId >= 0 && getActivePairIndex().activePairIds.get(pairId);
+    }
 
-        return active;
+    // Returns null if the player isn't in an active pair
+    public Pair getActivePair(Player player) {
+        return getActivePairIndex().pairsByPlayer.get(player);
+    }
+
+    // Returns null if no active pair has a player with this id
+    public Pair getActivePair(int playerId) {
+        return getActivePairIndex().pairsByPlayerId.get(playerId);
     }
 
     public void reorderLadder(LadderReorderer reorderer, TimeSelection timeSelector) {
+        reorderLadder(reorderer.reorder(getAllPairs(), scorecards, activePairs, penalties));
+    }
+
+    // Finishes a reorder whose order was already worked out, as by a
+    // ProjectedLadder. reorderedList must hold this GameSession's own pairs.
+    public void reorderLadder(List<Pair> reorderedList) {
         updatePairsLastWeekPositions();
-        List<Pair> reorderedList =
-                reorderer.reorder(getAllPairs(), scorecards, activePairs, penalties);
         if (reorderedLadder == null) {
             reorderedLadder = new Ladder(reorderedList);
         } else {
@@ -197,11 +344,21 @@ public class GameSession extends Persistable {
         }
     }
 
+    // The order reorderLadder would give the ladder, worked out on copies:
+    // nothing in this GameSession or its pairs changes, so it can be called on
+    // published GameSessions. Empty if there are no groups to reorder by.
+    public List<Pair> previewReorderedLadder(LadderReorderer reorderer) {
+        if (scorecards.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return reorderer.reorder(getAllPairs(), Collections.unmodifiableList(scorecards),
+                getActivePairSet(), new HashMap<>(penalties));
+    }
+
     private void updatePairsLastWeekPositions() {
-        List<Pair> pairList = this.ladder.getPairs();
-        for (int i = 0; i < pairList.size(); i++) {
-            Pair pair = pairList.get(i);
-            pair.setLastWeekPosition(i + 1);
+        int position = 1;
+        for (Pair pair : this.ladder.getPairs()) {
+            pair.setLastWeekPosition(position++);
         }
     }
 
@@ -210,6 +367,7 @@ public class GameSession extends Persistable {
         if (!pairExists) {
             newPair.setLastWeekPosition(index + 1);
             ladder.insertAtIndex(index, newPair);
+            lineupVersion++;
         }
         return pairExists;
     }
@@ -219,6 +377,7 @@ public class GameSession extends Persistable {
         if (!pairExists) {
             newPair.setLastWeekPosition(ladder.getLadderLength() + 1);
             ladder.insertAtEnd(newPair);
+            lineupVersion++;
         }
         return pairExists;
     }
@@ -228,9 +387,10 @@ public class GameSession extends Persistable {
     }
 
     public boolean removePairFromLadder(Pair pair) {
-        activePairs.remove(pair);
+        setPairInactive(pair);
         penalties.remove(pair);
         timeSlots.remove(pair);
+        lineupVersion++;
         return ladder.removePair(pair);
     }
 
@@ -247,12 +407,16 @@ public class GameSession extends Persistable {
     }
 
     private boolean searchActivePlayer(Player player) {
-        for (Pair current : activePairs) {
-            if (current.hasPlayer(player)) {
-                return true;
-            }
+        return getActivePairIndex().pairsByPlayer.containsKey(player);
+    }
+
+    private ActivePairIndex getActivePairIndex() {
+        ActivePairIndex index = activePairIndex;
+        if (index == null || index.source != activePairs) {
+            index = new ActivePairIndex(activePairs);
+            activePairIndex = index;
         }
-        return false;
+        return index;
     }
 
     public Scorecard getScorecardByIndex(int index) {
@@ -271,4 +435,32 @@ public class GameSession extends Persistable {
     public Map<Pair, Time> getTimeSlots() {
         return new HashMap<>(timeSlots);
     }
+
+    public Map<Pair, Penalty> getPenalties() {
+        return new HashMap<>(penalties);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getRolloverId() {
+        return rolloverId;
+    }
+
+    public void setRolloverId(String rolloverId) {
+        this.rolloverId = rolloverId;
+    }
+
+    public boolean isPublished() {
+        return published;
+    }
+
+    public void markPublished() {
+        published = true;
+    }
 }
@@ -147,7 +147,13 @@ public class InputValidator {
     }
 
     public static boolean checkPairExists(DBManager dbManager, int id) {
-        return dbManager.hasPairID(id);
+        return id > 0 && dbManager.hasPairID(id);
+    }
+
+    // Active pairs are found in gameSession's index, so only the others are
+    // looked up in the database
+    public static boolean checkPairExists(DBManager dbManager, GameSession gameSession, int id) {
+        return checkPairActive(dbManager, gameSession, id) || checkPairExists(dbManager, id);
     }
 
     public static boolean checkPairActive(DBManager dbManager, GameSession gameSession, int id) {
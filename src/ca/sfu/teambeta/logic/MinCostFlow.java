@@ -0,0 +1,114 @@
+package ca.sfu.teambeta.logic;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Minimum cost flow by successive shortest paths, with Dijkstra on costs
+ * reduced by node potentials. Edge costs must not be negative. Each augmenting
+ * path takes O(E log V), and there is one per unit of flow at most.
+ */
+final class MinCostFlow {
+    private final int nodeCount;
+    private int[] head;
+    private int[] next;
+    private int[] to;
+    private int[] capacity;
+    private long[] cost;
+    private int edgeCount = 0;
+
+    MinCostFlow(int nodeCount, int expectedEdges) {
+        this.nodeCount = nodeCount;
+        this.head = new int[nodeCount];
+        Arrays.fill(head, -1);
+        int size = Math.max(2, expectedEdges * 2);
+        this.next = new int[size];
+        this.to = new int[size];
+        this.capacity = new int[size];
+        this.cost = new long[size];
+    }
+
+    // Returns the edge's id, for getFlow
+    int addEdge(int from, int target, int edgeCapacity, long edgeCost) {
+        if (edgeCount + 2 > to.length) {
+            int size = to.length * 2;
+            next = Arrays.copyOf(next, size);
+            to = Arrays.copyOf(to, size);
+            capacity = Arrays.copyOf(capacity, size);
+            cost = Arrays.copyOf(cost, size);
+        }
+        int id = edgeCount;
+        link(from, target, edgeCapacity, edgeCost);
+        link(target, from, 0, -edgeCost);
+        return id;
+    }
+
+    private void link(int from, int target, int edgeCapacity, long edgeCost) {
+        to[edgeCount] = target;
+        capacity[edgeCount] = edgeCapacity;
+        cost[edgeCount] = edgeCost;
+        next[edgeCount] = head[from];
+        head[from] = edgeCount;
+        edgeCount++;
+    }
+
+    // The flow through an edge after solve, which is what its reverse edge holds
+    int getFlow(int edge) {
+        return capacity[edge ^ 1];
+    }
+
+    // Sends as much flow as fits from source to sink, at the lowest cost for
+    // that amount, and returns the amount
+    int solve(int source, int sink) {
+        long[] potential = new long[nodeCount];
+        long[] distance = new long[nodeCount];
+        int[] previousEdge = new int[nodeCount];
+        int flow = 0;
+
+        while (true) {
+            Arrays.fill(distance, Long.MAX_VALUE);
+            distance[source] = 0;
+            PriorityQueue<long[]> queue = new PriorityQueue<>(
+                    (first, second) -> Long.compare(first[0], second[0]));
+            queue.add(new long[] {0, source});
+            while (!queue.isEmpty()) {
+                long[] entry = queue.poll();
+                int node = (int) entry[1];
+                if (entry[0] > distance[node]) {
+                    continue;
+                }
+                for (int edge = head[node]; edge != -1; edge = next[edge]) {
+                    if (capacity[edge] == 0) {
+                        continue;
+                    }
+                    int target = to[edge];
+                    long reduced = distance[node] + cost[edge]
+                            + potential[node] - potential[target];
+                    if (reduced < distance[target]) {
+                        distance[target] = reduced;
+                        previousEdge[target] = edge;
+                        queue.add(new long[] {reduced, target});
+                    }
+                }
+            }
+            if (distance[sink] == Long.MAX_VALUE) {
+                return flow;
+            }
+            for (int node = 0; node < nodeCount; node++) {
+                if (distance[node] != Long.MAX_VALUE) {
+                    potential[node] += distance[node];
+                }
+            }
+
+            int pushed = Integer.MAX_VALUE;
+            for (int node = sink; node != source; node = to[previousEdge[node] ^ 1]) {
+                pushed = Math.min(pushed, capacity[previousEdge[node]]);
+            }
+            for (int node = sink; node != source; node = to[previousEdge[node] ^ 1]) {
+                capacity[previousEdge[node]] -= pushed;
+                capacity[previousEdge[node] ^ 1] += pushed;
+            }
+            flow += pushed;
+        }
+    }
+}
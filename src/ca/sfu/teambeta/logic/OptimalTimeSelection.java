@@ -0,0 +1,223 @@
+package ca.sfu.teambeta.logic;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.core.Time;
+
+/**
+ * OptimalTimeSelection places every group on a court in a time slot, so that
+ * as few pairs as possible play outside the time slot they chose. Rather than
+ * pushing the lowest groups on to the next slot, as VrcTimeSelection does, it
+ * solves the whole assignment at once as a minimum cost flow.
+ * <p>
+ * Each time slot has a number of courts, and each court holds one group. In
+ * order of importance, the assignment:
+ * 1) Puts as many groups on courts as there are courts
+ * 2) Spreads the groups left without a court evenly between the time slots
+ * 3) Misses as few pairs' time slots as possible; NO_SLOT is never missed
+ * 4) Keeps as many groups as it can in their most popular time slot, and of
+ * groups whose pairs chose the same, moves the lowest ones
+ * <p>
+ * Courts in a slot go to its groups from the top of the ladder down, numbered
+ * from 1. Groups without a court are left with court 0.
+ */
+public class OptimalTimeSelection implements TimeSelection {
+    // 24 pairs in groups of 3
+    private static final int DEFAULT_COURTS_PER_SLOT = 8;
+    private static final int NO_COURT = 0;
+
+    // The slots in use, in order, and how many courts each has
+    private final Time[] slots;
+    private final int[] courts;
+    // Position in slots by Time ordinal, -1 for NO_SLOT and slots not in use
+    private final int[] slotIndex = new int[Time.values().length];
+
+    public OptimalTimeSelection() {
+        this(DEFAULT_COURTS_PER_SLOT);
+    }
+
+    // The same number of courts in every time slot
+    public OptimalTimeSelection(int courtsPerSlot) {
+        this(sameCourts(courtsPerSlot));
+    }
+
+    // The first slot is the one groups that don't care are kept in
+    public OptimalTimeSelection(Map<Time, Integer> courtsPerSlot) {
+        Map<Time, Integer> ordered = new EnumMap<>(Time.class);
+        ordered.putAll(courtsPerSlot);
+        if (ordered.isEmpty() || ordered.containsKey(Time.NO_SLOT)) {
+            throw new IllegalArgumentException("Time slots must be given, and not NO_SLOT");
+        }
+
+        slots = new Time[ordered.size()];
+        courts = new int[ordered.size()];
+        for (int i = 0; i < slotIndex.length; i++) {
+            slotIndex[i] = -1;
+        }
+        int index = 0;
+        for (Map.Entry<Time, Integer> entry : ordered.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() <= 0) {
+                throw new IllegalArgumentException(
+                        "Time slot " + entry.getKey() + " needs at least one court");
+            }
+            slots[index] = entry.getKey();
+            courts[index] = entry.getValue();
+            slotIndex[entry.getKey().ordinal()] = index;
+            index++;
+        }
+    }
+
+    private static Map<Time, Integer> sameCourts(int courtsPerSlot) {
+        Map<Time, Integer> courts = new EnumMap<>(Time.class);
+        for (Time time : Time.values()) {
+            if (time != Time.NO_SLOT) {
+                courts.put(time, courtsPerSlot);
+            }
+        }
+        return courts;
+    }
+
+    public int getAmountPairsByTime(List<Scorecard> scorecards, Time time) {
+        int amount = 0;
+
+        for (Scorecard scorecard : scorecards) {
+            if (scorecard.getTimeSlot() == time) {
+                amount += scorecard.getPairs().size();
+            }
+        }
+
+        return amount;
+    }
+
+    // Groups whose pairs chose the same slots are interchangeable, so they
+    // are placed a kind at a time. Nodes are the source, one per kind of group,
+    // one per slot and the sink. Each kind sends as many units of flow to a slot
+    // as it has groups placed there, and each slot on to the sink through its
+    // courts, or through overflow edges that cost more for every group already
+    // without a court there.
+    public void distributePairs(List<Scorecard> allScorecards, Map<Pair, Time> timeSlotsMap) {
+        int groupCount = allScorecards.size();
+        int slotCount = slots.length;
+        Map<List<Integer>, List<Integer>> groupsByKind = new LinkedHashMap<>();
+        int[] chosen = new int[slotCount];
+        long totalPairs = 0;
+        for (int group = 0; group < groupCount; group++) {
+            Scorecard scorecard = allScorecards.get(group);
+            int preferred = countChosenSlots(scorecard, timeSlotsMap, chosen);
+            List<Integer> kind = new ArrayList<>(slotCount + 1);
+            kind.add(preferred);
+            for (int count : chosen) {
+                kind.add(count);
+            }
+            groupsByKind.computeIfAbsent(kind, key -> new ArrayList<>()).add(group);
+            totalPairs += scorecard.getPairs().size();
+        }
+
+        int totalCourts = 0;
+        for (int court : courts) {
+            totalCourts += court;
+        }
+        int overflow = Math.max(0, groupCount - totalCourts);
+        // No slot needs more than its share of the groups without a court
+        int overflowPerSlot = (overflow + slotCount - 1) / slotCount;
+
+        // Each level of cost outweighs everything below it put together
+        long moveWeight = 1;
+        long missWeight = moveWeight * (groupCount + 1);
+        long overflowWeight = missWeight * (totalPairs + 1);
+
+        int kindCount = groupsByKind.size();
+        int source = kindCount + slotCount;
+        int sink = source + 1;
+        MinCostFlow flow = new MinCostFlow(sink + 1,
+                kindCount * (slotCount + 1) + slotCount * (overflowPerSlot + 1));
+        int[][] placements = new int[kindCount][slotCount];
+        int kindIndex = 0;
+        for (Map.Entry<List<Integer>, List<Integer>> entry : groupsByKind.entrySet()) {
+            List<Integer> kind = entry.getKey();
+            int groups = entry.getValue().size();
+            int chosenCount = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                chosenCount += kind.get(slot + 1);
+            }
+
+            flow.addEdge(source, kindIndex, groups, 0);
+            for (int slot = 0; slot < slotCount; slot++) {
+                long missed = chosenCount - kind.get(slot + 1);
+                long moved = slot == kind.get(0) ? 0 : 1;
+                placements[kindIndex][slot] = flow.addEdge(kindIndex, kindCount + slot,
+                        groups, missed * missWeight + moved * moveWeight);
+            }
+            kindIndex++;
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            flow.addEdge(kindCount + slot, sink, courts[slot], 0);
+            for (int extra = 1; extra <= overflowPerSlot; extra++) {
+                flow.addEdge(kindCount + slot, sink, 1, extra * overflowWeight);
+            }
+        }
+        flow.solve(source, sink);
+
+        // Of each kind, the top groups stay in their most popular slot and the
+        // lowest ones are moved
+        Time[] placed = new Time[groupCount];
+        kindIndex = 0;
+        for (Map.Entry<List<Integer>, List<Integer>> entry : groupsByKind.entrySet()) {
+            int preferred = entry.getKey().get(0);
+            List<Integer> groups = entry.getValue();
+            int next = 0;
+            int staying = flow.getFlow(placements[kindIndex][preferred]);
+            while (next < staying) {
+                placed[groups.get(next++)] = slots[preferred];
+            }
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (slot == preferred) {
+                    continue;
+                }
+                for (int moved = flow.getFlow(placements[kindIndex][slot]); moved > 0; moved--) {
+                    placed[groups.get(next++)] = slots[slot];
+                }
+            }
+            kindIndex++;
+        }
+
+        // Courts from the top of the ladder down
+        int[] courtsTaken = new int[slotCount];
+        for (int group = 0; group < groupCount; group++) {
+            Scorecard scorecard = allScorecards.get(group);
+            int slot = slotIndex[placed[group].ordinal()];
+            scorecard.setTimeSlot(placed[group]);
+            scorecard.setCourt(courtsTaken[slot] < courts[slot]
+                    ? ++courtsTaken[slot] : NO_COURT);
+        }
+    }
+
+    // Fills chosen with how many pairs of the group chose each slot in use, and
+    // returns the most popular one, the earliest of those if tied
+    private int countChosenSlots(Scorecard scorecard, Map<Pair, Time> timeSlotsMap,
+                                 int[] chosen) {
+        for (int i = 0; i < chosen.length; i++) {
+            chosen[i] = 0;
+        }
+        for (Pair pair : scorecard.getPairs()) {
+            Time time = timeSlotsMap.get(pair);
+            if (time != null && slotIndex[time.ordinal()] >= 0) {
+                chosen[slotIndex[time.ordinal()]]++;
+            }
+        }
+
+        int preferred = 0;
+        for (int i = 1; i < chosen.length; i++) {
+            if (chosen[i] > chosen[preferred]) {
+                preferred = i;
+            }
+        }
+        return preferred;
+    }
+}
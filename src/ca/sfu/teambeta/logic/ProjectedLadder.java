@@ -0,0 +1,320 @@
+package ca.sfu.teambeta.logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.sfu.teambeta.core.IndexedList;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Penalty;
+import ca.sfu.teambeta.core.Scorecard;
+
+/**
+ * Next week's ladder as a VrcLadderReorderer would make it from a GameSession,
+ * kept up to date as results and penalties come in rather than worked out again
+ * from scratch.
+ * <p>
+ * The positions active pairs take in the reordered ladder depend only on who is
+ * playing, so they are worked out once. A result then only re-sorts its own group
+ * and the pairs swapped with the groups next to it, and penalties are applied
+ * again only over the stretches of the ladder that they can reach. Anything else,
+ * such as a pair joining or groups being made again, needs a new ProjectedLadder.
+ * <p>
+ * Not thread-safe; callers sharing one must lock around it.
+ */
+public class ProjectedLadder {
+    private final VrcLadderReorderer reorderer;
+    private final int gameSessionId;
+    private final int lineupVersion;
+
+    // Each scorecard's pairs in group order, their ranks, and the pairs sorted
+    // by those ranks
+    private final List<List<Pair>> groups = new ArrayList<>();
+    private final List<int[]> ranks = new ArrayList<>();
+    private final List<List<Pair>> rankedGroups = new ArrayList<>();
+    // Index of each group's first pair among the active pairs, once swapped
+    private final int[] groupStarts;
+    // Where each of those active pairs goes in the ladder before penalties
+    private final int[] activePositions;
+
+    // The ladder before penalties and after them
+    private final Pair[] merged;
+    private final Pair[] projected;
+    private final Map<Pair, Integer> mergedPositions = new HashMap<>();
+    private Map<Pair, Penalty> penalties;
+    // The stretches of projected that penalties have changed, from merged
+    private final List<int[]> penalizedStretches = new ArrayList<>();
+
+    public ProjectedLadder(GameSession gameSession, VrcLadderReorderer reorderer) {
+        this.reorderer = reorderer;
+        this.gameSessionId = gameSession.getID();
+        this.lineupVersion = gameSession.getLineupVersion();
+        List<Pair> ladder = gameSession.getAllPairs();
+        Set<Pair> activePairs = gameSession.getActivePairSet();
+        this.penalties = gameSession.getPenalties();
+
+        List<Scorecard> scorecards = gameSession.getScorecards();
+        groupStarts = new int[scorecards.size()];
+        Set<Pair> groupedPairs = new HashSet<>();
+        int groupStart = 0;
+        for (int i = 0; i < scorecards.size(); i++) {
+            Scorecard scorecard = scorecards.get(i);
+            List<Pair> group = new ArrayList<>(scorecard.getPairs());
+            groups.add(group);
+            ranks.add(getRanks(scorecard, group));
+            rankedGroups.add(scorecard.getReorderedPairs());
+            groupedPairs.addAll(group);
+            groupStarts[i] = groupStart;
+            groupStart += group.size();
+        }
+
+        // As in VrcLadderReorderer.mergeActivePairs: grouped pairs fill the
+        // empty positions and their own, top down
+        List<Integer> positions = new ArrayList<>();
+        List<Pair> mergedPairs = new ArrayList<>();
+        if (!scorecards.isEmpty()) {
+            for (Pair pair : reorderer.applyPassivePenalty(ladder, activePairs)) {
+                if (pair != null && !groupedPairs.contains(pair)) {
+                    mergedPairs.add(pair);
+                } else if (positions.size() < groupStart) {
+                    positions.add(mergedPairs.size());
+                    mergedPairs.add(null);
+                }
+            }
+        }
+        activePositions = positions.stream().mapToInt(Integer::intValue).toArray();
+        merged = mergedPairs.toArray(new Pair[mergedPairs.size()]);
+        for (int i = 0; i < merged.length; i++) {
+            if (merged[i] != null) {
+                mergedPositions.put(merged[i], i);
+            }
+        }
+        for (int i = 0; i < groups.size(); i++) {
+            placeGroup(i);
+        }
+        projected = merged.clone();
+        applyPenalties();
+    }
+
+    // Brings the projection up to date with gameSession. Returns false, leaving
+    // it as it was, if gameSession has changed in more than its results and
+    // penalties, or is a different GameSession.
+    public boolean update(GameSession gameSession) {
+        if (gameSession.getID() != gameSessionId
+                || gameSession.getLineupVersion() != lineupVersion) {
+            return false;
+        }
+        List<Scorecard> scorecards = gameSession.getScorecards();
+
+        // A group's ranking also decides the pairs it swaps with the groups next to it
+        boolean[] changedGroups = new boolean[groups.size()];
+        boolean changed = false;
+        for (int i = 0; i < scorecards.size(); i++) {
+            int[] newRanks = getRanks(scorecards.get(i), groups.get(i));
+            if (Arrays.equals(newRanks, ranks.get(i))) {
+                continue;
+            }
+            ranks.set(i, newRanks);
+            rankedGroups.set(i, scorecards.get(i).getReorderedPairs());
+            changed = true;
+            for (int j = Math.max(i - 1, 0); j < groups.size(); j++) {
+                changedGroups[j] = true;
+                // The pair a group of one hands down is the one handed to it
+                if (j > i && groups.get(j).size() > 1) {
+                    break;
+                }
+            }
+        }
+
+        int changedFrom = merged.length;
+        int changedTo = 0;
+        for (int i = 0; i < groups.size(); i++) {
+            if (changedGroups[i]) {
+                int[] range = placeGroup(i);
+                changedFrom = Math.min(changedFrom, range[0]);
+                changedTo = Math.max(changedTo, range[1]);
+            }
+        }
+
+        boolean penaltiesChanged = !gameSession.getPenaltyView().equals(penalties);
+        if (penaltiesChanged) {
+            penalties = gameSession.getPenalties();
+        }
+        if (!changed && !penaltiesChanged) {
+            return true;
+        }
+        // Put back what penalties had changed and what the results moved, then
+        // apply the penalties again around wherever the penalized pairs are now
+        for (int[] stretch : penalizedStretches) {
+            System.arraycopy(merged, stretch[0], projected, stretch[0], stretch[1] - stretch[0]);
+        }
+        if (changedFrom < changedTo) {
+            System.arraycopy(merged, changedFrom, projected, changedFrom,
+                    changedTo - changedFrom);
+        }
+        applyPenalties();
+        return true;
+    }
+
+    // Empty if the GameSession had no groups to reorder by
+    public List<Pair> getProjectedLadder() {
+        return new ArrayList<>(Arrays.asList(projected));
+    }
+
+    private static int[] getRanks(Scorecard scorecard, List<Pair> group) {
+        int[] groupRanks = new int[group.size()];
+        for (int i = 0; i < groupRanks.length; i++) {
+            groupRanks[i] = scorecard.getPairScore(group.get(i));
+        }
+        return groupRanks;
+    }
+
+    // As in VrcLadderReorderer.swapBetweenGroups: the first pair of each group
+    // after the first is swapped with the last pair of the group above it.
+    // Returns the range of merged that may have changed.
+    private int[] placeGroup(int group) {
+        List<Pair> placed = new ArrayList<>(rankedGroups.get(group));
+        if (group > 0) {
+            placed.set(0, getHandedDown(group - 1));
+        }
+        if (group < rankedGroups.size() - 1) {
+            placed.set(placed.size() - 1, rankedGroups.get(group + 1).get(0));
+        }
+        int first = groupStarts[group];
+        int last = first + placed.size() - 1;
+        for (int i = 0; i < placed.size(); i++) {
+            place(first + i, placed.get(i));
+        }
+        return new int[] {getActivePosition(first), getActivePosition(last) + 1};
+    }
+
+    // The pair a group swaps into the group below it: its own last, unless it
+    // has only the one position, which was already given to the pair above
+    private Pair getHandedDown(int group) {
+        while (group > 0 && rankedGroups.get(group).size() == 1) {
+            group--;
+        }
+        List<Pair> ranked = rankedGroups.get(group);
+        return ranked.get(ranked.size() - 1);
+    }
+
+    // Grouped pairs that aren't all active can outnumber the positions, and
+    // those left over are dropped, as VrcLadderReorderer drops them
+    private void place(int activeIndex, Pair pair) {
+        if (activeIndex < activePositions.length) {
+            int position = activePositions[activeIndex];
+            merged[position] = pair;
+            mergedPositions.put(pair, position);
+        }
+    }
+
+    private int getActivePosition(int activeIndex) {
+        return activeIndex < activePositions.length
+                ? activePositions[activeIndex] : merged.length - 1;
+    }
+
+    // Every move shifts a pair by no more than the size of the penalty, so
+    // penalized pairs only move pairs within the stretch around them that their
+    // moves add up to. Stretches that don't overlap are penalized on their own,
+    // each with its pairs' moves in the order they have over the whole ladder.
+    private void applyPenalties() {
+        penalizedStretches.clear();
+        if (penalties.isEmpty() || merged.length == 0) {
+            return;
+        }
+        List<Pair> moves = reorderer.getPenaltyMoves(penalties);
+        Map<Pair, Stretch> pairStretches = new HashMap<>();
+        for (Pair pair : moves) {
+            Integer position = mergedPositions.get(pair);
+            if (position == null) {
+                // Not in the ladder, which VrcLadderReorderer fails on; let it
+                // do so over the whole of it
+                Stretch whole = new Stretch(0, pair, merged.length);
+                whole.moves.addAll(moves);
+                penalize(whole);
+                return;
+            }
+            Stretch stretch = pairStretches.get(pair);
+            if (stretch == null) {
+                stretch = new Stretch(position, pair, 0);
+                pairStretches.put(pair, stretch);
+            }
+            stretch.reach += Math.abs(reorderer.getPenaltyPositions().get(penalties.get(pair)));
+        }
+
+        List<Stretch> byPosition = new ArrayList<>(pairStretches.values());
+        byPosition.sort((stretch1, stretch2) -> stretch1.first - stretch2.first);
+        LinkedList<Stretch> stretches = new LinkedList<>();
+        for (Stretch stretch : byPosition) {
+            // Joining widens the stretch, which can make it reach the one before
+            while (!stretches.isEmpty() && stretches.getLast().getTo() > stretch.getFrom()) {
+                stretch = stretches.removeLast().join(stretch);
+            }
+            stretches.add(stretch);
+        }
+        for (Stretch stretch : stretches) {
+            for (Pair pair : stretch.pairs) {
+                pairStretches.put(pair, stretch);
+            }
+        }
+        for (Pair pair : moves) {
+            pairStretches.get(pair).moves.add(pair);
+        }
+        for (Stretch stretch : stretches) {
+            penalize(stretch);
+        }
+    }
+
+    private void penalize(Stretch stretch) {
+        int from = stretch.getFrom();
+        List<Pair> pairs = new IndexedList<>(
+                Arrays.asList(merged).subList(from, stretch.getTo()));
+        for (Pair pair : stretch.moves) {
+            reorderer.movePenalizedPair(pairs, pair, penalties.get(pair));
+        }
+        int position = from;
+        for (Pair pair : pairs) {
+            projected[position++] = pair;
+        }
+        penalizedStretches.add(new int[] {from, stretch.getTo()});
+    }
+
+    // Penalized pairs, from merged position first to last, and how far their
+    // moves add up to. Only the bottom of the ladder stops a move short, and a
+    // stretch that reaches it stops there too.
+    private final class Stretch {
+        private int first;
+        private int last;
+        private long reach;
+        private final List<Pair> pairs = new ArrayList<>();
+        private final List<Pair> moves = new ArrayList<>();
+
+        Stretch(int position, Pair pair, long reach) {
+            this.first = position;
+            this.last = position;
+            this.reach = reach;
+            pairs.add(pair);
+        }
+
+        int getFrom() {
+            return (int) Math.max(0, first - reach);
+        }
+
+        int getTo() {
+            return (int) Math.min(merged.length, last + reach + 1);
+        }
+
+        Stretch join(Stretch other) {
+            first = Math.min(first, other.first);
+            last = Math.max(last, other.last);
+            reach += other.reach;
+            pairs.addAll(other.pairs);
+            return this;
+        }
+    }
+}
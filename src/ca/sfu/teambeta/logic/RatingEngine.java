@@ -0,0 +1,171 @@
+package ca.sfu.teambeta.logic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Rating;
+import ca.sfu.teambeta.core.Scorecard;
+
+/**
+ * Elo ratings for pairs and players, from the finishing order of each group.
+ * <p>
+ * Every pair in a group with a result is counted as having played each of the
+ * others, a win against those it finished ahead of, and the change is spread
+ * over those games. A player is rated through their pairs, each counted as
+ * being as strong as its two players together.
+ * <p>
+ * As in Glicko, each GameSession is a rating period: its results are rated
+ * against the ratings from before it started. Scorecards in one GameSession
+ * then don't depend on each other, so their changes can be worked out in any
+ * order, or all at once, and one changed later can be taken back exactly.
+ */
+public class RatingEngine {
+    private static final double K_FACTOR = 32;
+    private static final double SCALE = 400;
+    private static final double HUNDREDTHS = 100;
+
+    // By Rating.key
+    private final Map<Long, Rating> ratings = new HashMap<>();
+
+    // Rates every result in gameSession, as the ratings are now. GameSessions
+    // must be added in the order of their ids.
+    public void addGameSession(GameSession gameSession) {
+        int gameSessionId = gameSession.getID();
+        List<GroupResults> groups = new ArrayList<>();
+        for (Scorecard scorecard : gameSession.getScorecards()) {
+            groups.add(new GroupResults(scorecard));
+        }
+        // Nothing is changed until every group has been rated
+        ToIntFunction<Long> periodRatings = key -> getPeriodRating(ratings.get(key), gameSessionId);
+        List<Map<Long, Integer>> changes = groups.parallelStream()
+                .map(group -> group.getChanges(periodRatings))
+                .collect(Collectors.toList());
+        for (Map<Long, Integer> groupChanges : changes) {
+            for (Map.Entry<Long, Integer> change : groupChanges.entrySet()) {
+                Rating rating = ratings.computeIfAbsent(change.getKey(), RatingEngine::newRating);
+                rating.startPeriod(gameSessionId);
+                rating.addResults(change.getValue(), 1);
+            }
+        }
+    }
+
+    // By Rating.key, for everyone with a result so far
+    public Map<Long, Rating> getRatings() {
+        return ratings;
+    }
+
+    // Changes in hundredths of a point the scorecard's results make, by
+    // Rating.key, worked out from periodRatings. Every pair and player with a
+    // result against another pair is in it, even with no change.
+    public static Map<Long, Integer> getChanges(Scorecard scorecard,
+                                                ToIntFunction<Long> periodRatings) {
+        return new GroupResults(scorecard).getChanges(periodRatings);
+    }
+
+    // Keys of the ratings of every pair and player in the scorecard
+    public static Set<Long> getKeys(Scorecard scorecard) {
+        Set<Long> keys = new HashSet<>();
+        for (Pair pair : scorecard.getPairs()) {
+            keys.add(Rating.key(Rating.OwnerType.PAIR, pair.getID()));
+            for (Player player : pair.getPlayers()) {
+                keys.add(Rating.key(Rating.OwnerType.PLAYER, player.getID()));
+            }
+        }
+        return keys;
+    }
+
+    public static Rating newRating(long key) {
+        Rating.OwnerType ownerType = Rating.OwnerType.values()[(int) (key >>> Integer.SIZE)];
+        return new Rating(ownerType, (int) key);
+    }
+
+    public static int getPeriodRating(Rating rating, int gameSessionId) {
+        return rating == null ? Rating.INITIAL_RATING : rating.getPeriodRating(gameSessionId);
+    }
+
+    // Chance of finishing ahead of a pair rated opponentRating
+    private static double getExpectedScore(double rating, double opponentRating) {
+        return 1 / (1 + Math.pow(10, (opponentRating - rating) / HUNDREDTHS / SCALE));
+    }
+
+    // A scorecard's ranks and keys, read out of it once so it can be rated
+    // away from the thread that loaded it
+    private static final class GroupResults {
+        private final int[] ranks;
+        private final long[] pairKeys;
+        private final long[][] playerKeys;
+
+        private GroupResults(Scorecard scorecard) {
+            List<Pair> pairs = new ArrayList<>();
+            for (Pair pair : scorecard.getPairs()) {
+                if (scorecard.getPairScore(pair) > 0) {
+                    pairs.add(pair);
+                }
+            }
+            ranks = new int[pairs.size()];
+            pairKeys = new long[pairs.size()];
+            playerKeys = new long[pairs.size()][];
+            for (int i = 0; i < pairs.size(); i++) {
+                Pair pair = pairs.get(i);
+                ranks[i] = scorecard.getPairScore(pair);
+                pairKeys[i] = Rating.key(Rating.OwnerType.PAIR, pair.getID());
+                List<Player> players = pair.getPlayers();
+                playerKeys[i] = new long[players.size()];
+                for (int j = 0; j < players.size(); j++) {
+                    playerKeys[i][j] = Rating.key(Rating.OwnerType.PLAYER, players.get(j).getID());
+                }
+            }
+        }
+
+        private Map<Long, Integer> getChanges(ToIntFunction<Long> periodRatings) {
+            Map<Long, Integer> changes = new HashMap<>();
+            int count = ranks.length;
+            if (count < 2) {
+                return changes;
+            }
+            double[] pairRatings = new double[count];
+            double[] playerStrengths = new double[count];
+            for (int i = 0; i < count; i++) {
+                pairRatings[i] = periodRatings.applyAsInt(pairKeys[i]);
+                double total = 0;
+                for (long key : playerKeys[i]) {
+                    total += periodRatings.applyAsInt(key);
+                }
+                playerStrengths[i] = playerKeys[i].length == 0
+                        ? Rating.INITIAL_RATING : total / playerKeys[i].length;
+            }
+
+            double kPerGame = K_FACTOR / (count - 1);
+            for (int i = 0; i < count; i++) {
+                double pairChange = 0;
+                double playerChange = 0;
+                for (int j = 0; j < count; j++) {
+                    if (i == j) {
+                        continue;
+                    }
+                    double score = ranks[i] < ranks[j] ? 1 : ranks[i] == ranks[j] ? 0.5 : 0;
+                    pairChange += score - getExpectedScore(pairRatings[i], pairRatings[j]);
+                    playerChange += score
+                            - getExpectedScore(playerStrengths[i], playerStrengths[j]);
+                }
+                changes.merge(pairKeys[i], toHundredths(kPerGame * pairChange), Integer::sum);
+                for (long key : playerKeys[i]) {
+                    changes.merge(key, toHundredths(kPerGame * playerChange), Integer::sum);
+                }
+            }
+            return changes;
+        }
+
+        private static int toHundredths(double points) {
+            return (int) Math.round(points * HUNDREDTHS);
+        }
+    }
+}
@@ -10,4 +10,11 @@ import ca.sfu.teambeta.core.Scorecard;
  */
 public interface ScorecardGenerator {
     List<Scorecard> generateScorecards(List<Pair> activePairs);
+
+    //Regroup after pairs are activated or deactivated. Generators that can tell
+    //which of the current scorecards are unchanged return those same objects.
+    default List<Scorecard> regenerateScorecards(List<Scorecard> scorecards,
+                                                 List<Pair> activePairs) {
+        return generateScorecards(activePairs);
+    }
 }
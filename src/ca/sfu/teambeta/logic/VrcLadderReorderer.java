@@ -1,31 +1,68 @@
 package ca.sfu.teambeta.logic;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import ca.sfu.teambeta.core.IndexedList;
 import ca.sfu.teambeta.core.Pair;
 import ca.sfu.teambeta.core.Penalty;
 import ca.sfu.teambeta.core.Scorecard;
 
-import javax.persistence.criteria.CriteriaBuilder;
-
 /**
  * Created by Gordon Shieh on 25/06/16.
+ * <p>
+ * Each step works on an array of ladder positions, and penalties move pairs within
+ * an IndexedList, so a reorder takes O(n log n) rather than the O(n^2) of looking
+ * each pair up in a list. Pairs in a ladder are distinct, which the steps rely on.
  */
 public class VrcLadderReorderer implements LadderReorderer {
+    // Room left below the last pair for passive pairs to drop into
+    static final int PASSIVE_DROP = 2;
+
+    // How many positions each penalty moves a pair down
+    private final Map<Penalty, Integer> penaltyPositions;
+
+    public VrcLadderReorderer() {
+        penaltyPositions = new EnumMap<>(Penalty.class);
+        for (Penalty penalty : Penalty.values()) {
+            penaltyPositions.put(penalty, penalty.getPenalty());
+        }
+    }
+
+    // For trying out other penalty sizes; penalties not in the map move pairs
+    // by their usual amount
+    public VrcLadderReorderer(Map<Penalty, Integer> penaltyPositions) {
+        this();
+        this.penaltyPositions.putAll(penaltyPositions);
+    }
+
+    public Map<Penalty, Integer> getPenaltyPositions() {
+        return Collections.unmodifiableMap(penaltyPositions);
+    }
+
+    // originalPairs is changed to the new order and returned
     @Override
     public List<Pair> reorder(List<Pair> originalPairs, List<Scorecard> scorecards,
                               Set<Pair> activePairs, Map<Pair, Penalty> penalties) {
 
         List<Pair> intermediateActiveOrdering = swapBetweenGroups(scorecards);
 
-        List<Pair> intermediatePassiveOrdering = applyPassivePenalty(
+        Pair[] intermediatePassiveOrdering = applyPassivePenalty(
                 originalPairs, activePairs);
 
         List<Pair> intermediateOrdering = mergeActivePairs(
                 intermediatePassiveOrdering, intermediateActiveOrdering);
 
-        return applyPenalties(intermediateOrdering, penalties);
+        List<Pair> reorderedPairs = applyPenalties(intermediateOrdering, penalties);
+        originalPairs.clear();
+        originalPairs.addAll(reorderedPairs);
+        return originalPairs;
     }
 
     private List<Pair> swapBetweenGroups(List<Scorecard> scorecards) {
@@ -52,76 +89,81 @@ public class VrcLadderReorderer implements LadderReorderer {
         return completedPairs;
     }
 
-    private List<Pair> mergeActivePairs(List<Pair> originalPairs, List<Pair> activeReorderedPairs) {
-        int activePairIndex = 0;
-        for (Pair pair : originalPairs) {
-            if (activeReorderedPairs.contains(pair)) {
-                originalPairs.set(originalPairs.indexOf(pair), null);
+    // Every passive pair drops two positions, from the bottom of the ladder up, into
+    // whatever is there. Positions left empty are null.
+    Pair[] applyPassivePenalty(List<Pair> originalPairs, Set<Pair> activePairs) {
+        Pair[] positions = originalPairs.toArray(new Pair[originalPairs.size() + PASSIVE_DROP]);
+        for (int i = originalPairs.size() - 1; i >= 0; i--) {
+            Pair pair = positions[i];
+            if (!activePairs.contains(pair)) {
+                positions[i] = null;
+                positions[i + PASSIVE_DROP] = pair;
             }
         }
-        for (int i = 0; i < originalPairs.size(); i++) {
-            Pair pair = originalPairs.get(i);
-            if (pair == null && activePairIndex < activeReorderedPairs.size()) {
-                originalPairs.set(i, activeReorderedPairs.get(activePairIndex));
+        return positions;
+    }
+
+    // Active pairs take the empty positions and those of active pairs, top down, in
+    // their new order. Positions left over are dropped.
+    private List<Pair> mergeActivePairs(Pair[] positions, List<Pair> activeReorderedPairs) {
+        Set<Pair> activeReorderedSet = new HashSet<>(activeReorderedPairs);
+        List<Pair> mergedPairs = new ArrayList<>(positions.length);
+        int activePairIndex = 0;
+        for (Pair pair : positions) {
+            if (pair != null && !activeReorderedSet.contains(pair)) {
+                mergedPairs.add(pair);
+            } else if (activePairIndex < activeReorderedPairs.size()) {
+                mergedPairs.add(activeReorderedPairs.get(activePairIndex));
                 activePairIndex++;
             }
         }
-        Iterator<Pair> itr = originalPairs.iterator();
-        while (itr.hasNext()) {
-            Pair pair = itr.next();
-            if (pair == null) {
-                itr.remove();
-            }
-        }
-        return originalPairs;
+        return mergedPairs;
     }
 
-    private List<Pair> applyPassivePenalty(
-            List<Pair> originalPairs, Set<Pair> activePairs) {
-
-        Set<Pair> passivePairsSet = originalPairs.stream()
-                .filter(pair -> !activePairs.contains(pair))
-                .collect(Collectors.toCollection(LinkedHashSet::new));
-        List<Pair> passivePairs = new ArrayList<>(passivePairsSet);
-        Collections.reverse(passivePairs);
-        //add two more spots to the ladder to drop passive pairs, will be removed afterwards.
-        originalPairs.add(null);
-        originalPairs.add(null);
-        for (Pair pair : passivePairs) {
-            int index = originalPairs.indexOf(pair);
-            int newIndex = index + 2;
-            originalPairs.set(index, null);
-            originalPairs.set(newIndex, pair);
+    List<Pair> applyPenalties(
+            List<Pair> activeReorderedPairs, Map<Pair, Penalty> penalties) {
+        List<Pair> reorderedPairs = new IndexedList<>(activeReorderedPairs);
+        for (Pair pair : getPenaltyMoves(penalties)) {
+            movePenalizedPair(reorderedPairs, pair, penalties.get(pair));
         }
-        return originalPairs;
+        return reorderedPairs;
     }
 
-    private List<Pair> applyPenalties(
-            List<Pair> activeReorderedPairs, Map<Pair, Penalty> penalties) {
-
+    // Penalties are applied smallest first. Each pair is moved once for every pair
+    // that shares its penalty, in the order of a HashSet of those pairs. Returns
+    // the pairs in the order they are moved.
+    List<Pair> getPenaltyMoves(Map<Pair, Penalty> penalties) {
         List<Penalty> availablePenalties = penalties.entrySet().stream()
                 .map(Map.Entry::getValue)
-                .sorted((penalty1, penalty2) -> penalty1.getPenalty() - penalty2.getPenalty())
+                .sorted((penalty1, penalty2) ->
+                        penaltyPositions.get(penalty1) - penaltyPositions.get(penalty2))
                 .collect(Collectors.toList());
 
+        List<Pair> moves = new ArrayList<>();
+        Penalty previousPenalty = null;
+        Set<Pair> penaltyPairs = null;
         for (Penalty penalty : availablePenalties) {
-            Set<Pair> penaltyPairs = penalties.entrySet().stream()
-                    .filter(pairPenaltyEntry -> pairPenaltyEntry.getValue() == penalty)
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toSet());
-
-            for (Pair pair : penaltyPairs) {
-                int index = activeReorderedPairs.indexOf(pair);
-                int newIndex = index + penalty.getPenalty();
-                if (newIndex > activeReorderedPairs.size() - 1) {
-                    newIndex = activeReorderedPairs.size() - 1;
-                }
-
-                activeReorderedPairs.remove(index);
-                activeReorderedPairs.add(newIndex, pair);
+            if (penalty != previousPenalty) {
+                penaltyPairs = penalties.entrySet().stream()
+                        .filter(pairPenaltyEntry -> pairPenaltyEntry.getValue() == penalty)
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toSet());
+                previousPenalty = penalty;
             }
+            moves.addAll(penaltyPairs);
+        }
+        return moves;
+    }
+
+    // Moves the pair down by its penalty, but no further than the bottom
+    void movePenalizedPair(List<Pair> pairs, Pair pair, Penalty penalty) {
+        int index = pairs.indexOf(pair);
+        int newIndex = index + penaltyPositions.get(penalty);
+        if (newIndex > pairs.size() - 1) {
+            newIndex = pairs.size() - 1;
         }
 
-        return activeReorderedPairs;
+        pairs.remove(index);
+        pairs.add(newIndex, pair);
     }
 }
@@ -2,6 +2,7 @@ package ca.sfu.teambeta.logic;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 import ca.sfu.teambeta.core.Pair;
 import ca.sfu.teambeta.core.Scorecard;
@@ -15,6 +16,30 @@ public class VrcScorecardGenerator implements ScorecardGenerator {
 
     @Override
     public List<Scorecard> generateScorecards(List<Pair> activePairs) {
+        return makeGroups(activePairs, groupings -> new Scorecard(groupings, null));
+    }
+
+    // Groups come out the same as generateScorecards, so a Scorecard is kept
+    // wherever its group of pairs is unchanged, and only the groups from the
+    // changed pair down are new
+    @Override
+    public List<Scorecard> regenerateScorecards(List<Scorecard> scorecards,
+                                                List<Pair> activePairs) {
+        int[] groupIndex = {0};
+        return makeGroups(activePairs, groupings -> {
+            int index = groupIndex[0]++;
+            if (index < scorecards.size()) {
+                Scorecard current = scorecards.get(index);
+                if (current.getPairs().equals(groupings)) {
+                    return current;
+                }
+            }
+            return new Scorecard(groupings, null);
+        });
+    }
+
+    private List<Scorecard> makeGroups(List<Pair> activePairs,
+                                       Function<List<Pair>, Scorecard> makeGroup) {
         int playingCount = activePairs.size();
 
         List<Scorecard> scorecards = new ArrayList<>();
@@ -22,35 +47,39 @@ public class VrcScorecardGenerator implements ScorecardGenerator {
         if (playingCount % THREE_PAIR_GROUP == 0) {
             //All 3 team groups.
             int noOfTripleGroups = playingCount / THREE_PAIR_GROUP;
-            makeTripleGroups(scorecards, noOfTripleGroups, activePairs);
+            makeTripleGroups(scorecards, noOfTripleGroups, activePairs, makeGroup);
         } else if (playingCount % THREE_PAIR_GROUP == 1) {
             //One 4 team group.
             int noOftripleGroups = playingCount / THREE_PAIR_GROUP - 1;
-            int currentIndex = makeTripleGroups(scorecards, noOftripleGroups, activePairs);
-            makeQuadGroup(scorecards, currentIndex, activePairs);
+            int currentIndex = makeTripleGroups(
+                    scorecards, noOftripleGroups, activePairs, makeGroup);
+            makeQuadGroup(scorecards, currentIndex, activePairs, makeGroup);
         } else {
             //Two 4 team groups.
             int noOftripleGroups = playingCount / THREE_PAIR_GROUP - 2;
-            int currentIndex = makeTripleGroups(scorecards, noOftripleGroups, activePairs);
-            makeQuadGroup(scorecards, currentIndex, activePairs);
+            int currentIndex = makeTripleGroups(
+                    scorecards, noOftripleGroups, activePairs, makeGroup);
+            makeQuadGroup(scorecards, currentIndex, activePairs, makeGroup);
         }
         return scorecards;
     }
 
-    private void makeQuadGroup(List<Scorecard> scorecards, int num, List<Pair> activePairs) {
+    private void makeQuadGroup(List<Scorecard> scorecards, int num, List<Pair> activePairs,
+                               Function<List<Pair>, Scorecard> makeGroup) {
         List<Pair> groupings = new ArrayList<>();
         for (int i = num; i < activePairs.size(); i++) {
             groupings.add(activePairs.get(i));
 
             if (groupings.size() == FOUR_PAIR_GROUP) {
-                Scorecard sc = new Scorecard(groupings, null);
+                Scorecard sc = makeGroup.apply(groupings);
                 scorecards.add(sc);
                 groupings.clear();
             }
         }
     }
 
-    private int makeTripleGroups(List<Scorecard> scorecards, int num, List<Pair> activePairs) {
+    private int makeTripleGroups(List<Scorecard> scorecards, int num, List<Pair> activePairs,
+                                 Function<List<Pair>, Scorecard> makeGroup) {
         int doneGroups = 0;
         int indexPosition = 0;
         List<Pair> groupings = new ArrayList<>();
@@ -62,9 +91,8 @@ public class VrcScorecardGenerator implements ScorecardGenerator {
             groupings.add(activePairs.get(i));
 
             if (groupings.size() == THREE_PAIR_GROUP) {
-                Scorecard sc = new Scorecard(groupings, null);
+                Scorecard sc = makeGroup.apply(groupings);
                 scorecards.add(sc);
-                System.out.println();
                 groupings.clear();
                 doneGroups++;
             }
@@ -1,7 +1,7 @@
 package ca.sfu.teambeta.logic;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
@@ -18,215 +18,199 @@ import ca.sfu.teambeta.core.Time;
  * 1) Logic works in such way that new time slots can be introduced and not break anything
  * 2) Pairs that don't care about they time slots are set to NO_SLOT
  * 3) NO_SLOT has the lowest priority. If all pairs in group don't care
- * sets the group to the DEFAULT_TIME_SLOT
+ * sets the group to the default time slot, the first one
+ * <p>
+ * Each time slot in use has its own capacity. The groups are counted into a
+ * histogram of pairs per slot in one pass, and each slot then hands its overflow
+ * on to the next, so distributing takes time linear in the number of groups.
  */
 public class VrcTimeSelection implements TimeSelection {
-    private static final Time DEFAULT_TIME_SLOT = Time.SLOT_1;
     private static final int MAX_NUM_PAIRS_PER_SLOT = 24;
-    private static final int AMOUNT_TIME_SLOTS = Time.values().length - 1;
+    private static final int NO_COURT = 0;
 
-    public int getAmountPairsByTime(List<Scorecard> scorecards, Time time) {
-        int amount = 0;
+    // The slots in use, in order, and how many pairs fit in each
+    private final Time[] slots;
+    private final int[] capacities;
+    // Position in slots by Time ordinal, -1 for NO_SLOT and slots not in use
+    private final int[] slotIndex = new int[Time.values().length];
 
-        for (Scorecard scorecard : scorecards) {
-            if (scorecard.getTimeSlot() == time) {
-                amount += scorecard.getReorderedPairs().size();
-            }
-        }
-
-        return amount;
+    // Every time slot, with room for MAX_NUM_PAIRS_PER_SLOT pairs each
+    public VrcTimeSelection() {
+        this(defaultCapacities());
     }
 
-    public void distributePairs(List<Scorecard> allScorecards, Map<Pair, Time> timeSlotsMap) {
-        //Make schedule of groups by selecting most popular time slot
-        for (Scorecard scorecard : allScorecards) {
-            List<Time> timeSlots = getTimeSlotsOfGroup(scorecard, timeSlotsMap);
-            Time time = getDominantTime(timeSlots);
-            scorecard.setTimeSlot(time);
+    // The first slot is the default one, and the last one overflows into it
+    public VrcTimeSelection(Map<Time, Integer> capacities) {
+        Map<Time, Integer> ordered = new EnumMap<>(Time.class);
+        ordered.putAll(capacities);
+        if (ordered.isEmpty() || ordered.containsKey(Time.NO_SLOT)) {
+            throw new IllegalArgumentException("Time slots must be given, and not NO_SLOT");
         }
 
-        //Create Limitations which determine how to arrange groups between time slots
-        int amountPlayingPairs = getTotalPairCount(allScorecards);
-        int maxNumPairs = AMOUNT_TIME_SLOTS * MAX_NUM_PAIRS_PER_SLOT;
-        //Amount of active pairs exceed the amount the gym can contain at all time slots combined
-        boolean crowded = amountPlayingPairs > maxNumPairs;
-
-        if (crowded) {
-            //Every time slot will have equal amount of pairs
-            distributeEqually(amountPlayingPairs, allScorecards);
-        } else {
-            //Some time slots have to many groups, moves them to next time slot
-            rearrangeGroupsBetweenTimeSlots(allScorecards);
+        slots = new Time[ordered.size()];
+        this.capacities = new int[ordered.size()];
+        for (int i = 0; i < slotIndex.length; i++) {
+            slotIndex[i] = -1;
+        }
+        int index = 0;
+        for (Map.Entry<Time, Integer> entry : ordered.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() <= 0) {
+                throw new IllegalArgumentException(
+                        "Time slot " + entry.getKey() + " needs room for at least one pair");
+            }
+            slots[index] = entry.getKey();
+            this.capacities[index] = entry.getValue();
+            slotIndex[entry.getKey().ordinal()] = index;
+            index++;
         }
     }
 
-    private int getTotalPairCount(List<Scorecard> allScorecards) {
-        int amount = 0;
+    private static Map<Time, Integer> defaultCapacities() {
+        Map<Time, Integer> capacities = new EnumMap<>(Time.class);
         for (Time time : Time.values()) {
-            amount += getAmountPairsByTime(allScorecards, time);
+            if (time != Time.NO_SLOT) {
+                capacities.put(time, MAX_NUM_PAIRS_PER_SLOT);
+            }
         }
-        return amount;
+        return capacities;
     }
 
-    private List<Time> getTimeSlotsOfGroup(Scorecard scorecard, Map<Pair, Time> timeSlotsMap) {
-        List<Pair> pairs = scorecard.getReorderedPairs();
-        List<Time> timeSlots = new ArrayList<>();
+    public int getAmountPairsByTime(List<Scorecard> scorecards, Time time) {
+        int amount = 0;
 
-        for (Pair pair : pairs) {
-            Time time = timeSlotsMap.get(pair);
-            timeSlots.add(time);
+        for (Scorecard scorecard : scorecards) {
+            if (scorecard.getTimeSlot() == time) {
+                amount += scorecard.getPairs().size();
+            }
         }
 
-        return timeSlots;
+        return amount;
     }
 
-
-    //Count how many pairs selected particular time slot
-    private Time getDominantTime(List<Time> timeSlots) {
-        Map<Time, Integer> timeFrequency = new LinkedHashMap<>();
-
-        //Initialize values
-        for (Time time : Time.values()) {
-            if (time == Time.NO_SLOT) {
-                continue;
-            }
-            timeFrequency.put(time, 0);
+    public void distributePairs(List<Scorecard> allScorecards, Map<Pair, Time> timeSlotsMap) {
+        //Make schedule of groups by selecting most popular time slot,
+        //and count the pairs and list the groups of each slot on the way
+        //Groups are kept by their position in allScorecards
+        Scorecard[] scorecards = allScorecards.toArray(new Scorecard[allScorecards.size()]);
+        int[] amounts = new int[slots.length];
+        List<List<Integer>> groupsBySlot = new ArrayList<>(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            groupsBySlot.add(new ArrayList<>());
         }
-
-        //Save the amount each slot was selected
-        for (Time time : timeSlots) {
-            if (time == Time.NO_SLOT) {
-                continue;
-            }
-            int amount = timeFrequency.get(time);
-            amount++;
-            timeFrequency.put(time, amount);
+        int[] frequency = new int[slots.length];
+        for (int position = 0; position < scorecards.length; position++) {
+            Scorecard scorecard = scorecards[position];
+            int slot = getDominantSlot(scorecard, timeSlotsMap, frequency);
+            scorecard.setTimeSlot(slots[slot]);
+            //Courts are only assigned by OptimalTimeSelection
+            scorecard.setCourt(NO_COURT);
+            amounts[slot] += scorecard.getPairs().size();
+            groupsBySlot.get(slot).add(position);
         }
 
-        //Get the most popular time slot,
-        //if all are the same, select the earliest time slot
-        Time dominantTime = null;
-        int maxFrequency = 0;
-
-        for (Map.Entry<Time, Integer> entry : timeFrequency.entrySet()) {
-            int frequency = entry.getValue();
-
-            if (frequency > maxFrequency) {
-                maxFrequency = frequency;
-                dominantTime = entry.getKey();
-            }
+        //Create Limitations which determine how to arrange groups between time slots
+        int amountPlayingPairs = 0;
+        int maxNumPairs = 0;
+        for (int i = 0; i < slots.length; i++) {
+            amountPlayingPairs += amounts[i];
+            maxNumPairs += capacities[i];
         }
-
-        //NO_SLOT has the lowest priority which means
-        //if there is at least one pair that selected different slot, than that's the result
-        //if the biggest num was found is 0 that means all of pairs selected NO_SLOT
-        if (maxFrequency == 0) {
-            dominantTime = DEFAULT_TIME_SLOT;
+        //Amount of active pairs exceed the amount the gym can contain at all time slots combined
+        boolean crowded = amountPlayingPairs > maxNumPairs;
+        //A single time slot has nowhere to move groups to
+        if (slots.length == 1) {
+            return;
         }
-        return dominantTime;
-    }
 
-    private void distributeEqually(int amountPlayingPairs, List<Scorecard> allScorecards) {
-        int avgPairsPerTimeSlot = amountPlayingPairs / AMOUNT_TIME_SLOTS;
+        //Groups moved on from the slot before the one being looked at, last group first
+        List<Integer> movedGroups = new ArrayList<>();
+        for (int slot = 0; slot < slots.length; slot++) {
+            List<Integer> groups = mergeByPosition(groupsBySlot.get(slot), movedGroups);
+            movedGroups = new ArrayList<>();
 
-        //Move extra groups to the next time slot, do that for all time slots
-        for (Time time : Time.values()) {
-            //Omit undefined time slot
-            if (time == Time.NO_SLOT) {
-                continue;
-            }
-            int amount = getAmountPairsByTime(allScorecards, time);
-            if (amount > avgPairsPerTimeSlot) {
-                int extraPairs = amount - avgPairsPerTimeSlot;
-                if (extraPairs != 1) {
-                    //If the difference between time slots is on 1 pair
-                    //do not move the whole group
-                    //some groups have 4 pairs and some 3, time slots cannot be perfectly equal
-                    moveOverflowedGroupsToNextTimeSlot(
-                            amount, avgPairsPerTimeSlot, extraPairs, time, allScorecards);
+            int limit;
+            int extra;
+            if (crowded) {
+                //Every time slot gets its share of the pairs, by capacity.
+                //If the difference between time slots is on 1 pair
+                //do not move the whole group
+                //some groups have 4 pairs and some 3, time slots cannot be perfectly equal
+                limit = (int) ((long) amountPlayingPairs * capacities[slot] / maxNumPairs);
+                extra = amounts[slot] - limit;
+                if (extra == 1) {
+                    continue;
                 }
+            } else {
+                //Some time slots have to many groups, moves them to next time slot
+                limit = capacities[slot];
+                extra = amounts[slot] - limit;
             }
-        }
-    }
-
-    private void moveOverflowedGroupsToNextTimeSlot(
-            int amountPairsByTime, int limitPairs, int numExtraPairs,
-            Time oldTime, List<Scorecard> allScorecards) {
-
-        List<Scorecard> scorecards = getScorecardsByTime(allScorecards, oldTime);
-        Time nextTimeSlot = getNextTimeSlot(oldTime);
-
-        //While we have more extra pairs and we are still having more pairs then allowed
-        //Move the scorecards to next time slot
-        while (numExtraPairs > 0 && amountPairsByTime > limitPairs) {
-
-            //Groups with the lowest ratings will be moved to another time slot
-            Scorecard group = getLastScorecard(scorecards, oldTime);
-            if (group == null) {
-                break;
+            int nextSlot = (slot + 1) % slots.length;
+
+            //Groups with the lowest ratings will be moved to another time slot,
+            //though never the first group of the time slot
+            int last = groups.size() - 1;
+            while (extra > 0 && amounts[slot] > limit && last > 0) {
+                int position = groups.get(last--);
+                Scorecard group = scorecards[position];
+                group.setTimeSlot(slots[nextSlot]);
+
+                int numPairsMoved = group.getPairs().size();
+                extra -= numPairsMoved;
+                amounts[slot] -= numPairsMoved;
+                amounts[nextSlot] += numPairsMoved;
+                movedGroups.add(position);
             }
-            group.setTimeSlot(nextTimeSlot);
-
-            int numPairsMoved = group.getReorderedPairs().size();
-            numExtraPairs -= numPairsMoved;
-            amountPairsByTime -= numPairsMoved;
         }
     }
 
-    private Scorecard getLastScorecard(List<Scorecard> scorecards, Time oldTime) {
-        for (int i = scorecards.size() - 1; i > 0; i--) {
-            Scorecard group = scorecards.get(i);
-
-            if (group.getTimeSlot() == oldTime) {
-                return group;
-            }
+    //Count how many pairs selected each time slot in use; the most popular
+    //time slot wins, and if all are the same, the earliest time slot
+    private int getDominantSlot(Scorecard scorecard, Map<Pair, Time> timeSlotsMap,
+                                int[] frequency) {
+        for (int i = 0; i < frequency.length; i++) {
+            frequency[i] = 0;
         }
-        return null;
-    }
-
-    private List<Scorecard> getScorecardsByTime(List<Scorecard> allScorecards, Time time) {
-        List<Scorecard> scorecards = new ArrayList<>();
-
-        for (Scorecard group : allScorecards) {
-            Time timeSlot = group.getTimeSlot();
-            if (timeSlot == time) {
-                scorecards.add(group);
+        for (Pair pair : scorecard.getPairs()) {
+            Time time = timeSlotsMap.get(pair);
+            if (time != null && slotIndex[time.ordinal()] >= 0) {
+                frequency[slotIndex[time.ordinal()]]++;
             }
         }
 
-        return scorecards;
-    }
-
-    private Time getNextTimeSlot(Time time) {
-        //Default time slot is first time slot
-        //If the time passed is at the end of the Time.values()
-        //Then next time is the element in the beginning.
-
-        Time nextTimeSlot = DEFAULT_TIME_SLOT;
-        Time[] times = Time.values();
-
-        for (int index = 0; index < times.length; index++) {
-            if (times[index] == time) {
-                int indexNextSlot = index + 1;
-                if (indexNextSlot < times.length) {
-                    nextTimeSlot = times[index + 1];
-                }
+        //NO_SLOT has the lowest priority which means
+        //if there is at least one pair that selected different slot, than that's the result
+        //if all of pairs selected NO_SLOT, it is the default time slot, the first one
+        int dominantSlot = 0;
+        int maxFrequency = 0;
+        for (int i = 0; i < frequency.length; i++) {
+            if (frequency[i] > maxFrequency) {
+                maxFrequency = frequency[i];
+                dominantSlot = i;
             }
         }
-        return nextTimeSlot;
+        return dominantSlot;
     }
 
-    private void rearrangeGroupsBetweenTimeSlots(List<Scorecard> allScorecards) {
-        for (Time time : Time.values()) {
-            int amount = getAmountPairsByTime(allScorecards, time);
-            int extra = amount - MAX_NUM_PAIRS_PER_SLOT;
-            boolean crowded = extra > 0;
-            if (crowded) {
-                //Move extra groups to the next time slot, do that for all time slots
-                moveOverflowedGroupsToNextTimeSlot(
-                        amount, MAX_NUM_PAIRS_PER_SLOT, extra, time, allScorecards);
+    // The positions of a slot's groups, in order. Both lists are in order, the
+    // moved groups' from the last one up, so merging takes time linear in their
+    // length rather than in the number of scorecards.
+    private static List<Integer> mergeByPosition(List<Integer> groups,
+                                                 List<Integer> movedGroups) {
+        if (movedGroups.isEmpty()) {
+            return groups;
+        }
+        List<Integer> merged = new ArrayList<>(groups.size() + movedGroups.size());
+        int next = 0;
+        int nextMoved = movedGroups.size() - 1;
+        while (next < groups.size() || nextMoved >= 0) {
+            if (nextMoved < 0 || (next < groups.size()
+                    && groups.get(next) < movedGroups.get(nextMoved))) {
+                merged.add(groups.get(next++));
+            } else {
+                merged.add(movedGroups.get(nextMoved--));
             }
-
         }
+        return merged;
     }
 }
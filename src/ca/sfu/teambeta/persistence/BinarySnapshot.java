@@ -0,0 +1,424 @@
+package ca.sfu.teambeta.persistence;
+
+import org.hibernate.Criteria;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.FetchMode;
+import org.hibernate.Interceptor;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.metadata.CollectionMetadata;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.TimestampType;
+import org.hibernate.type.Type;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import ca.sfu.teambeta.core.Ladder;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.PairRanking;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Rating;
+import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.core.User;
+import ca.sfu.teambeta.logic.GameSession;
+
+/**
+ * Every row of every mapped entity, in a compact gzipped binary form that can be
+ * read back without a database. Rows are written straight from the Hibernate
+ * mapping, one entity class at a time:
+ * <p>
+ * header - magic, format version, time written
+ * per class - class name, property names, row count, then each row's id and values
+ * <p>
+ * A reference to another entity is written as its id, and classes are written in
+ * ENTITY_ORDER so every reference is to a row that has already been read. Reading
+ * fails if the property names no longer match the mapping.
+ */
+public class BinarySnapshot {
+    static final int MAGIC = 0x56524353;
+    static final int FORMAT_VERSION = 1;
+    private static final int NULL_REFERENCE = 0;
+    private static final int NULL_COLLECTION = -1;
+
+    // Referenced classes before the classes referencing them
+    static final List<Class<? extends Persistable>> ENTITY_ORDER = Collections.unmodifiableList(
+            Arrays.asList(Player.class, Pair.class, Ladder.class, PairRanking.class,
+                    Scorecard.class, User.class, GameSession.class, Rating.class));
+
+    private final long createdMillis;
+    private final Map<Class<?>, List<Object>> rows;
+
+    private BinarySnapshot(long createdMillis, Map<Class<?>, List<Object>> rows) {
+        this.createdMillis = createdMillis;
+        this.rows = rows;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    // Ordered by id. The entities are new and unattached.
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getRows(Class<T> type) {
+        List<Object> typeRows = rows.get(type);
+        if (typeRows == null) {
+            return new ArrayList<>();
+        }
+        return (List<T>) Collections.unmodifiableList(typeRows);
+    }
+
+    public int getRowCount() {
+        int count = 0;
+        for (List<Object> typeRows : rows.values()) {
+            count += typeRows.size();
+        }
+        return count;
+    }
+
+    // Everything the session can see, so run it in a single transaction to
+    // write a consistent copy. The stream is left open.
+    public static void write(Session session, OutputStream out) throws IOException {
+        SessionFactory factory = session.getSessionFactory();
+        checkEntityOrder(factory);
+
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip));
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeLong(System.currentTimeMillis());
+        data.writeInt(ENTITY_ORDER.size());
+
+        for (Class<?> type : ENTITY_ORDER) {
+            ClassMetadata metadata = factory.getClassMetadata(type);
+            List<?> typeRows = loadRows(session, type, null);
+
+            data.writeUTF(type.getName());
+            String[] propertyNames = metadata.getPropertyNames();
+            data.writeInt(propertyNames.length);
+            for (String propertyName : propertyNames) {
+                data.writeUTF(propertyName);
+            }
+
+            Type[] propertyTypes = metadata.getPropertyTypes();
+            data.writeInt(typeRows.size());
+            for (Object row : typeRows) {
+                data.writeInt(((Persistable) row).getID());
+                Object[] values = metadata.getPropertyValues(row);
+                for (int i = 0; i < values.length; i++) {
+                    writeValue(data, factory, propertyTypes[i], values[i]);
+                }
+            }
+        }
+        data.flush();
+        gzip.finish();
+    }
+
+    // The stream is left open
+    public static BinarySnapshot read(SessionFactory factory, InputStream in) throws IOException {
+        checkEntityOrder(factory);
+
+        DataInputStream data = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(in)));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a binary snapshot");
+        }
+        int formatVersion = data.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot format version " + formatVersion);
+        }
+        long createdMillis = data.readLong();
+        if (data.readInt() != ENTITY_ORDER.size()) {
+            throw new IOException("Snapshot was written for different entity classes");
+        }
+
+        Map<Class<?>, Map<Integer, Object>> byId = new HashMap<>();
+        Map<Class<?>, List<Object>> rows = new LinkedHashMap<>();
+        for (Class<?> type : ENTITY_ORDER) {
+            String className = data.readUTF();
+            if (!className.equals(type.getName())) {
+                throw new IOException("Expected " + type.getName() + " but found " + className);
+            }
+            ClassMetadata metadata = factory.getClassMetadata(type);
+            String[] propertyNames = new String[data.readInt()];
+            for (int i = 0; i < propertyNames.length; i++) {
+                propertyNames[i] = data.readUTF();
+            }
+            if (!Arrays.equals(propertyNames, metadata.getPropertyNames())) {
+                throw new IOException("Snapshot was written for a different mapping of "
+                        + type.getName());
+            }
+
+            Type[] propertyTypes = metadata.getPropertyTypes();
+            int rowCount = data.readInt();
+            Map<Integer, Object> typeRowsById = new HashMap<>();
+            List<Object> typeRows = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                int id = data.readInt();
+                Object[] values = new Object[propertyTypes.length];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = readValue(data, factory, propertyTypes[j], byId);
+                }
+                Object row = metadata.instantiate(id, null);
+                metadata.setPropertyValues(row, values);
+                typeRowsById.put(id, row);
+                typeRows.add(row);
+            }
+            byId.put(type, typeRowsById);
+            rows.put(type, typeRows);
+        }
+        return new BinarySnapshot(createdMillis, rows);
+    }
+
+    // Inserts every row with the id it was written with. Session.replicate()
+    // can't do that for IDENTITY ids: it lets the database assign new ones. So
+    // rows go straight through the persisters, in a session opened with
+    // ROWS_ARE_SAVED so references between them are written as ids rather
+    // than refused as unsaved.
+    void insertRows(Session session) {
+        SessionImplementor source = (SessionImplementor) session;
+        SessionFactoryImplementor factory = source.getFactory();
+        for (Class<?> type : ENTITY_ORDER) {
+            EntityPersister persister = factory.getEntityPersister(type.getName());
+            Type[] propertyTypes = persister.getPropertyTypes();
+            for (Object row : getRows(type)) {
+                int id = ((Persistable) row).getID();
+                Object[] values = persister.getPropertyValues(row);
+                persister.insert(id, values, row, source);
+                for (int i = 0; i < propertyTypes.length; i++) {
+                    if (propertyTypes[i].isCollectionType() && values[i] != null) {
+                        CollectionType collectionType = (CollectionType) propertyTypes[i];
+                        factory.getCollectionPersister(collectionType.getRole())
+                                .recreate(collectionType.wrap(source, values[i]), id, source);
+                    }
+                }
+            }
+        }
+        source.getJdbcCoordinator().executeBatch();
+    }
+
+    static boolean hasRows(Session session) {
+        for (Class<?> type : ENTITY_ORDER) {
+            Number rows = (Number) session.createCriteria(type)
+                    .setProjection(Projections.rowCount())
+                    .uniqueResult();
+            if (rows.longValue() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Nothing inserted by insertRows() is in the session's persistence context,
+    // so without this Hibernate would take every row referenced as unsaved
+    static final Interceptor ROWS_ARE_SAVED = new EmptyInterceptor() {
+        @Override
+        public Boolean isTransient(Object entity) {
+            return Boolean.FALSE;
+        }
+    };
+
+    private static void checkEntityOrder(SessionFactory factory) {
+        Set<Class<?>> mapped = new HashSet<>();
+        for (ClassMetadata metadata : factory.getAllClassMetadata().values()) {
+            mapped.add(metadata.getMappedClass());
+        }
+        if (!mapped.equals(new HashSet<>(ENTITY_ORDER))) {
+            throw new IllegalStateException(
+                    "BinarySnapshot.ENTITY_ORDER doesn't match the mapped classes " + mapped);
+        }
+    }
+
+    // One query for the rows and one per collection, rather than one per row
+    // and collection when they're walked. Every row if ids is null.
+    static List<?> loadRows(Session session, Class<?> type, Collection<Integer> ids) {
+        ClassMetadata metadata = session.getSessionFactory().getClassMetadata(type);
+        String idName = metadata.getIdentifierPropertyName();
+        if (ids != null && ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Criteria rowCriteria = session.createCriteria(type).addOrder(Order.asc(idName));
+        if (ids != null) {
+            rowCriteria.add(Restrictions.in(idName, ids));
+        }
+        List<?> typeRows = rowCriteria.list();
+        String[] propertyNames = metadata.getPropertyNames();
+        Type[] propertyTypes = metadata.getPropertyTypes();
+        for (int i = 0; i < propertyTypes.length; i++) {
+            if (propertyTypes[i].isCollectionType()) {
+                Criteria collectionCriteria = session.createCriteria(type)
+                        .setFetchMode(propertyNames[i], FetchMode.JOIN)
+                        .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+                if (ids != null) {
+                    collectionCriteria.add(Restrictions.in(idName, ids));
+                }
+                collectionCriteria.list();
+            }
+        }
+        return typeRows;
+    }
+
+    // A row's values as they would be written, to tell whether two copies of it
+    // differ. Sets and maps may iterate in a different order, so equal rows can
+    // still compare unequal.
+    static byte[] encodeRow(SessionFactory factory, Class<?> type, Object row) throws IOException {
+        ClassMetadata metadata = factory.getClassMetadata(type);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        Object[] values = metadata.getPropertyValues(row);
+        Type[] propertyTypes = metadata.getPropertyTypes();
+        for (int i = 0; i < values.length; i++) {
+            writeValue(data, factory, propertyTypes[i], values[i]);
+        }
+        data.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeValue(DataOutputStream data, SessionFactory factory,
+                                   Type type, Object value) throws IOException {
+        if (type.isEntityType()) {
+            data.writeInt(value == null ? NULL_REFERENCE : ((Persistable) value).getID());
+            return;
+        }
+        if (type.isCollectionType()) {
+            CollectionMetadata metadata =
+                    factory.getCollectionMetadata(((CollectionType) type).getRole());
+            if (value == null) {
+                data.writeInt(NULL_COLLECTION);
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                data.writeInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(data, factory, metadata.getIndexType(), entry.getKey());
+                    writeValue(data, factory, metadata.getElementType(), entry.getValue());
+                }
+            } else {
+                Collection<?> collection = (Collection<?>) value;
+                data.writeInt(collection.size());
+                for (Object element : collection) {
+                    writeValue(data, factory, metadata.getElementType(), element);
+                }
+            }
+            return;
+        }
+
+        data.writeBoolean(value != null);
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Integer) {
+            data.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            data.writeLong((Long) value);
+        } else if (value instanceof Boolean) {
+            data.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        } else if (value instanceof Date) {
+            data.writeLong(((Date) value).getTime());
+        } else if (value instanceof Enum) {
+            data.writeUTF(((Enum<?>) value).name());
+        } else if (value instanceof UUID) {
+            data.writeLong(((UUID) value).getMostSignificantBits());
+            data.writeLong(((UUID) value).getLeastSignificantBits());
+        } else {
+            throw new IOException("Can't write values of " + value.getClass().getName());
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object readValue(DataInputStream data, SessionFactory factory, Type type,
+                                    Map<Class<?>, Map<Integer, Object>> byId) throws IOException {
+        if (type.isEntityType()) {
+            int id = data.readInt();
+            if (id == NULL_REFERENCE) {
+                return null;
+            }
+            Class<?> referenced = ((EntityType) type).getReturnedClass();
+            Map<Integer, Object> referencedRows = byId.get(referenced);
+            if (referencedRows == null || !referencedRows.containsKey(id)) {
+                throw new IOException("Missing " + referenced.getName() + " with id " + id);
+            }
+            return referencedRows.get(id);
+        }
+        if (type.isCollectionType()) {
+            int size = data.readInt();
+            if (size == NULL_COLLECTION) {
+                return null;
+            }
+            CollectionMetadata metadata =
+                    factory.getCollectionMetadata(((CollectionType) type).getRole());
+            // The mapped collection type picks the implementation, as it would on a load
+            Object instance = ((CollectionType) type).instantiate(-1);
+            if (instance instanceof Map) {
+                Map map = (Map) instance;
+                for (int i = 0; i < size; i++) {
+                    Object key = readValue(data, factory, metadata.getIndexType(), byId);
+                    map.put(key, readValue(data, factory, metadata.getElementType(), byId));
+                }
+                return map;
+            }
+            Collection collection = (Collection) instance;
+            for (int i = 0; i < size; i++) {
+                collection.add(readValue(data, factory, metadata.getElementType(), byId));
+            }
+            return collection;
+        }
+
+        if (!data.readBoolean()) {
+            return null;
+        }
+        Class<?> returned = type.getReturnedClass();
+        if (returned == Integer.class || returned == int.class) {
+            return data.readInt();
+        } else if (returned == Long.class || returned == long.class) {
+            return data.readLong();
+        } else if (returned == Boolean.class || returned == boolean.class) {
+            return data.readBoolean();
+        } else if (returned == String.class) {
+            byte[] bytes = new byte[data.readInt()];
+            data.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        } else if (Date.class.isAssignableFrom(returned)) {
+            long millis = data.readLong();
+            return type instanceof TimestampType ? new Timestamp(millis) : new Date(millis);
+        } else if (returned.isEnum()) {
+            return Enum.valueOf((Class<Enum>) returned, data.readUTF());
+        } else if (returned == UUID.class) {
+            return new UUID(data.readLong(), data.readLong());
+        }
+        throw new IOException("Can't read values of " + returned.getName());
+    }
+}
@@ -119,10 +119,9 @@ public class CSVReader {
         }
         writer.writeAll(entries, false);
         try {
+            // Closing the CSVWriter flushes and closes streamWriter as well
             writer.flush();
             writer.close();
-            streamWriter.flush();
-            streamWriter.close();
         } catch (IOException e) {
             throw e;
         }
@@ -0,0 +1,90 @@
+package ca.sfu.teambeta.persistence;
+
+import com.google.gson.JsonObject;
+import com.zaxxer.hikari.metrics.MetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters for the JDBC connection pool, used to size hibernate.connection.pool_size.
+ * Wait time is how long a request blocked before it was handed a connection.
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory, JSONSerializer {
+    private final LongAdder acquiredCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeoutCount = new LongAdder();
+    private volatile PoolStats poolStats;
+
+    @Override
+    public MetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new MetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquiredCount.increment();
+                totalWaitNanos.add(elapsedAcquiredNanos);
+                maxWaitNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeoutCount.increment();
+            }
+        };
+    }
+
+    public int getActiveConnections() {
+        return poolStats == null ? 0 : poolStats.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        return poolStats == null ? 0 : poolStats.getIdleConnections();
+    }
+
+    public int getTotalConnections() {
+        return poolStats == null ? 0 : poolStats.getTotalConnections();
+    }
+
+    public int getThreadsAwaitingConnection() {
+        return poolStats == null ? 0 : poolStats.getPendingThreads();
+    }
+
+    public long getConnectionsAcquired() {
+        return acquiredCount.sum();
+    }
+
+    public long getConnectionTimeouts() {
+        return timeoutCount.sum();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = acquiredCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        return (double) totalWaitNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxWaitMillis() {
+        return (double) maxWaitNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toJson() {
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("active", getActiveConnections());
+        jsonObject.addProperty("idle", getIdleConnections());
+        jsonObject.addProperty("total", getTotalConnections());
+        jsonObject.addProperty("waiting", getThreadsAwaitingConnection());
+        jsonObject.addProperty("acquired", getConnectionsAcquired());
+        jsonObject.addProperty("timeouts", getConnectionTimeouts());
+        jsonObject.addProperty("averageWaitMillis", getAverageWaitMillis());
+        jsonObject.addProperty("maxWaitMillis", getMaxWaitMillis());
+        return jsonObject.toString();
+    }
+}
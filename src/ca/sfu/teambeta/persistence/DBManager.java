@@ -6,23 +6,55 @@ import ca.sfu.teambeta.core.exceptions.AccountRegistrationException;
 import ca.sfu.teambeta.core.exceptions.IllegalDatabaseOperation;
 import ca.sfu.teambeta.core.exceptions.NoSuchUserException;
 import ca.sfu.teambeta.logic.GameSession;
+import ca.sfu.teambeta.logic.ProjectedLadder;
+import ca.sfu.teambeta.logic.RatingEngine;
+import ca.sfu.teambeta.logic.TimeSelection;
 import ca.sfu.teambeta.logic.VrcLadderReorderer;
-import ca.sfu.teambeta.logic.VrcScorecardGenerator;
 import ca.sfu.teambeta.logic.VrcTimeSelection;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.FlushMode;
 import org.hibernate.HibernateException;
+import org.hibernate.LockMode;
+import org.hibernate.LockOptions;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
 import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.criterion.*;
+import org.hibernate.dialect.lock.OptimisticEntityLockException;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Utility class that reads and writes data to the database
@@ -33,16 +65,81 @@ public class DBManager {
     private static final String PRODUCTION_CFG_XML = "hibernate.production.cfg.xml";
     private static final String DOCKER_CFG_XML = "hibernate.docker.cfg.xml";
     private static final String H2_CFG_XML = "hibernate.h2.cfg.xml";
+    private static final String H2_MEMORY_CFG_XML = "hibernate.h2.memory.cfg.xml";
+    private static final String LOCAL_CFG_XML = "hibernate.local.cfg.xml";
     private static String TESTING_ENV_VAR = "TESTING";
-    private Session session;
+    // Keeps IN (...) lists well under what any database will parse
+    private static final int BULK_FETCH_SIZE = 1000;
+    private static final String LADDER_RESPONSE = "ladder";
+    private static final String SCORECARDS_RESPONSE = "scorecards";
+    private static final String REORDER_PREVIEW_RESPONSE = "reorder-preview";
+    private static final int JOURNAL_COMPACT_EVERY = 500;
+    // This week's and last week's, which the read model serves
+    private static final int LIVE_GAME_SESSIONS = 2;
+    // Times a ladder mutation is run before a conflicting write is given up on
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+    // Query cache region for getUser(email), bounded in ehcache.xml
+    private static final String USER_BY_EMAIL_REGION = "user.byEmail";
+    // Everything the ladder, matches and reorder paths walk, one collection per
+    // query: joining several in one query would multiply its rows, and bags
+    // can't be fetched together at all. Pairs are shared across the graph, so
+    // their players only have to be fetched once, with the ladder.
+    private static final String[][] GAME_SESSION_FETCH_PLAN = {
+            {"ladder", "ladder.pairs", "ladder.pairs.players"},
+            {"activePairs"},
+            {"scorecards", "scorecards.pairs"},
+            {"scorecards", "scorecards.pairRankings"},
+            {"penalties"},
+            {"timeSlots"},
+            {"reorderedLadder", "reorderedLadder.pairs", "reorderedLadder.pairs.players"}
+    };
+    private static final Gson LADDER_GSON = new GsonBuilder()
+            .registerTypeAdapter(GameSession.class, new LadderJSONSerializer())
+            .create();
+    private static final Gson SCORECARDS_GSON = new GsonBuilder()
+            .registerTypeAdapter(Scorecard.class, new ScorecardSerializer())
+            .create();
+    private SessionFactory factory;
 
-    public DBManager(SessionFactory factory) {
-        this.session = factory.openSession();
-    }
+    // Every commit happens under it, along with the journal append and publish
+    // that follow. Ladder mutations only take it to commit; other writes hold it
+    // for their whole unit of work. Reads never take it.
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    // Held exclusively only while a write flushes and commits, so a reader can
+    // tell whether a commit landed in the middle of loading its graph
+    private final StampedLock commitLock = new StampedLock();
+    // Built on first use, then replaced under the write lock after every write
+    // that can change a GameSession
+    private volatile GameSessionSnapshot snapshot;
+    private final AtomicLong snapshotVersion = new AtomicLong();
+    private final ResponseCache responseCache = new ResponseCache();
+    private final LongAdder writeConflicts = new LongAdder();
+    // Optional. Only appended to under the write lock, so events are in commit order.
+    private volatile LadderJournal ladderJournal;
+    // Optional. Events in it are already part of the read model.
+    private volatile WriteBehindQueue writeBehind;
+    // Optional. Set when this database is a local copy of the production one.
+    private volatile LocalFirstReplicator replicator;
+    // Assigns time slots whenever a write changes the groups. Stateless, so
+    // the one in use can be swapped at any time.
+    private volatile TimeSelection timeSelection = new VrcTimeSelection();
+    // Next week's ladder for the latest GameSession, brought up to date as
+    // results and penalties come in. Guarded by its lock.
+    private final Object projectionLock = new Object();
+    private ProjectedLadder projectedLadder;
+    // Every Rating row by Rating.key, read from the table once and then kept up
+    // to date by the writes that change it. A row only replaces one of a lower
+    // version, so the load and a commit can land in either order.
+    private final Map<Long, Rating> ratings = new ConcurrentHashMap<>();
+    private volatile boolean ratingsLoaded = false;
+    private final AtomicBoolean ratingsRebuildQueued = new AtomicBoolean();
+    private final AtomicBoolean journalCompacting = new AtomicBoolean();
 
-    // Used for testing purposes where session needs to be closed
-    public DBManager(Session session) {
-        this.session = session;
+    // Every public method is its own unit of work: a short-lived Session and
+    // transaction drawn from the pool, so concurrent requests no longer queue up
+    // behind a single shared Session
+    public DBManager(SessionFactory factory) {
+        this.factory = factory;
     }
 
     // Use me if the database is down
@@ -58,6 +155,51 @@ public class DBManager {
         }
     }
 
+    // In-memory H2, for tests that shouldn't need a MySQL server
+    public static SessionFactory getH2MemorySession() {
+        Configuration config = new Configuration();
+        config.configure(H2_MEMORY_CFG_XML);
+        config.configure(HIBERNATE_CLASSES_XML);
+        try {
+            return config.buildSessionFactory();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            throw new RuntimeException();
+        }
+    }
+
+    // Another in-memory H2 database behind LatencyInjectingDriver, for tests that
+    // need a slow remote database next to the one from getH2MemorySession()
+    public static SessionFactory getH2MemorySession(String databaseName, long latencyMillis) {
+        Configuration config = new Configuration();
+        config.configure(H2_MEMORY_CFG_XML);
+        config.configure(HIBERNATE_CLASSES_XML);
+        config.setProperty(AvailableSettings.URL,
+                "jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1");
+        // So a test that makes it unreachable isn't kept waiting for a connection
+        config.setProperty(PooledConnectionProvider.POOL_TIMEOUT, "1000");
+        injectLatency(config, latencyMillis);
+        try {
+            return config.buildSessionFactory();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            throw new RuntimeException();
+        }
+    }
+
+    // Embedded H2 file database on the app host, for running local-first
+    public static SessionFactory getLocalSession() {
+        Configuration config = new Configuration();
+        config.configure(LOCAL_CFG_XML);
+        config.configure(HIBERNATE_CLASSES_XML);
+        try {
+            return config.buildSessionFactory();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            throw new RuntimeException();
+        }
+    }
+
     public static SessionFactory getMySQLSession(boolean create) {
         Configuration config = new Configuration();
         config.configure(LOCAL_TESTING_CFG_XML);
@@ -87,6 +229,27 @@ public class DBManager {
         }
     }
 
+    // The production database with every round trip delayed, to try out locally
+    // how the app copes with a slow link to it
+    public static SessionFactory getProductionSession(long latencyMillis) {
+        Configuration config = new Configuration();
+        config.configure(PRODUCTION_CFG_XML);
+        config.configure(HIBERNATE_CLASSES_XML);
+        injectLatency(config, latencyMillis);
+        try {
+            return config.buildSessionFactory();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            throw new RuntimeException();
+        }
+    }
+
+    private static void injectLatency(Configuration config, long latencyMillis) {
+        String url = config.getProperty(AvailableSettings.URL).trim();
+        config.setProperty(AvailableSettings.URL, LatencyInjectingDriver.wrapUrl(url, latencyMillis));
+        config.setProperty(AvailableSettings.DRIVER, LatencyInjectingDriver.class.getName());
+    }
+
     public static SessionFactory getTestingSession(boolean create) {
         boolean isTesting = System.getenv(TESTING_ENV_VAR) != null;
         Configuration config = new Configuration();
@@ -109,172 +272,1124 @@ public class DBManager {
         }
     }
 
-    public synchronized void persistEntity(Persistable entity) {
-        Transaction tx = session.beginTransaction();
+    private <T> T doInTransaction(UnitOfWork<T> work) {
+        writeLock.lock();
+        try {
+            return runUnitOfWork(work, false, false);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // For writes that may touch a GameSession: once committed, the read model
+    // is rebuilt before the write lock is released. Anything still queued for
+    // write-behind is committed first, so writes reach the database in order.
+    private <T> T doInGameSessionTransaction(UnitOfWork<T> work) {
+        writeLock.lock();
         try {
-            session.saveOrUpdate(entity);
-            tx.commit();
+            if (!flushPendingEvents()) {
+                return null;
+            }
+            return runUnitOfWork(work, false, true);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Entities loaded here aren't snapshotted for dirty checking and nothing
+    // is flushed, so reads never write and never wait on the write lock
+    private <T> T doInReadOnlyTransaction(UnitOfWork<T> work) {
+        return runUnitOfWork(work, true, false);
+    }
+
+    private <T> T runUnitOfWork(UnitOfWork<T> work, boolean readOnly, boolean publish) {
+        Session session = factory.openSession();
+        Transaction tx = null;
+        try {
+            if (readOnly) {
+                session.setDefaultReadOnly(true);
+                session.setFlushMode(FlushMode.MANUAL);
+            }
+            tx = session.beginTransaction();
+            T result = work.execute(session);
+            if (readOnly) {
+                tx.commit();
+            } else {
+                long stamp = commitLock.writeLock();
+                try {
+                    tx.commit();
+                } finally {
+                    commitLock.unlockWrite(stamp);
+                }
+                if (publish && snapshot != null) {
+                    publishSnapshot();
+                }
+            }
+            return result;
         } catch (HibernateException e) {
-            tx.rollback();
+            if (tx != null) {
+                tx.rollback();
+            }
             e.printStackTrace();
+            return null;
+        } finally {
+            session.close();
         }
     }
 
-    private Persistable getEntityFromID(Class persistable, int id) throws HibernateException {
+    // For ladder mutations, which can simply be run again. The work loads and
+    // changes its GameSession with no lock held, and nothing is flushed until
+    // the commit, which happens under the write lock along with onCommit and the
+    // publish. Should the commit lose to a concurrent write to the same rows, it
+    // is rolled back and the work run again against a fresh load.
+    private <T> T doInOptimisticTransaction(UnitOfWork<T> work, Consumer<T> onCommit) {
+        // Queued writes were made first, so they are committed first, and
+        // nothing is written past them while they can't be
+        if (writeBehind != null && !flushWriteBehind()) {
+            return null;
+        }
+        for (int attempt = 1; ; attempt++) {
+            // A write that keeps losing would starve, so the last attempt holds
+            // the write lock throughout and only a write from elsewhere can beat it
+            boolean last = attempt == MAX_WRITE_ATTEMPTS;
+            if (last) {
+                writeLock.lock();
+            }
+            try {
+                return runOptimisticUnitOfWork(work, onCommit);
+            } catch (StaleStateException | OptimisticEntityLockException e) {
+                writeConflicts.increment();
+                if (last) {
+                    e.printStackTrace();
+                    return null;
+                }
+            } finally {
+                if (last) {
+                    writeLock.unlock();
+                }
+            }
+        }
+    }
+
+    private <T> T doInOptimisticTransaction(UnitOfWork<T> work) {
+        return doInOptimisticTransaction(work, committed -> { });
+    }
+
+    private <T> T runOptimisticUnitOfWork(UnitOfWork<T> work, Consumer<T> onCommit) {
+        Session session = factory.openSession();
         Transaction tx = null;
-        Persistable entity = null;
         try {
+            // Flushing early would hold row locks while waiting for the write lock
+            session.setFlushMode(FlushMode.COMMIT);
             tx = session.beginTransaction();
-            entity = (Persistable) session.load(persistable, id);
-            tx.commit();
+            T result = work.execute(session);
+            writeLock.lock();
+            try {
+                long stamp = commitLock.writeLock();
+                try {
+                    tx.commit();
+                } finally {
+                    commitLock.unlockWrite(stamp);
+                }
+                if (result != null) {
+                    onCommit.accept(result);
+                }
+                if (snapshot != null) {
+                    publishSnapshot();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            return result;
+        } catch (StaleStateException | OptimisticEntityLockException e) {
+            if (tx != null) {
+                tx.rollback();
+            }
+            throw e;
         } catch (HibernateException e) {
-            tx.rollback();
+            if (tx != null) {
+                tx.rollback();
+            }
+            e.printStackTrace();
+            return null;
+        } finally {
+            session.close();
         }
-        return entity;
     }
 
-    public synchronized Player getPlayerFromID(int id) {
-        Player player = null;
+    // The change was worked out against the entity as loaded, so the commit
+    // fails if another write has moved its version on since
+    private static void verifyVersionAtCommit(Session session, Object entity) {
+        session.buildLockRequest(new LockOptions(LockMode.OPTIMISTIC)).lock(entity);
+    }
+
+    // For changes to rows of its own that wouldn't otherwise move the entity's
+    // version on, so that two of them still conflict
+    private static void incrementVersionAtCommit(Session session, Object entity) {
+        session.buildLockRequest(new LockOptions(LockMode.OPTIMISTIC_FORCE_INCREMENT))
+                .lock(entity);
+    }
+
+    // Commits that have lost to a concurrent write and were run again
+    public long getWriteConflictCount() {
+        return writeConflicts.sum();
+    }
+
+    // A graph spans several SELECTs, so a write committing halfway through would
+    // leave a reader with half of each version. Retry the load if that happened;
+    // the second attempt only waits for the commit itself, never a whole write.
+    private <T> T readConsistently(Supplier<T> read) {
+        long stamp = commitLock.tryOptimisticRead();
+        if (stamp != 0) {
+            T result = read.get();
+            if (commitLock.validate(stamp)) {
+                return result;
+            }
+        }
+        stamp = commitLock.readLock();
         try {
-            player = (Player) getEntityFromID(Player.class, id);
-        } catch (HibernateException e) {
+            return read.get();
+        } finally {
+            commitLock.unlockRead(stamp);
+        }
+    }
+
+    private <T> T updateGameSession(GameSession gameSession, GameSessionWork<T> work) {
+        return doInGameSessionTransaction(session ->
+                work.execute(session, loadForWrite(session, gameSession)));
+    }
+
+    // The GameSession a write against gameSession is made to. Published graphs
+    // are shared by every reader, so the write goes to a copy loaded in its own
+    // Session instead. A graph the caller owns is modified in place, but
+    // reloaded first: it may predate a write that committed while the caller
+    // held it, and flushing its stale collections would undo that write.
+    private static GameSession loadForWrite(Session session, GameSession gameSession) {
+        if (!gameSession.isPublished()) {
+            session.refresh(gameSession);
+        }
+        return fetchGameSession(session, gameSession.getID());
+    }
+
+    // For writes that always act on the latest GameSession. It is loaded in the
+    // write's own Session, so no second copy has to be hydrated first.
+    private static GameSession loadLatestForWrite(Session session) {
+        List<Integer> latest = getLatestGameSessionIds(session, 0, 1);
+        return latest.isEmpty() ? null : fetchGameSession(session, latest.get(0));
+    }
+
+    // Players taken from another graph are detached copies of rows this Session
+    // may already hold, and cascading a save to them would clash
+    private static Pair attachPlayers(Session session, Pair pair) {
+        List<Player> players = pair.getPlayers();
+        boolean detached = false;
+        for (int i = 0; i < players.size(); i++) {
+            Player player = players.get(i);
+            if (player.getID() != 0 && !session.contains(player)) {
+                players.set(i, session.get(Player.class, player.getID()));
+                detached = true;
+            }
+        }
+        if (!detached) {
+            return pair;
+        }
+        return new Pair(players.get(0), players.get(1), pair.isPlaying());
+    }
+
+    private boolean applyEvent(GameSession gameSession, LadderEvent event) {
+        return writeEvent(event, session -> loadForWrite(session, gameSession));
+    }
+
+    private boolean applyEventToLatest(LadderEvent event) {
+        return writeEvent(event, DBManager::loadLatestForWrite);
+    }
+
+    // Every GameSession write made by an event goes through here: the event
+    // makes the change, is re-applied to a fresh load if the commit conflicts,
+    // and is journaled once the change has committed
+    private boolean writeEvent(LadderEvent event, Function<Session, GameSession> load) {
+        LadderSnapshot[] before = new LadderSnapshot[1];
+        RatingUpdate[] ratingUpdate = new RatingUpdate[1];
+        Boolean changed = doInOptimisticTransaction(session -> {
+            ratingUpdate[0] = null;
+            GameSession target = load.apply(session);
+            if (target == null) {
+                return null;
+            }
+            // Load the pairs before any GameSession collection is walked, so those
+            // find them already in the Session with their players
+            Map<Integer, Pair> pairs = loadPairs(session, event.getPairIds());
+            verifyVersionAtCommit(session, target);
+            if (event.getType() == LadderEvent.Type.MATCH_RESULT) {
+                // Rankings are rows of their own, and changing one leaves its
+                // scorecard's version where it was
+                List<Scorecard> scored = new ArrayList<>();
+                for (Scorecard scorecard : target.getScorecards()) {
+                    if (!Collections.disjoint(scorecard.getPairs(), pairs.values())) {
+                        incrementVersionAtCommit(session, scorecard);
+                        scored.add(scorecard);
+                    }
+                }
+                ratingUpdate[0] = new RatingUpdate(session, target.getID(), scored);
+            }
+            before[0] = isJournaled(target.getID()) ? null : LadderSnapshot.of(target);
+            event.setGameSessionId(target.getID());
+            boolean applied = event.applyTo(target, pairs, timeSelection);
+            if (applied && ratingUpdate[0] != null) {
+                ratingUpdate[0].finish();
+            }
+            return applied;
+        }, committed -> {
+            if (before[0] != null) {
+                journalStateIfUnknown(before[0]);
+            }
+            journalCommitted(event);
+            if (ratingUpdate[0] != null) {
+                if (ratingUpdate[0].isOutOfOrder()) {
+                    requestRatingsRebuild();
+                } else {
+                    mergeRatings(ratingUpdate[0].getChanged());
+                }
+            }
+        });
+        return changed != null && changed;
+    }
+
+    public void setLadderJournal(LadderJournal ladderJournal) {
+        writeLock.lock();
+        try {
+            this.ladderJournal = ladderJournal;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public LadderJournal getLadderJournal() {
+        return ladderJournal;
+    }
+
+    // Must hold the write lock. The database stays the source of truth, so a
+    // journal that can't be written to is reported but doesn't fail the write.
+    private void journalCommitted(LadderEvent event) {
+        if (ladderJournal == null) {
+            return;
+        }
+        try {
+            ladderJournal.append(event);
+        } catch (IOException e) {
             e.printStackTrace();
+            return;
         }
-        return player;
+        if (ladderJournal.getEventsSinceSnapshot() >= JOURNAL_COMPACT_EVERY
+                && journalCompacting.compareAndSet(false, true)) {
+            // Replaying takes a while, so the write lock isn't held for it
+            Thread compactor = new Thread(() -> {
+                try {
+                    compactLadderJournal();
+                } finally {
+                    journalCompacting.set(false);
+                }
+            }, "ladder-journal-compactor");
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+    }
+
+    private boolean isJournaled(int gameSessionId) {
+        LadderJournal journal = ladderJournal;
+        return journal == null || journal.knowsGameSession(gameSessionId);
     }
 
-    public synchronized Pair getPairFromID(int id) {
-        Pair pair = null;
+    // Events only replay over a state the journal already has, so the first
+    // write to a GameSession it hasn't seen records that GameSession as it was.
+    // Must hold the write lock.
+    private void journalStateIfUnknown(GameSession gameSession) {
+        if (!isJournaled(gameSession.getID())) {
+            journalStateIfUnknown(LadderSnapshot.of(gameSession));
+        }
+    }
+
+    // The state may have been taken before the write lock was, so the journal
+    // is checked again
+    private void journalStateIfUnknown(LadderSnapshot state) {
+        if (isJournaled(state.getGameSessionId())) {
+            return;
+        }
         try {
-            pair = (Pair) getEntityFromID(Pair.class, id);
-        } catch (HibernateException e) {
+            ladderJournal.append(LadderEvent.snapshot(state));
+        } catch (IOException e) {
             e.printStackTrace();
         }
-        return pair;
     }
 
-    public synchronized Ladder getLatestLadder() {
+    // Rebuilds a GameSession from the ladder journal alone, as a new unsaved
+    // graph. Null if there is no journal or it has no state for that GameSession.
+    public GameSession rebuildGameSession(int gameSessionId) {
+        Map<Integer, GameSession> gameSessions = replayLadderJournal(
+                Collections.singleton(gameSessionId), new LadderJournal[1], new long[1]);
+        return gameSessions == null ? null : gameSessions.get(gameSessionId);
+    }
+
+    // Folds the journal into a new snapshot of the live GameSessions, the ones
+    // the read model serves; any other is journaled again from the database if
+    // it is written to. Replayed with no lock held, so writes carry on, and
+    // their events are kept for after the snapshot.
+    public boolean compactLadderJournal() {
+        List<Integer> live = doInReadOnlyTransaction(
+                session -> getLatestGameSessionIds(session, 0, LIVE_GAME_SESSIONS));
+        if (live == null) {
+            return false;
+        }
+        LadderJournal[] journal = new LadderJournal[1];
+        long[] throughSequence = new long[1];
+        Map<Integer, GameSession> gameSessions = replayLadderJournal(
+                new HashSet<>(live), journal, throughSequence);
+        if (gameSessions == null) {
+            return false;
+        }
+        List<LadderSnapshot> states = new ArrayList<>();
+        gameSessions.forEach((id, gameSession) ->
+                states.add(LadderSnapshot.of(id, gameSession)));
+        try {
+            journal[0].compact(throughSequence[0], states);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Rebuilds the GameSessions with ids in gameSessionIds, keyed by id, from
+    // the journal put in journal as of the sequence put in throughSequence
+    private Map<Integer, GameSession> replayLadderJournal(Set<Integer> gameSessionIds,
+                                                          LadderJournal[] journal,
+                                                          long[] throughSequence) {
+        LadderJournal.Snapshot journalSnapshot;
+        List<LadderEvent> events;
+        // All under the write lock, so no append or compaction lands in between
+        writeLock.lock();
+        try {
+            journal[0] = ladderJournal;
+            if (journal[0] == null) {
+                return null;
+            }
+            throughSequence[0] = journal[0].getLastSequence();
+            journalSnapshot = journal[0].readSnapshot();
+            events = journal[0].readEvents();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            writeLock.unlock();
+        }
+        List<LadderSnapshot> states = new ArrayList<>();
+        for (LadderSnapshot state : journalSnapshot.getGameSessions()) {
+            if (gameSessionIds.contains(state.getGameSessionId())) {
+                states.add(state);
+            }
+        }
+        events.removeIf(event -> !gameSessionIds.contains(event.getGameSessionId()));
+
+        Set<Integer> pairIds = new HashSet<>();
+        states.forEach(state -> pairIds.addAll(state.getPairIds()));
+        events.forEach(event -> pairIds.addAll(event.getPairIds()));
+        Map<Integer, Pair> pairs = getPairsFromIDs(pairIds);
+        if (pairs == null) {
+            return null;
+        }
+
+        Map<Integer, GameSession> gameSessions = new HashMap<>();
+        for (LadderSnapshot state : states) {
+            gameSessions.put(state.getGameSessionId(), state.toGameSession(pairs, timeSelection));
+        }
+        for (LadderEvent event : events) {
+            if (event.getType() == LadderEvent.Type.SNAPSHOT) {
+                gameSessions.put(event.getGameSessionId(),
+                        event.getSnapshot().toGameSession(pairs, timeSelection));
+                continue;
+            }
+            GameSession gameSession = gameSessions.get(event.getGameSessionId());
+            if (gameSession != null) {
+                event.applyTo(gameSession, pairs, timeSelection);
+            }
+        }
+        return gameSessions;
+    }
+
+    // Must hold the write lock, so that no commit lands between the load and
+    // the publish
+    private void publishSnapshot() {
+        GameSession[] latest = doInReadOnlyTransaction(session -> {
+            List<GameSession> gameSessions =
+                    fetchGameSessions(session, getLatestGameSessionIds(session, 0, 2));
+            GameSession[] result = new GameSession[2];
+            for (int i = 0; i < result.length && i < gameSessions.size(); i++) {
+                result[i] = initializeGameSession(gameSessions.get(i));
+                result[i].markPublished();
+            }
+            return result;
+        });
+        if (latest == null) {
+            // Couldn't load it; rebuild on the next read rather than serve stale data
+            snapshot = null;
+            return;
+        }
+        WriteBehindQueue queue = writeBehind;
+        if (queue == null) {
+            snapshot = new GameSessionSnapshot(
+                    snapshotVersion.incrementAndGet(), latest[0], latest[1]);
+            return;
+        }
+        // Queued events aren't in the database yet, but were already visible
+        queue.withPending(events -> {
+            GameSession current = latest[0];
+            if (current != null) {
+                Map<Integer, Pair> pairs = getPairsByID(current);
+                for (LadderEvent event : events) {
+                    if (event.getGameSessionId() == current.getID()) {
+                        event.applyTo(current, pairs, timeSelection);
+                    }
+                }
+            }
+            snapshot = new GameSessionSnapshot(
+                    snapshotVersion.incrementAndGet(), current, latest[1]);
+        });
+    }
+
+    private static Map<Integer, Pair> getPairsByID(GameSession gameSession) {
+        Map<Integer, Pair> pairs = new HashMap<>();
+        for (Pair pair : gameSession.getAllPairs()) {
+            pairs.put(pair.getID(), pair);
+        }
+        return pairs;
+    }
+
+    // Optional: status and time slot changes to the latest GameSession return as
+    // soon as the read model has them, and are committed in the background in
+    // batches of up to maxBatchSize, at most maxDelayMillis after being made
+    public void enableWriteBehind(int capacity, int maxBatchSize, long maxDelayMillis) {
+        writeLock.lock();
+        try {
+            if (writeBehind == null) {
+                writeBehind = new WriteBehindQueue(capacity, maxBatchSize, maxDelayMillis,
+                        this::flushWriteBehind);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Commits everything still queued before returning, so call it on shutdown.
+    // False if that couldn't be done; what is left stays queued, and is
+    // committed by the next write or the next call.
+    public boolean disableWriteBehind() {
+        WriteBehindQueue queue = writeBehind;
+        if (queue == null) {
+            return true;
+        }
+        queue.close();
+        writeLock.lock();
+        try {
+            if (!flushPendingEvents()) {
+                return false;
+            }
+            writeBehind = null;
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public WriteBehindQueue getWriteBehindQueue() {
+        return writeBehind;
+    }
+
+    // Optional: treats this DBManager's database as the primary and copies every
+    // commit on to the one remote connects to, in the background. If this
+    // database has no rows yet, it is first filled from the remote.
+    public void enableReplication(Supplier<SessionFactory> remote, long retryMillis) {
+        writeLock.lock();
+        try {
+            if (replicator == null) {
+                replicator = new LocalFirstReplicator(factory, remote, retryMillis,
+                        this::restoreBinarySnapshot);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Pushes what is still pending if the remote can be reached, so call it on
+    // shutdown after disableWriteBehind()
+    public void disableReplication() {
+        LocalFirstReplicator current = replicator;
+        if (current == null) {
+            return;
+        }
+        replicator = null;
+        current.close();
+    }
+
+    public LocalFirstReplicator getReplicator() {
+        return replicator;
+    }
+
+    // Changes made from now on, and journal replays, assign time slots with it
+    public void setTimeSelection(TimeSelection timeSelection) {
+        this.timeSelection = timeSelection;
+    }
+
+    public TimeSelection getTimeSelection() {
+        return timeSelection;
+    }
+
+    // Makes the change to a copy of the latest GameSession in the read model and
+    // queues it. Null if it wasn't queued and has to be written straight away:
+    // write-behind is off, the GameSession isn't the latest, or a pair isn't in it.
+    private Boolean applyEventBehind(GameSession gameSession, LadderEvent event) {
+        WriteBehindQueue queue = writeBehind;
+        if (queue == null || getGameSessionSnapshot() == null) {
+            return null;
+        }
+        boolean[] changed = new boolean[1];
+        boolean queued = queue.offer(event, () -> {
+            GameSessionSnapshot current = snapshot;
+            if (current == null || current.getCurrent() == null) {
+                return false;
+            }
+            GameSession latest = current.getCurrent();
+            if (gameSession != null && (!gameSession.isPublished()
+                    || gameSession.getID() != latest.getID())) {
+                return false;
+            }
+            Map<Integer, Pair> pairs = getPairsByID(latest);
+            if (!pairs.keySet().containsAll(event.getPairIds())) {
+                return false;
+            }
+            GameSession next = new GameSession(latest);
+            event.setGameSessionId(next.getID());
+            changed[0] = event.applyTo(next, pairs, timeSelection);
+            next.markPublished();
+            snapshot = new GameSessionSnapshot(
+                    snapshotVersion.incrementAndGet(), next, current.getPrevious());
+            return true;
+        });
+        return queued ? changed[0] : null;
+    }
+
+    private boolean flushWriteBehind() {
+        writeLock.lock();
+        try {
+            return flushPendingEvents();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Must hold the write lock. Each batch is one transaction; a batch that fails
+    // to commit stays queued to be tried again, and false is returned. Once the
+    // queue gives up on an event, the read model is rebuilt without it and the
+    // rest are flushed.
+    private boolean flushPendingEvents() {
+        WriteBehindQueue queue = writeBehind;
+        if (queue == null) {
+            return true;
+        }
+        while (true) {
+            List<LadderEvent> batch = queue.nextBatch();
+            if (batch.isEmpty()) {
+                return true;
+            }
+            long start = System.nanoTime();
+            Boolean committed = runUnitOfWork(session -> {
+                Set<Integer> pairIds = new HashSet<>();
+                batch.forEach(event -> pairIds.addAll(event.getPairIds()));
+                Map<Integer, Pair> pairs = loadPairs(session, pairIds);
+                Map<Integer, GameSession> targets = new HashMap<>();
+                for (LadderEvent event : batch) {
+                    GameSession target = targets.get(event.getGameSessionId());
+                    if (target == null) {
+                        target = fetchGameSession(session, event.getGameSessionId());
+                        if (target == null) {
+                            continue;
+                        }
+                        journalStateIfUnknown(target);
+                        targets.put(target.getID(), target);
+                    }
+                    try {
+                        event.applyTo(target, pairs, timeSelection);
+                    } catch (RuntimeException e) {
+                        // Rolled back and counted as a failed flush like any other
+                        throw new HibernateException("Couldn't apply a write-behind event", e);
+                    }
+                }
+                return true;
+            }, false, false);
+            boolean done = queue.recordFlush(System.nanoTime() - start, committed != null);
+            if (committed == null && !done) {
+                return false;
+            }
+            if (committed != null) {
+                batch.forEach(this::journalCommitted);
+            }
+            if (snapshot != null) {
+                publishSnapshot();
+            }
+        }
+    }
+
+    public GameSessionSnapshot getGameSessionSnapshot() {
+        GameSessionSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        writeLock.lock();
+        try {
+            if (snapshot == null) {
+                publishSnapshot();
+            }
+            return snapshot;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Serves the latest GameSessions out of a BinarySnapshot until the read model
+    // is first built from the database. Does nothing once it has been.
+    public void warmReadModel(BinarySnapshot binarySnapshot) {
+        List<GameSession> gameSessions = new ArrayList<>(binarySnapshot.getRows(GameSession.class));
+        gameSessions.sort((a, b) -> a.getTimestamp() != b.getTimestamp()
+                ? Long.compare(b.getTimestamp(), a.getTimestamp())
+                : Integer.compare(b.getID(), a.getID()));
+        GameSession[] latest = new GameSession[2];
+        for (int i = 0; i < latest.length && i < gameSessions.size(); i++) {
+            latest[i] = gameSessions.get(i);
+            latest[i].markPublished();
+        }
+        writeLock.lock();
+        try {
+            if (snapshot == null) {
+                snapshot = new GameSessionSnapshot(
+                        snapshotVersion.incrementAndGet(), latest[0], latest[1]);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Replaces the read model with what the database has, keeping the current
+    // one if the database can't be read
+    public boolean refreshReadModel() {
+        writeLock.lock();
+        try {
+            GameSessionSnapshot current = snapshot;
+            publishSnapshot();
+            if (snapshot == null) {
+                snapshot = current;
+                return false;
+            }
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Holds the write lock throughout, so the copy is of a single point in time
+    public void writeBinarySnapshot(OutputStream out) throws IOException {
+        IOException[] failure = new IOException[1];
+        writeLock.lock();
+        try {
+            if (!flushPendingEvents()) {
+                throw new IOException("Couldn't commit the write-behind queue");
+            }
+            Boolean written = doInReadOnlyTransaction(session -> {
+                try {
+                    BinarySnapshot.write(session, out);
+                    return true;
+                } catch (IOException e) {
+                    failure[0] = e;
+                    return false;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            if (written == null) {
+                throw new IOException("Couldn't read the database");
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Written next to the file and moved over it, so a crash never leaves a
+    // partial snapshot behind
+    public void writeBinarySnapshot(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            writeBinarySnapshot(out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public BinarySnapshot readBinarySnapshot(InputStream in) throws IOException {
+        return BinarySnapshot.read(factory, in);
+    }
+
+    // Copies every row, with its id, into a database that has none yet. Returns
+    // false, having written nothing, if any table already has rows.
+    public boolean restoreBinarySnapshot(InputStream in) throws IOException {
+        return restoreBinarySnapshot(readBinarySnapshot(in));
+    }
+
+    public boolean restoreBinarySnapshot(BinarySnapshot binarySnapshot) {
+        writeLock.lock();
+        Session session = factory.withOptions()
+                .interceptor(BinarySnapshot.ROWS_ARE_SAVED)
+                .openSession();
         Transaction tx = null;
-        Ladder ladder = null;
         try {
             tx = session.beginTransaction();
-            DetachedCriteria maxId = DetachedCriteria.forClass(Ladder.class)
-                    .setProjection(Projections.max("id"));
-            ladder = (Ladder) session.createCriteria(Ladder.class)
-                    .add(Property.forName("id").eq(maxId))
-                    .uniqueResult();
-            tx.commit();
+            if (BinarySnapshot.hasRows(session)) {
+                tx.rollback();
+                return false;
+            }
+            binarySnapshot.insertRows(session);
+            long stamp = commitLock.writeLock();
+            try {
+                tx.commit();
+            } finally {
+                commitLock.unlockWrite(stamp);
+            }
         } catch (HibernateException e) {
-            tx.rollback();
+            if (tx != null) {
+                tx.rollback();
+            }
+            e.printStackTrace();
+            return false;
+        } finally {
+            session.close();
+            writeLock.unlock();
+        }
+        // Nothing cached or published can be of these rows
+        factory.getCache().evictAllRegions();
+        snapshot = null;
+        return true;
+    }
+
+    // Newest first, reading only the rows asked for off the timestamp index
+    private static List<Integer> getLatestGameSessionIds(Session session, int offset, int count) {
+        return list(session.createCriteria(GameSession.class)
+                .setProjection(Projections.id())
+                .addOrder(Order.desc("timestamp"))
+                .addOrder(Order.desc("id"))
+                .setFirstResult(offset)
+                .setMaxResults(count));
+    }
+
+    // The criteria's results, as the type it was built to return
+    @SuppressWarnings("unchecked")
+    static <T> List<T> list(Criteria criteria) {
+        return criteria.list();
+    }
+
+    // Loads GameSessions through GAME_SESSION_FETCH_PLAN, so walking them
+    // afterwards takes no further queries however many pairs they hold.
+    // Returned in the order of ids; ids that don't exist are left out.
+    private static List<GameSession> fetchGameSessions(Session session, List<Integer> ids) {
+        Map<Integer, GameSession> gameSessions = new HashMap<>();
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        for (String[] paths : GAME_SESSION_FETCH_PLAN) {
+            Criteria criteria = session.createCriteria(GameSession.class)
+                    .add(Restrictions.in("id", ids))
+                    .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+            for (String path : paths) {
+                criteria.setFetchMode(path, FetchMode.JOIN);
+            }
+            for (GameSession gameSession : DBManager.<GameSession>list(criteria)) {
+                gameSessions.put(gameSession.getID(), gameSession);
+            }
+        }
+        List<GameSession> ordered = new ArrayList<>();
+        for (int id : ids) {
+            if (gameSessions.containsKey(id)) {
+                ordered.add(gameSessions.get(id));
+            }
+        }
+        return ordered;
+    }
+
+    private static GameSession fetchGameSession(Session session, int id) {
+        List<GameSession> gameSessions = fetchGameSessions(session, Collections.singletonList(id));
+        return gameSessions.isEmpty() ? null : gameSessions.get(0);
+    }
+
+    public long getGameSessionVersion() {
+        GameSessionSnapshot current = getGameSessionSnapshot();
+        return current == null ? 0 : current.getVersion();
+    }
+
+    // Everything handed out by DBManager outlives its Session, so lazy
+    // associations have to be loaded before the unit of work ends
+    private static Pair initializePair(Pair pair) {
+        if (pair != null) {
+            pair.getPlayers();
+        }
+        return pair;
+    }
+
+    private static Ladder initializeLadder(Ladder ladder) {
+        if (ladder != null) {
+            ladder.getPairs().forEach(DBManager::initializePair);
         }
         return ladder;
     }
 
-    private synchronized GameSession getGameSessionByVersion(GameSessionVersion version) {
-        Transaction tx = null;
-        List gameSessions = null;
-        GameSession gameSession = null;
+    private static GameSession initializeGameSession(GameSession gameSession) {
+        if (gameSession == null) {
+            return null;
+        }
+        gameSession.getAllPairs().forEach(DBManager::initializePair);
+        gameSession.getActivePairSet().forEach(DBManager::initializePair);
+        for (Scorecard scorecard : gameSession.getScorecards()) {
+            scorecard.getReorderedPairs().forEach(DBManager::initializePair);
+        }
+        gameSession.getTimeSlots();
+        gameSession.getPenalties();
+        initializeLadder(gameSession.getReorderedLadder());
+        return gameSession;
+    }
+
+    public ConnectionPoolMetrics getConnectionPoolMetrics() {
+        ConnectionProvider provider = ((SessionFactoryImplementor) factory)
+                .getServiceRegistry().getService(ConnectionProvider.class);
+        if (provider instanceof PooledConnectionProvider) {
+            return ((PooledConnectionProvider) provider).getMetrics();
+        }
+        return null;
+    }
+
+    public SecondLevelCacheMetrics getSecondLevelCacheMetrics() {
+        return new SecondLevelCacheMetrics(factory.getStatistics());
+    }
+
+    public void persistEntity(Persistable entity) {
+        // Users aren't part of any GameSession
+        if (entity instanceof User) {
+            doInTransaction(session -> {
+                session.saveOrUpdate(entity);
+                return null;
+            });
+            return;
+        }
+        writeLock.lock();
         try {
-            tx = session.beginTransaction();
-            DetachedCriteria idCriteria = DetachedCriteria.forClass(GameSession.class)
-                    .setProjection(Projections.id());
-            gameSessions = session.createCriteria(GameSession.class)
-                    .add(Property.forName("id").in(idCriteria))
-                    .addOrder(Order.desc("timestamp"))
-                    .list();
-            tx.commit();
+            LadderSnapshot state = doInGameSessionTransaction(session -> {
+                session.saveOrUpdate(entity);
+                if (!(entity instanceof GameSession) || ladderJournal == null) {
+                    return null;
+                }
+                // Flush first, so every new pair has its id
+                session.flush();
+                return LadderSnapshot.of((GameSession) entity);
+            });
+            if (state != null) {
+                journalCommitted(LadderEvent.snapshot(state));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-            int gameSessionIndex = -1;
+    public Player getPlayerFromID(int id) {
+        return doInReadOnlyTransaction(session -> session.get(Player.class, id));
+    }
 
-            if (version == null || version == GameSessionVersion.CURRENT) {
-                gameSessionIndex = 0;
-            } else if (version == GameSessionVersion.PREVIOUS) {
-                gameSessionIndex = 1;
+    // Players already in the session's graph must be reused, otherwise saving
+    // a new pair would attach a second copy of the same row
+    public Player getPlayerFromID(GameSession gameSession, int id) {
+        for (Pair pair : gameSession.getAllPairs()) {
+            for (Player player : pair.getPlayers()) {
+                if (player.getID() == id) {
+                    return player;
+                }
             }
+        }
+        return getPlayerFromID(id);
+    }
 
-            gameSession = (GameSession) gameSessions.get(gameSessionIndex);
+    public Pair getPairFromID(int id) {
+        return doInReadOnlyTransaction(session -> initializePair(session.get(Pair.class, id)));
+    }
 
-        } catch (HibernateException e) {
-            tx.rollback();
-        } catch (IndexOutOfBoundsException e) {
+    // Ids that don't exist are left out of the result
+    public Map<Integer, Pair> getPairsFromIDs(Collection<Integer> ids) {
+        return doInReadOnlyTransaction(session -> loadPairs(session, ids));
+    }
+
+    public Map<Integer, Player> getPlayersFromIDs(Collection<Integer> ids) {
+        return doInReadOnlyTransaction(session -> {
+            Map<Integer, Player> players = new HashMap<>();
+            for (List<Integer> chunk : chunk(ids)) {
+                List<Player> results = list(session.createCriteria(Player.class)
+                        .add(Restrictions.in("id", chunk)));
+                for (Player player : results) {
+                    players.put(player.getID(), player);
+                }
+            }
+            return players;
+        });
+    }
+
+    // One query per BULK_FETCH_SIZE ids, with each pair's players joined in
+    private static Map<Integer, Pair> loadPairs(Session session, Collection<Integer> ids) {
+        Map<Integer, Pair> pairs = new HashMap<>();
+        for (List<Integer> chunk : chunk(ids)) {
+            List<Pair> results = list(session.createCriteria(Pair.class)
+                    .add(Restrictions.in("id", chunk))
+                    .setFetchMode("players", FetchMode.JOIN)
+                    .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY));
+            for (Pair pair : results) {
+                pairs.put(pair.getID(), pair);
+            }
+        }
+        return pairs;
+    }
+
+    private static List<List<Integer>> chunk(Collection<Integer> ids) {
+        List<Integer> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (int i = 0; i < distinctIds.size(); i += BULK_FETCH_SIZE) {
+            chunks.add(distinctIds.subList(i,
+                    Math.min(i + BULK_FETCH_SIZE, distinctIds.size())));
+        }
+        return chunks;
+    }
+
+    public Ladder getLatestLadder() {
+        return readConsistently(() -> doInReadOnlyTransaction(session -> {
+            DetachedCriteria maxId = DetachedCriteria.forClass(Ladder.class)
+                    .setProjection(Projections.max("id"));
+            Ladder ladder = (Ladder) session.createCriteria(Ladder.class)
+                    .add(Property.forName("id").eq(maxId))
+                    .setFetchMode("pairs", FetchMode.JOIN)
+                    .setFetchMode("pairs.players", FetchMode.JOIN)
+                    .setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY)
+                    .uniqueResult();
+            return initializeLadder(ladder);
+        }));
+    }
+
+    // Served from the read model. The graph returned is shared, so it must only
+    // be read, or handed back to DBManager to write against.
+    private GameSession getGameSessionByVersion(GameSessionVersion version) {
+        GameSessionSnapshot current = getGameSessionSnapshot();
+        if (current == null) {
             return null;
         }
-        return gameSession;
+        return current.getGameSession(version);
     }
 
-    public synchronized GameSession getGameSessionLatest() {
+    public GameSession getGameSessionLatest() {
         return getGameSessionByVersion(GameSessionVersion.CURRENT);
     }
 
-    public synchronized GameSession getGameSessionPrevious() {
+    public GameSession getGameSessionPrevious() {
         return getGameSessionByVersion(GameSessionVersion.PREVIOUS);
     }
 
+    // 0 is the latest GameSession, 1 the one before it, and so on. The two newest
+    // come from the read model; older weeks are loaded one at a time.
+    public GameSession getGameSession(int offsetFromLatest) {
+        if (offsetFromLatest < 0) {
+            return null;
+        } else if (offsetFromLatest == 0) {
+            return getGameSessionLatest();
+        } else if (offsetFromLatest == 1) {
+            return getGameSessionPrevious();
+        }
+        return readConsistently(() -> doInReadOnlyTransaction(session -> {
+            List<GameSession> gameSessions = fetchGameSessions(session,
+                    getLatestGameSessionIds(session, offsetFromLatest, 1));
+            if (gameSessions.isEmpty()) {
+                return null;
+            }
+            return initializeGameSession(gameSessions.get(0));
+        }));
+    }
+
     public void addPenaltyToPair(GameSession gameSession, int pairId, Penalty penalty) {
-        Pair pair = getPairFromID(pairId);
-        gameSession.setPenaltyToPair(pair, penalty);
+        applyEvent(gameSession, LadderEvent.penalty(pairId, penalty));
+        updateProjectedLadder();
     }
 
-    public synchronized void addPairToLatestLadder(Pair pair) {
-        Transaction tx = null;
-        Ladder ladder = null;
-        try {
-            tx = session.beginTransaction();
+    public void addPairToLatestLadder(Pair pair) {
+        doInGameSessionTransaction(session -> {
             DetachedCriteria maxId = DetachedCriteria.forClass(Ladder.class)
                     .setProjection(Projections.max("id"));
-            ladder = (Ladder) session.createCriteria(Ladder.class)
+            Ladder ladder = (Ladder) session.createCriteria(Ladder.class)
                     .add(Property.forName("id").eq(maxId))
                     .uniqueResult();
             ladder.insertAtEnd(pair);
-            tx.commit();
-        } catch (HibernateException e) {
-            tx.rollback();
-        }
+            return null;
+        });
     }
 
-    public synchronized void addPair(GameSession gameSession, Pair pair, int position) {
-        gameSession.addNewPairAtIndex(pair, position);
-        persistEntity(gameSession);
+    public void addPair(GameSession gameSession, Pair pair, int position) {
+        addPairAt(gameSession, pair, false, position);
     }
 
-    public synchronized void addPair(GameSession gameSession, Pair pair) {
-        gameSession.addNewPairAtEnd(pair);
-        persistEntity(gameSession);
+    public void addPair(GameSession gameSession, Pair pair) {
+        addPairAt(gameSession, pair, true, 0);
     }
 
-    public synchronized boolean removePair(int pairId) {
-        GameSession gameSession = getGameSessionLatest();
-        Transaction tx = session.beginTransaction();
-        Pair pair = null;
+    // The pair may be new, so there is no id to build the event from until the
+    // pair has been saved
+    private void addPairAt(GameSession gameSession, Pair pair, boolean atEnd, int position) {
+        writeLock.lock();
         try {
-            pair = session.load(Pair.class, pairId);
-            tx.commit();
-        } catch (HibernateException e) {
-            tx.rollback();
-            throw e;
+            LadderEvent event = updateGameSession(gameSession, (session, target) -> {
+                journalStateIfUnknown(target);
+                Pair attached = attachPlayers(session, pair);
+                if (atEnd) {
+                    target.addNewPairAtEnd(attached);
+                } else {
+                    target.addNewPairAtIndex(attached, position);
+                }
+                // Already in the ladder, or the position was out of range
+                List<Pair> ladder = target.getAllPairs();
+                if (!ladder.contains(attached)) {
+                    return null;
+                }
+                session.flush();
+                LadderEvent added = LadderEvent.addPair(attached.getID(),
+                        atEnd ? ladder.size() - 1 : position);
+                added.setGameSessionId(target.getID());
+                return added;
+            });
+            if (event != null) {
+                journalCommitted(event);
+            }
+        } finally {
+            writeLock.unlock();
         }
+    }
 
-        boolean removed = gameSession.removePairFromLadder(pair);
-
-        persistEntity(gameSession);
-
-        return removed;
+    public boolean removePair(int pairId) {
+        return applyEventToLatest(LadderEvent.removePair(pairId));
     }
 
-    public synchronized boolean hasPairID(int id) {
+    public boolean hasPairID(int id) {
         return getPairFromID(id) != null;
     }
 
-    public synchronized void movePair(GameSession gameSession, int pairId, int newPosition) {
-        Pair pair = getPairFromID(pairId);
-        int previousPosition = pair.getLastWeekPosition();
-        removePair(pairId);
-        gameSession.addNewPairAtIndex(pair, newPosition);
-        pair.setLastWeekPosition(previousPosition);
-        persistEntity(gameSession);
+    public void movePair(GameSession gameSession, int pairId, int newPosition) {
+        applyEvent(gameSession, LadderEvent.movePair(pairId, newPosition));
     }
 
-    public synchronized Player getAlreadyActivePlayer(
+    public Player getAlreadyActivePlayer(
             GameSession gameSession, int id) throws Exception {
         Pair pair = getPairFromID(id);
         Player player;
@@ -286,191 +1401,408 @@ public class DBManager {
         return player;
     }
 
-    public synchronized boolean setPairActive(GameSession gameSession, int pairId) {
-        Pair pair = getPairFromID(pairId);
-        boolean activated = gameSession.setPairActive(pair);
-        gameSession.setTimeSlot(pair, Time.NO_SLOT);
-        gameSession.createGroups(new VrcScorecardGenerator(), new VrcTimeSelection());
-        persistEntity(gameSession);
-        return activated;
+    public boolean setPairActive(GameSession gameSession, int pairId) {
+        LadderEvent event = LadderEvent.setActive(pairId);
+        Boolean activated = applyEventBehind(gameSession, event);
+        if (activated != null) {
+            return activated;
+        }
+        return applyEvent(gameSession, event);
     }
 
-    public synchronized void setPairInactive(GameSession gameSession, int pairId) {
-        Pair pair = getPairFromID(pairId);
-        gameSession.setPairInactive(pair);
-        gameSession.createGroups(new VrcScorecardGenerator(), new VrcTimeSelection());
-        persistEntity(gameSession);
+    public void setPairInactive(GameSession gameSession, int pairId) {
+        LadderEvent event = LadderEvent.setInactive(pairId);
+        if (applyEventBehind(gameSession, event) == null) {
+            applyEvent(gameSession, event);
+        }
     }
 
-    public synchronized boolean isActivePair(GameSession gameSession, int pairId) {
-        Pair pair = getPairFromID(pairId);
+    public boolean isActivePair(GameSession gameSession, int pairId) {
+        return gameSession.isActivePair(pairId);
+    }
 
-        boolean status = gameSession.isActivePair(pair);
-        persistEntity(gameSession);
-        return status;
+    // Returns null if the player isn't playing in this GameSession
+    public Pair getActivePairOfPlayer(GameSession gameSession, int playerId) {
+        return gameSession.getActivePair(playerId);
     }
 
-    public synchronized int getLadderSize(GameSession gameSession) {
+    public int getLadderSize(GameSession gameSession) {
         List<Pair> ladder = gameSession.getAllPairs();
         return ladder.size();
     }
 
-    public synchronized String getJSONLadder(GameSession gameSession) {
-        Gson gson = new GsonBuilder()
-                .registerTypeAdapter(GameSession.class, new LadderJSONSerializer())
-                .create();
-        return gson.toJson(gameSession);
+    public String getJSONLadder(GameSession gameSession) {
+        return LADDER_GSON.toJson(gameSession);
     }
 
-    public synchronized String getJSONScorecards(GameSession gameSession) {
+    public String getJSONScorecards(GameSession gameSession) {
         List<Scorecard> scorecards = gameSession.getScorecards();
-        Gson gson = new GsonBuilder()
-                .registerTypeAdapter(Scorecard.class, new ScorecardSerializer())
-                .create();
+        return SCORECARDS_GSON.toJson(scorecards);
+    }
 
-        return gson.toJson(scorecards);
+    // Next week's ladder if gameSession were reordered now, without writing
+    // anything; an empty array if it has no groups yet
+    public String getJSONReorderPreview(GameSession gameSession) {
+        List<Pair> reordered = gameSession.previewReorderedLadder(new VrcLadderReorderer());
+        return new ReorderPreviewJSONSerializer(gameSession, reordered).toJson();
     }
 
-    public synchronized String getJSONSession(String sessionToken) {
+    // As getJSONReorderPreview, but from the projection kept for the latest
+    // GameSession, which only works out again what changed since the last call
+    public String getJSONProjectedLadder(GameSession gameSession) {
+        return new ReorderPreviewJSONSerializer(gameSession, projectLadder(gameSession))
+                .toJson();
+    }
+
+    // Rebuilt if gameSession has changed in more than results and penalties
+    // since the projection was last brought up to date, or is another one
+    private List<Pair> projectLadder(GameSession gameSession) {
+        synchronized (projectionLock) {
+            if (projectedLadder == null || !projectedLadder.update(gameSession)) {
+                projectedLadder = new ProjectedLadder(gameSession, new VrcLadderReorderer());
+            }
+            return projectedLadder.getProjectedLadder();
+        }
+    }
+
+    // After a result or a penalty, so the projection is ready before it is read
+    private void updateProjectedLadder() {
+        GameSessionSnapshot current = snapshot;
+        if (current != null && current.getCurrent() != null) {
+            projectLadder(current.getCurrent());
+        }
+    }
+
+    // Serialized once per GameSessionSnapshot version, null if there is no such
+    // GameSession. The array is shared, so it must not be modified.
+    public byte[] getCachedJSONLadder(GameSessionVersion version) {
+        return getCachedResponse(LADDER_RESPONSE, version, this::getJSONLadder);
+    }
+
+    public byte[] getCachedJSONScorecards(GameSessionVersion version) {
+        return getCachedResponse(SCORECARDS_RESPONSE, version, this::getJSONScorecards);
+    }
+
+    // Worked out again only once a write, such as a result or a penalty, has
+    // changed the GameSession. The latest one's comes from its projection.
+    public byte[] getCachedJSONReorderPreview(GameSessionVersion version) {
+        return getCachedResponse(REORDER_PREVIEW_RESPONSE, version,
+                version == GameSessionVersion.PREVIOUS
+                        ? this::getJSONReorderPreview : this::getJSONProjectedLadder);
+    }
+
+    private byte[] getCachedResponse(String response, GameSessionVersion version,
+                                     Function<GameSession, String> serializer) {
+        GameSessionSnapshot current = getGameSessionSnapshot();
+        if (current == null) {
+            return null;
+        }
+        GameSession gameSession = current.getGameSession(version);
+        if (gameSession == null) {
+            return null;
+        }
+        return responseCache.get(response + "/" + version, current.getVersion(),
+                () -> serializer.apply(gameSession));
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public String getJSONSession(String sessionToken) {
         //ex: {"email":"test@gmail.com","admin":true}
         JSONSerializer serializer = new SessionJSONSerializer(sessionToken);
         return serializer.toJson();
     }
 
-    private GameSession getGameSession(int gameSessionId) {
-        Transaction tx = null;
-        GameSession gameSession = null;
+    private GameSession getGameSessionFromID(int gameSessionId) {
+        return readConsistently(() -> doInReadOnlyTransaction(session -> {
+            return initializeGameSession(fetchGameSession(session, gameSessionId));
+        }));
+    }
+
+    public User getUser(String email) {
+        // Cached results are dropped whenever the User table is written to
+        return doInReadOnlyTransaction(session -> (User) session.createCriteria(User.class)
+                .add(Restrictions.eq("email", email))
+                .setCacheable(true)
+                .setCacheRegion(USER_BY_EMAIL_REGION)
+                .uniqueResult());
+    }
+
+    public List<User> getAllUsersOfRole(UserRole role) {
+        return doInReadOnlyTransaction(session -> list(session.createCriteria(User.class)
+                .add(Restrictions.eq("role", role))));
+    }
+
+    public void deleteUser(String userEmail) throws NoSuchUserException, IllegalDatabaseOperation {
+        writeLock.lock();
         try {
-            tx = session.beginTransaction();
-            gameSession = (GameSession) session.createCriteria(GameSession.class)
-                    .add(Property.forName("id").eq(gameSessionId))
-                    .uniqueResult();
-            tx.commit();
-        } catch (HibernateException e) {
-            tx.rollback();
+            User user = getUser(userEmail);
+
+            if (user == null) {
+                throw new NoSuchUserException("No user exists for email: " + userEmail);
+            }
+
+            if (user.getUserRole() == UserRole.ADMINISTRATOR) {
+                throw new IllegalDatabaseOperation("Cannot delete an administrator");
+            }
+
+            doInTransaction(session -> {
+                session.delete(user);
+                return null;
+            });
+        } finally {
+            writeLock.unlock();
         }
-        return gameSession;
     }
 
-    public synchronized User getUser(String email) {
-        Transaction tx = null;
-        User user = null;
+    public void addNewUser(User user) throws AccountRegistrationException {
+        writeLock.lock();
         try {
-            tx = session.beginTransaction();
-            user = (User) session.createCriteria(User.class)
-                    .add(Restrictions.eq("email", email))
-                    .uniqueResult();
-            tx.commit();
-        } catch (HibernateException e) {
-            tx.rollback();
+            String email = user.getEmail();
+            boolean uniqueEmail = (getUser(email) == null);
+            if (!uniqueEmail) {
+                throw new AccountRegistrationException(
+                        "The email '" + email + "' is already in use");
+            }
+
+            persistEntity(user);
+        } finally {
+            writeLock.unlock();
         }
-        return user;
     }
 
-    public synchronized List<User> getAllUsersOfRole(UserRole role) {
-        Transaction tx = null;
-        List<User> anonymousUsers = null;
+    public void updateExistingUser(User user) {
+        persistEntity(user);
+    }
 
-        try {
-            tx = session.beginTransaction();
-            anonymousUsers = session.createCriteria(User.class).add(Restrictions.eq("role", role)).list();
-            tx.commit();
-        } catch (HibernateException e) {
-            tx.rollback();
-        }
-        return anonymousUsers;
+    public void addNewPlayer(Player player) throws AccountRegistrationException {
+        persistEntity(player);
     }
 
-    public synchronized void deleteUser(String userEmail) throws NoSuchUserException, IllegalDatabaseOperation {
+    // Rankings are in a format of pairID -> position in scorecard
+    public void setMatchResults(int scorecardId, Map<Integer, Integer> rankings) {
+        writeEvent(LadderEvent.matchResult(rankings), session -> {
+            Integer ownerId = (Integer) session.createCriteria(GameSession.class)
+                    .createAlias("scorecards", "scorecard")
+                    .add(Restrictions.eq("scorecard.id", scorecardId))
+                    .setProjection(Projections.id())
+                    .uniqueResult();
+            return ownerId == null ? null : fetchGameSession(session, ownerId);
+        });
+        updateProjectedLadder();
+    }
 
-        User user = getUser(userEmail);
+    // Returns the reordered GameSession, which is the caller's own graph unless
+    // a published one was passed in
+    public GameSession reorderLadder(GameSession gameSession) {
+        return doInOptimisticTransaction(session -> {
+            GameSession target = loadForWrite(session, gameSession);
+            verifyVersionAtCommit(session, target);
+            List<Pair> projected = isLatest(target)
+                    ? getOwnPairs(target, projectLadder(target)) : null;
+            if (projected != null) {
+                target.reorderLadder(projected);
+            } else {
+                target.reorderLadder(new VrcLadderReorderer(), timeSelection);
+            }
+            return initializeGameSession(target);
+        });
+    }
 
-        if (user == null) {
-            throw new NoSuchUserException("No user exists for email: " + userEmail);
-        }
+    private boolean isLatest(GameSession gameSession) {
+        GameSessionSnapshot current = snapshot;
+        return current != null && current.getCurrent() != null
+                && current.getCurrent().getID() == gameSession.getID();
+    }
 
-        if (user.getUserRole() == UserRole.ADMINISTRATOR) {
-            throw new IllegalDatabaseOperation("Cannot delete an administrator");
+    // The projection may hold pairs of an earlier load of the GameSession. Null
+    // if it has no groups, or holds a pair the GameSession doesn't.
+    private static List<Pair> getOwnPairs(GameSession gameSession, List<Pair> pairs) {
+        if (pairs.isEmpty()) {
+            return null;
         }
-
-        Transaction tx = null;
-        try {
-            tx = session.beginTransaction();
-            session.delete(user);
-            tx.commit();
-        } catch (HibernateException e) {
-            tx.rollback();
+        Map<Pair, Pair> ownPairs = new HashMap<>();
+        for (Pair pair : gameSession.getAllPairs()) {
+            ownPairs.put(pair, pair);
+        }
+        List<Pair> result = new ArrayList<>(pairs.size());
+        for (Pair pair : pairs) {
+            Pair own = ownPairs.get(pair);
+            if (own == null) {
+                return null;
+            }
+            result.add(own);
         }
+        return result;
     }
 
-    public synchronized void addNewUser(User user) throws AccountRegistrationException {
-        String email = user.getEmail();
-        boolean uniqueEmail = (getUser(email) == null);
-        if (!uniqueEmail) {
-            throw new AccountRegistrationException("The email '" + email + "' is already in use");
-        }
+    public GameSession createNewGameSession(GameSession sourceGameSession) {
+        Ladder nextWeekLadder = sourceGameSession.getReorderedLadder();
+        return new GameSession(nextWeekLadder, timeSelection);
+    }
 
-        Transaction tx = null;
-        try {
-            tx = session.beginTransaction();
-            session.saveOrUpdate(user);
-            tx.commit();
-        } catch (HibernateException e) {
-            tx.rollback();
-        }
+    public void saveGameSession(GameSession gameSession) {
+        persistEntity(gameSession);
     }
 
-    public synchronized void updateExistingUser(User user) {
+    // Reorders the GameSession and, if startNextWeek, starts the next one from
+    // the reordered ladder, all in one commit: until then readers are served the
+    // snapshot from before, and a failure leaves nothing half done. Returns the
+    // id of the GameSession the rollover ended on, or null if it couldn't be made.
+    public Integer rollOver(int gameSessionId, boolean startNextWeek) {
+        return rollOver(gameSessionId, startNextWeek, null);
+    }
 
-        Transaction tx = null;
-        try {
-            tx = session.beginTransaction();
-            session.saveOrUpdate(user);
-            tx.commit();
-        } catch (HibernateException e) {
-            tx.rollback();
+    // Safe to run again with the same rolloverId. A GameSession that is no
+    // longer the latest has already had its next week started, and rolloverId
+    // is committed with the reorder, so one reorder is never made twice.
+    public Integer rollOver(int gameSessionId, boolean startNextWeek, String rolloverId) {
+        RolledOver rolledOver = doInOptimisticTransaction(session -> {
+            GameSession target = fetchGameSession(session, gameSessionId);
+            if (target == null) {
+                return null;
+            }
+            if (startNextWeek) {
+                int latestId = getLatestGameSessionIds(session, 0, 1).get(0);
+                if (latestId != gameSessionId) {
+                    return new RolledOver(latestId, null);
+                }
+            }
+            if (rolloverId != null && rolloverId.equals(target.getRolloverId())) {
+                return new RolledOver(gameSessionId, null);
+            }
+            // Two rollovers of the same GameSession must not both start a week
+            incrementVersionAtCommit(session, target);
+            target.setRolloverId(rolloverId);
+            List<Pair> projected = isLatest(target)
+                    ? getOwnPairs(target, projectLadder(target)) : null;
+            if (projected != null) {
+                target.reorderLadder(projected);
+            } else {
+                target.reorderLadder(new VrcLadderReorderer(), timeSelection);
+            }
+            if (!startNextWeek) {
+                return new RolledOver(gameSessionId, null);
+            }
+            GameSession next = createNewGameSession(target);
+            session.save(next);
+            return new RolledOver(0, next);
+        }, committed -> {
+            if (committed.next != null && ladderJournal != null) {
+                journalCommitted(LadderEvent.snapshot(LadderSnapshot.of(committed.next)));
+            }
+        });
+        if (rolledOver == null) {
+            return null;
         }
+        return rolledOver.next != null ? rolledOver.next.getID() : rolledOver.gameSessionId;
     }
 
-    public synchronized void addNewPlayer(Player player) throws AccountRegistrationException {
-        Transaction tx = null;
-        try {
-            tx = session.beginTransaction();
-            session.saveOrUpdate(player);
-            tx.commit();
-        } catch (HibernateException e) {
-            tx.rollback();
+    // Every pair's and player's rating by Rating.key, served from memory. Only
+    // the first call reads the Rating table; it is never worked out on a read.
+    public Map<Long, Rating> getRatings() {
+        if (!ratingsLoaded) {
+            List<Rating> rows = doInReadOnlyTransaction(
+                    session -> list(session.createCriteria(Rating.class)));
+            if (rows != null) {
+                mergeRatings(rows);
+                ratingsLoaded = true;
+            }
         }
+        return Collections.unmodifiableMap(ratings);
     }
 
-    // Rankings are in a format of pairID -> position in scorecard
-    public synchronized void setMatchResults(int scorecardId, Map<Integer, Integer> rankings) {
-        Scorecard sc = (Scorecard) getEntityFromID(Scorecard.class, scorecardId);
-        for (Map.Entry<Integer, Integer> entry : rankings.entrySet()) {
-            Pair pair = getPairFromID(entry.getKey());
-            sc.setGameResults(pair, entry.getValue());
+    // The latest ladder's pairs and players with their ratings
+    public String getJSONRatings() {
+        GameSession gameSession = getGameSessionLatest();
+        if (gameSession == null) {
+            return null;
         }
-        persistEntity(sc);
+        return new RatingsJSONSerializer(gameSession, getRatings()).toJson();
     }
 
-    public synchronized void reorderLadder(GameSession gameSession) {
-        gameSession.reorderLadder(new VrcLadderReorderer(), new VrcTimeSelection());
+    private void mergeRatings(List<Rating> rows) {
+        for (Rating row : rows) {
+            ratings.merge(row.getKey(), row,
+                    (held, committed) -> committed.getVersion() >= held.getVersion()
+                            ? committed : held);
+        }
     }
 
-    public synchronized GameSession createNewGameSession(GameSession sourceGameSession) {
-        Ladder nextWeekLadder = sourceGameSession.getReorderedLadder();
-        return new GameSession(nextWeekLadder);
+    // Rates every result again, from the first GameSession on, and makes the
+    // Rating table match. Each GameSession's scorecards are rated in parallel.
+    // Writes wait until it is done, so none of theirs is lost; reads don't.
+    public boolean rebuildRatings() {
+        writeLock.lock();
+        try {
+            List<Rating> rebuilt = doInOptimisticTransaction(session -> {
+                // In the order RatingUpdate rates them: by id
+                List<Integer> ids = list(session.createCriteria(GameSession.class)
+                        .setProjection(Projections.id())
+                        .addOrder(Order.asc("id")));
+                RatingEngine engine = new RatingEngine();
+                for (List<Integer> chunk : chunk(ids)) {
+                    for (GameSession gameSession : fetchGameSessions(session, chunk)) {
+                        engine.addGameSession(gameSession);
+                    }
+                    // Only read so far, so nothing is lost; keeps the Session small
+                    session.clear();
+                }
+
+                Map<Long, Rating> computed = new HashMap<>(engine.getRatings());
+                List<Rating> rows = new ArrayList<>();
+                List<Rating> existing = list(session.createCriteria(Rating.class));
+                for (Rating row : existing) {
+                    Rating fresh = computed.remove(row.getKey());
+                    row.setTo(fresh != null
+                            ? fresh : new Rating(row.getOwnerType(), row.getOwnerId()));
+                    rows.add(row);
+                }
+                for (Rating fresh : computed.values()) {
+                    session.save(fresh);
+                    rows.add(fresh);
+                }
+                return rows;
+            }, this::mergeRatings);
+            return rebuilt != null;
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    public synchronized void saveGameSession(GameSession gameSession) {
-        persistEntity(gameSession);
+    // rebuildRatings in the background. Asking while one is waiting to start
+    // doesn't start another.
+    public void requestRatingsRebuild() {
+        if (!ratingsRebuildQueued.compareAndSet(false, true)) {
+            return;
+        }
+        Thread rebuild = new Thread(() -> {
+            ratingsRebuildQueued.set(false);
+            rebuildRatings();
+        }, "ratings-rebuild");
+        rebuild.setDaemon(true);
+        rebuild.start();
     }
 
-    public synchronized void setTimeSlot(int pairId, Time time) {
-        GameSession gameSession = getGameSessionLatest();
-        Pair pair = getPairFromID(pairId);
-        gameSession.setTimeSlot(pair, time);
-        persistEntity(gameSession);
+    // The GameSession a rollover ended on: one it found already made, or the
+    // one it made, whose id is only known once committed
+    private static final class RolledOver {
+        private final int gameSessionId;
+        private final GameSession next;
+
+        private RolledOver(int gameSessionId, GameSession next) {
+            this.gameSessionId = gameSessionId;
+            this.next = next;
+        }
+    }
+
+    public void setTimeSlot(int pairId, Time time) {
+        LadderEvent event = LadderEvent.setTimeSlot(pairId, time);
+        if (applyEventBehind(null, event) == null) {
+            applyEventToLatest(event);
+        }
     }
 
     public boolean writeToCsvFile(OutputStream outputStream, GameSession gameSession) {
@@ -482,22 +1814,42 @@ public class DBManager {
         return true;
     }
 
-    public synchronized boolean importLadderFromCsv(InputStreamReader inputStreamReader) {
+    public boolean importLadderFromCsv(InputStreamReader inputStreamReader) {
         List<Integer> pairIds;
         try {
             pairIds = CSVReader.getPairIdsFromCsvStream(inputStreamReader);
         } catch (Exception e) {
             return false;
         }
-        Ladder ladder = new Ladder();
-        for (int id : pairIds) {
-            Pair pair = getPairFromID(id);
-            ladder.insertAtEnd(pair);
-        }
-        GameSession gameSession = getGameSessionLatest();
-        gameSession.replaceLadder(ladder);
-        persistEntity(gameSession);
-        return true;
+        // A whole new ladder is journaled as a new state rather than an event
+        LadderSnapshot state = doInOptimisticTransaction(session -> {
+            GameSession target = loadLatestForWrite(session);
+            if (target == null) {
+                return null;
+            }
+            // Load the pairs before any GameSession collection is walked, so those
+            // find them already in the Session with their players
+            Map<Integer, Pair> pairs = loadPairs(session, pairIds);
+            if (!pairs.keySet().containsAll(pairIds)) {
+                return null;
+            }
+            verifyVersionAtCommit(session, target);
+            Ladder ladder = new Ladder();
+            for (int id : pairIds) {
+                ladder.insertAtEnd(pairs.get(id));
+            }
+            target.replaceLadder(ladder, timeSelection);
+            return LadderSnapshot.of(target);
+        }, committed -> journalCommitted(LadderEvent.snapshot(committed)));
+        return state != null;
+    }
+
+    private interface UnitOfWork<T> {
+        T execute(Session session);
+    }
+
+    private interface GameSessionWork<T> {
+        T execute(Session session, GameSession gameSession);
     }
 
     public enum GameSessionVersion {
@@ -0,0 +1,40 @@
+package ca.sfu.teambeta.persistence;
+
+import ca.sfu.teambeta.logic.GameSession;
+
+/**
+ * The current and previous GameSession as of one committed write, served to readers
+ * straight from memory. Both graphs are fully loaded and shared between requests.
+ */
+public class GameSessionSnapshot {
+    private final long version;
+    private final GameSession current;
+    private final GameSession previous;
+
+    GameSessionSnapshot(long version, GameSession current, GameSession previous) {
+        this.version = version;
+        this.current = current;
+        this.previous = previous;
+    }
+
+    // Goes up with every write that can change a GameSession, so anything
+    // derived from a snapshot can be cached against this number
+    public long getVersion() {
+        return version;
+    }
+
+    public GameSession getCurrent() {
+        return current;
+    }
+
+    public GameSession getPrevious() {
+        return previous;
+    }
+
+    public GameSession getGameSession(DBManager.GameSessionVersion gameSessionVersion) {
+        if (gameSessionVersion == DBManager.GameSessionVersion.PREVIOUS) {
+            return previous;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,63 @@
+package ca.sfu.teambeta.persistence;
+
+import org.hibernate.collection.internal.PersistentList;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.usertype.UserCollectionType;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ca.sfu.teambeta.core.IndexedList;
+
+/**
+ * Maps an ordered List as Hibernate's own PersistentList, but with an IndexedList
+ * underneath, so a list loaded from the database keeps O(log n) inserts, removes
+ * and lookups. Used through @CollectionType on the mapped field.
+ */
+public class IndexedListType implements UserCollectionType {
+    @Override
+    public PersistentCollection instantiate(SessionImplementor session,
+                                            CollectionPersister persister) {
+        return new PersistentList(session);
+    }
+
+    @Override
+    public PersistentCollection wrap(SessionImplementor session, Object collection) {
+        return new PersistentList(session, (List) collection);
+    }
+
+    @Override
+    public Iterator getElementsIterator(Object collection) {
+        return ((List) collection).iterator();
+    }
+
+    @Override
+    public boolean contains(Object collection, Object entity) {
+        return ((List) collection).contains(entity);
+    }
+
+    @Override
+    public Object indexOf(Object collection, Object entity) {
+        int position = ((List) collection).indexOf(entity);
+        return position < 0 ? null : position;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object replaceElements(Object original, Object target, CollectionPersister persister,
+                                  Object owner, Map copyCache, SessionImplementor session) {
+        List result = (List) target;
+        result.clear();
+        result.addAll((List) original);
+        return result;
+    }
+
+    // PersistentList fills this in as it loads, so loaded lists are indexed too
+    @Override
+    public Object instantiate(int anticipatedSize) {
+        return new IndexedList<>();
+    }
+}
@@ -0,0 +1,44 @@
+package ca.sfu.teambeta.persistence;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.Configuration;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.ehcache.EhCacheRegionFactory;
+import org.hibernate.cache.ehcache.internal.util.HibernateEhcacheUtils;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives every SessionFactory its own, uniquely named, Ehcache CacheManager built from
+ * ehcache.xml. EhCacheRegionFactory refuses to start a second unnamed CacheManager
+ * while another is open, and sharing one would hand entities cached against one
+ * database to a SessionFactory using another.
+ */
+public class IsolatedEhCacheRegionFactory extends EhCacheRegionFactory {
+    private static final String DEFAULT_CONFIGURATION = "/ehcache.xml";
+    private static final AtomicInteger managerCount = new AtomicInteger();
+
+    @Override
+    public void start(SessionFactoryOptions settings, Properties properties)
+            throws CacheException {
+        this.settings = settings;
+        if (manager != null) {
+            return;
+        }
+
+        String resource = properties.getProperty(
+                NET_SF_EHCACHE_CONFIGURATION_RESOURCE_NAME, DEFAULT_CONFIGURATION);
+        Configuration configuration =
+                HibernateEhcacheUtils.loadAndCorrectConfiguration(loadResource(resource));
+        configuration.setName("hibernate-" + managerCount.incrementAndGet());
+        try {
+            manager = new CacheManager(configuration);
+        } catch (net.sf.ehcache.CacheException e) {
+            throw new CacheException(e);
+        }
+        mbeanRegistrationHelper.registerMBean(manager, properties);
+    }
+}
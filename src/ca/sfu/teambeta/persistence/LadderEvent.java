@@ -0,0 +1,205 @@
+package ca.sfu.teambeta.persistence;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Penalty;
+import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.core.Time;
+import ca.sfu.teambeta.logic.GameSession;
+import ca.sfu.teambeta.logic.TimeSelection;
+import ca.sfu.teambeta.logic.VrcScorecardGenerator;
+
+/**
+ * One change to a GameSession, as appended to the LadderJournal. DBManager makes
+ * its writes by applying these, so replaying a GameSession's events in order
+ * over its last snapshot gives back the same state that was committed.
+ */
+public class LadderEvent {
+    public enum Type {
+        SNAPSHOT,
+        ADD_PAIR,
+        REMOVE_PAIR,
+        MOVE_PAIR,
+        SET_ACTIVE,
+        SET_INACTIVE,
+        SET_TIME_SLOT,
+        PENALTY,
+        MATCH_RESULT
+    }
+
+    // Assigned by the journal when the event is appended
+    private long sequence;
+    private long timestamp;
+    private int gameSessionId;
+
+    private Type type;
+    private int pairId;
+    private int position;
+    private Time timeSlot;
+    private Penalty penalty;
+    // pairID -> position in scorecard
+    private Map<Integer, Integer> rankings;
+    private LadderSnapshot snapshot;
+
+    // Default constructor for Gson
+    private LadderEvent() {
+    }
+
+    private LadderEvent(Type type, int pairId) {
+        this.type = type;
+        this.pairId = pairId;
+    }
+
+    public static LadderEvent snapshot(LadderSnapshot snapshot) {
+        LadderEvent event = new LadderEvent(Type.SNAPSHOT, 0);
+        event.gameSessionId = snapshot.getGameSessionId();
+        event.snapshot = snapshot;
+        return event;
+    }
+
+    public static LadderEvent addPair(int pairId, int position) {
+        LadderEvent event = new LadderEvent(Type.ADD_PAIR, pairId);
+        event.position = position;
+        return event;
+    }
+
+    public static LadderEvent removePair(int pairId) {
+        return new LadderEvent(Type.REMOVE_PAIR, pairId);
+    }
+
+    public static LadderEvent movePair(int pairId, int newPosition) {
+        LadderEvent event = new LadderEvent(Type.MOVE_PAIR, pairId);
+        event.position = newPosition;
+        return event;
+    }
+
+    public static LadderEvent setActive(int pairId) {
+        return new LadderEvent(Type.SET_ACTIVE, pairId);
+    }
+
+    public static LadderEvent setInactive(int pairId) {
+        return new LadderEvent(Type.SET_INACTIVE, pairId);
+    }
+
+    public static LadderEvent setTimeSlot(int pairId, Time timeSlot) {
+        LadderEvent event = new LadderEvent(Type.SET_TIME_SLOT, pairId);
+        event.timeSlot = timeSlot;
+        return event;
+    }
+
+    public static LadderEvent penalty(int pairId, Penalty penalty) {
+        LadderEvent event = new LadderEvent(Type.PENALTY, pairId);
+        event.penalty = penalty;
+        return event;
+    }
+
+    public static LadderEvent matchResult(Map<Integer, Integer> rankings) {
+        LadderEvent event = new LadderEvent(Type.MATCH_RESULT, 0);
+        event.rankings = new HashMap<>(rankings);
+        return event;
+    }
+
+    void record(long sequence, long timestamp) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+    }
+
+    void setGameSessionId(int gameSessionId) {
+        this.gameSessionId = gameSessionId;
+    }
+
+    // Makes the change to the GameSession, as the DBManager write of the same
+    // name would, with timeSelector assigning time slots to changed groups.
+    // Returns false if nothing changed. pairs must hold every id in
+    // getPairIds(); snapshots replace a GameSession rather than change it.
+    public boolean applyTo(GameSession gameSession, Map<Integer, Pair> pairs,
+                           TimeSelection timeSelector) {
+        Pair pair = pairs.get(pairId);
+        switch (type) {
+            case ADD_PAIR:
+                return !gameSession.addNewPairAtIndex(pair, position);
+            case REMOVE_PAIR:
+                return gameSession.removePairFromLadder(pair);
+            case MOVE_PAIR:
+                int previousPosition = pair.getLastWeekPosition();
+                gameSession.removePairFromLadder(pair);
+                gameSession.addNewPairAtIndex(pair, position);
+                pair.setLastWeekPosition(previousPosition);
+                return true;
+            case SET_ACTIVE:
+                boolean activated = gameSession.setPairActive(pair);
+                gameSession.setTimeSlot(pair, Time.NO_SLOT);
+                gameSession.updateGroups(new VrcScorecardGenerator(), timeSelector);
+                return activated;
+            case SET_INACTIVE:
+                gameSession.setPairInactive(pair);
+                gameSession.updateGroups(new VrcScorecardGenerator(), timeSelector);
+                return true;
+            case SET_TIME_SLOT:
+                gameSession.setTimeSlot(pair, timeSlot);
+                timeSelector.distributePairs(gameSession.getScorecards(),
+                        gameSession.getTimeSlots());
+                return true;
+            case PENALTY:
+                gameSession.setPenaltyToPair(pair, penalty);
+                return true;
+            case MATCH_RESULT:
+                return setResults(gameSession, rankings, pairs);
+            default:
+                throw new UnsupportedOperationException("Cannot apply a " + type + " event");
+        }
+    }
+
+    // Each result goes to the scorecard in the GameSession that holds the pair
+    static boolean setResults(GameSession gameSession, Map<Integer, Integer> rankings,
+                              Map<Integer, Pair> pairs) {
+        boolean changed = false;
+        for (Map.Entry<Integer, Integer> entry : rankings.entrySet()) {
+            Pair pair = pairs.get(entry.getKey());
+            for (Scorecard scorecard : gameSession.getScorecards()) {
+                if (scorecard.getPairs().contains(pair)) {
+                    scorecard.setGameResults(pair, entry.getValue());
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getGameSessionId() {
+        return gameSessionId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public LadderSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public Set<Integer> getPairIds() {
+        switch (type) {
+            case SNAPSHOT:
+                return snapshot.getPairIds();
+            case MATCH_RESULT:
+                return new HashSet<>(rankings.keySet());
+            default:
+                return Collections.singleton(pairId);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package ca.sfu.teambeta.persistence;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only local record of every LadderEvent, and the snapshot it is
+ * compacted into. Both files live in one directory:
+ * <p>
+ * snapshot.json - the state of each GameSession as of one sequence number
+ * journal.log - one event per line, each newer than the snapshot
+ * <p>
+ * A crash partway through an append can leave the last line torn. It was never
+ * acknowledged, so it is cut off when the journal is opened.
+ */
+public class LadderJournal {
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String SNAPSHOT_FILE = "snapshot.json";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Gson GSON = new Gson();
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private BufferedWriter writer;
+    private long lastSequence;
+    private int eventsSinceSnapshot;
+    // GameSessions with a state in the snapshot or a SNAPSHOT event after it.
+    // Other events can only be replayed on top of one of those.
+    private final Set<Integer> knownGameSessions = new HashSet<>();
+
+    public LadderJournal(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        journalFile = directory.resolve(JOURNAL_FILE);
+        snapshotFile = directory.resolve(SNAPSHOT_FILE);
+
+        Snapshot snapshot = readSnapshot();
+        lastSequence = snapshot.sequence;
+        for (LadderSnapshot gameSession : snapshot.gameSessions) {
+            knownGameSessions.add(gameSession.getGameSessionId());
+        }
+        long[] readLength = new long[1];
+        for (LadderEvent event : readJournal(snapshot.sequence, readLength)) {
+            lastSequence = Math.max(lastSequence, event.getSequence());
+            if (event.getType() == LadderEvent.Type.SNAPSHOT) {
+                knownGameSessions.add(event.getGameSessionId());
+            }
+            eventsSinceSnapshot++;
+        }
+        if (Files.exists(journalFile) && Files.size(journalFile) > readLength[0]) {
+            try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                channel.truncate(readLength[0]);
+            }
+        }
+        writer = openWriter();
+    }
+
+    // Each event is written through before this returns
+    public synchronized long append(LadderEvent event) throws IOException {
+        event.record(++lastSequence, System.currentTimeMillis());
+        writer.write(GSON.toJson(event));
+        writer.newLine();
+        writer.flush();
+        if (event.getType() == LadderEvent.Type.SNAPSHOT) {
+            knownGameSessions.add(event.getGameSessionId());
+        }
+        eventsSinceSnapshot++;
+        return lastSequence;
+    }
+
+    public synchronized boolean knowsGameSession(int gameSessionId) {
+        return knownGameSessions.contains(gameSessionId);
+    }
+
+    public synchronized Snapshot readSnapshot() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return new Snapshot(0, new ArrayList<>());
+        }
+        try (BufferedReader reader = Files.newBufferedReader(snapshotFile,
+                StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, Snapshot.class);
+        }
+    }
+
+    // Every event after the snapshot, oldest first
+    public synchronized List<LadderEvent> readEvents() throws IOException {
+        return readJournal(readSnapshot().sequence, new long[1]);
+    }
+
+    // Events after snapshotSequence, and in readLength the length of the file
+    // up to the end of the last whole line. A last line that is torn, or that
+    // doesn't parse, is left out; any other line that doesn't is corruption.
+    private List<LadderEvent> readJournal(long snapshotSequence, long[] readLength)
+            throws IOException {
+        List<LadderEvent> events = new ArrayList<>();
+        if (!Files.exists(journalFile)) {
+            return events;
+        }
+        byte[] bytes = Files.readAllBytes(journalFile);
+        int start = 0;
+        for (int end = 0; end < bytes.length; end++) {
+            if (bytes[end] != '\n') {
+                continue;
+            }
+            String line = new String(bytes, start, end - start, StandardCharsets.UTF_8).trim();
+            if (!line.isEmpty()) {
+                LadderEvent event;
+                try {
+                    event = GSON.fromJson(line, LadderEvent.class);
+                } catch (JsonParseException e) {
+                    if (!new String(bytes, end, bytes.length - end,
+                            StandardCharsets.UTF_8).trim().isEmpty()) {
+                        throw new IOException("Corrupt journal line at byte " + start, e);
+                    }
+                    break;
+                }
+                if (event.getSequence() > snapshotSequence) {
+                    events.add(event);
+                }
+            }
+            start = end + 1;
+        }
+        readLength[0] = start;
+        return events;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public synchronized int getEventsSinceSnapshot() {
+        return eventsSinceSnapshot;
+    }
+
+    // Replaces the snapshot with gameSessions, which must be the state as of
+    // throughSequence, and drops the events it covers. The snapshot is moved
+    // into place first: if the journal rewrite fails, readEvents() still skips
+    // anything the new snapshot already holds. Events appended since
+    // throughSequence are kept, and a snapshot no newer than the one in place
+    // is ignored.
+    public synchronized void compact(long throughSequence, Collection<LadderSnapshot> gameSessions)
+            throws IOException {
+        if (throughSequence <= readSnapshot().sequence) {
+            return;
+        }
+        Path snapshotTemp = snapshotFile.resolveSibling(SNAPSHOT_FILE + TEMP_SUFFIX);
+        try (BufferedWriter out = Files.newBufferedWriter(snapshotTemp, StandardCharsets.UTF_8)) {
+            GSON.toJson(new Snapshot(throughSequence, new ArrayList<>(gameSessions)), out);
+        }
+        Files.move(snapshotTemp, snapshotFile,
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        List<LadderEvent> remaining = readEvents();
+        writer.close();
+        Path journalTemp = journalFile.resolveSibling(JOURNAL_FILE + TEMP_SUFFIX);
+        try (BufferedWriter out = Files.newBufferedWriter(journalTemp, StandardCharsets.UTF_8)) {
+            for (LadderEvent event : remaining) {
+                out.write(GSON.toJson(event));
+                out.newLine();
+            }
+        }
+        Files.move(journalTemp, journalFile,
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writer = openWriter();
+
+        knownGameSessions.clear();
+        for (LadderSnapshot gameSession : gameSessions) {
+            knownGameSessions.add(gameSession.getGameSessionId());
+        }
+        for (LadderEvent event : remaining) {
+            if (event.getType() == LadderEvent.Type.SNAPSHOT) {
+                knownGameSessions.add(event.getGameSessionId());
+            }
+        }
+        eventsSinceSnapshot = remaining.size();
+    }
+
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private BufferedWriter openWriter() throws IOException {
+        return Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Contents of snapshot.json
+     */
+    public static class Snapshot {
+        private long sequence;
+        private List<LadderSnapshot> gameSessions;
+
+        // Default constructor for Gson
+        private Snapshot() {
+        }
+
+        private Snapshot(long sequence, List<LadderSnapshot> gameSessions) {
+            this.sequence = sequence;
+            this.gameSessions = gameSessions;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public List<LadderSnapshot> getGameSessions() {
+            return gameSessions;
+        }
+    }
+}
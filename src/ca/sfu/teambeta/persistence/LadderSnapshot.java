@@ -0,0 +1,124 @@
+package ca.sfu.teambeta.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import ca.sfu.teambeta.core.Ladder;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Penalty;
+import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.core.Time;
+import ca.sfu.teambeta.logic.GameSession;
+import ca.sfu.teambeta.logic.TimeSelection;
+import ca.sfu.teambeta.logic.VrcScorecardGenerator;
+
+/**
+ * The state of one GameSession as the ladder journal records it: pair ids
+ * rather than pairs, so it can be written out and rebuilt against any Session.
+ * Groups aren't stored, they are generated again from the active pairs.
+ */
+public class LadderSnapshot {
+    private int gameSessionId;
+    private long timestamp;
+    private List<Integer> ladder = new ArrayList<>();
+    private List<Integer> activePairs = new ArrayList<>();
+    private Map<Integer, Time> timeSlots = new HashMap<>();
+    private Map<Integer, Penalty> penalties = new HashMap<>();
+    // pairID -> position in its scorecard, for pairs that have a result
+    private Map<Integer, Integer> results = new HashMap<>();
+
+    // Default constructor for Gson
+    private LadderSnapshot() {
+    }
+
+    public static LadderSnapshot of(GameSession gameSession) {
+        return of(gameSession.getID(), gameSession);
+    }
+
+    // For GameSessions rebuilt from the journal, which were never saved and so
+    // don't carry their own id
+    public static LadderSnapshot of(int gameSessionId, GameSession gameSession) {
+        LadderSnapshot snapshot = new LadderSnapshot();
+        snapshot.gameSessionId = gameSessionId;
+        snapshot.timestamp = gameSession.getTimestamp();
+        for (Pair pair : gameSession.getAllPairs()) {
+            snapshot.ladder.add(pair.getID());
+        }
+        for (Pair pair : gameSession.getActivePairSet()) {
+            snapshot.activePairs.add(pair.getID());
+        }
+        Collections.sort(snapshot.activePairs);
+        gameSession.getTimeSlots().forEach((pair, time) ->
+                snapshot.timeSlots.put(pair.getID(), time));
+        gameSession.getPenalties().forEach((pair, penalty) ->
+                snapshot.penalties.put(pair.getID(), penalty));
+        for (Scorecard scorecard : gameSession.getScorecards()) {
+            for (Pair pair : scorecard.getPairs()) {
+                int rank = scorecard.getPairScore(pair);
+                if (rank != 0) {
+                    snapshot.results.put(pair.getID(), rank);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    // The GameSession returned is new and unsaved, grouped with timeSelector
+    // assigning time slots; pairs must hold every id in getPairIds()
+    public GameSession toGameSession(Map<Integer, Pair> pairs, TimeSelection timeSelector) {
+        List<Pair> ladderPairs = new ArrayList<>();
+        for (int pairId : ladder) {
+            ladderPairs.add(pairs.get(pairId));
+        }
+        GameSession gameSession = new GameSession(new Ladder(ladderPairs), timestamp);
+        for (int pairId : activePairs) {
+            gameSession.setPairActive(pairs.get(pairId));
+        }
+        timeSlots.forEach((pairId, time) -> gameSession.setTimeSlot(pairs.get(pairId), time));
+        penalties.forEach((pairId, penalty) ->
+                gameSession.setPenaltyToPair(pairs.get(pairId), penalty));
+        gameSession.createGroups(new VrcScorecardGenerator(), timeSelector);
+        LadderEvent.setResults(gameSession, results, pairs);
+        return gameSession;
+    }
+
+    public int getGameSessionId() {
+        return gameSessionId;
+    }
+
+    public Set<Integer> getPairIds() {
+        Set<Integer> pairIds = new HashSet<>(ladder);
+        pairIds.addAll(timeSlots.keySet());
+        pairIds.addAll(penalties.keySet());
+        return pairIds;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        LadderSnapshot other = (LadderSnapshot) o;
+        return gameSessionId == other.gameSessionId
+                && timestamp == other.timestamp
+                && ladder.equals(other.ladder)
+                && activePairs.equals(other.activePairs)
+                && timeSlots.equals(other.timeSlots)
+                && penalties.equals(other.penalties)
+                && results.equals(other.results);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(gameSessionId, timestamp, ladder, activePairs);
+    }
+}
@@ -0,0 +1,147 @@
+package ca.sfu.teambeta.persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver that stands in front of another and delays every round trip to the
+ * database, to try out locally how the app behaves over a slow link. Its URLs wrap
+ * the real one:
+ * <p>
+ * jdbc:latency:&lt;millis&gt;:&lt;real url&gt;
+ * <p>
+ * Connecting, executing a statement, committing and rolling back each count as one
+ * round trip. The database can also be made unreachable, so every round trip fails
+ * the way a dropped connection would.
+ */
+public class LatencyInjectingDriver implements Driver {
+    public static final String URL_PREFIX = "jdbc:latency:";
+    // SQL state class for a lost connection, which pools take to mean the
+    // connection has to be replaced
+    private static final String CONNECTION_FAILURE = "08S01";
+
+    private static volatile boolean unreachable = false;
+    private static final LongAdder roundTrips = new LongAdder();
+
+    static {
+        try {
+            DriverManager.registerDriver(new LatencyInjectingDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static String wrapUrl(String url, long latencyMillis) {
+        return URL_PREFIX + latencyMillis + ":" + url;
+    }
+
+    public static void setUnreachable(boolean isUnreachable) {
+        unreachable = isUnreachable;
+    }
+
+    public static long getRoundTripCount() {
+        return roundTrips.sum();
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        String rest = url.substring(URL_PREFIX.length());
+        int separator = rest.indexOf(':');
+        long latencyMillis;
+        try {
+            latencyMillis = Long.parseLong(rest.substring(0, separator));
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new SQLException("Expected " + URL_PREFIX + "<millis>:<url> but got " + url);
+        }
+        roundTrip(latencyMillis);
+        Connection connection = DriverManager.getConnection(rest.substring(separator + 1), info);
+        return wrap(Connection.class, connection, latencyMillis);
+    }
+
+    // Statements made by the connection are wrapped too, so their round trips
+    // are delayed as well
+    @SuppressWarnings("unchecked")
+    private static <T> T wrap(Class<T> type, T target, long latencyMillis) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (isRoundTrip(method)) {
+                roundTrip(latencyMillis);
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                return wrap((Class<Statement>) method.getReturnType(), (Statement) result,
+                        latencyMillis);
+            }
+            return result;
+        };
+        return (T) Proxy.newProxyInstance(LatencyInjectingDriver.class.getClassLoader(),
+                new Class<?>[]{type}, handler);
+    }
+
+    private static boolean isRoundTrip(Method method) {
+        String name = method.getName();
+        return name.startsWith("execute") || name.equals("commit") || name.equals("rollback");
+    }
+
+    private static void roundTrip(long latencyMillis) throws SQLException {
+        roundTrips.increment();
+        try {
+            TimeUnit.MILLISECONDS.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (unreachable) {
+            throw new SQLException("Database is unreachable", CONNECTION_FAILURE);
+        }
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,554 @@
+package ca.sfu.teambeta.persistence;
+
+import com.google.gson.JsonObject;
+
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.Type;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a remote database in step with the local one DBManager reads and writes,
+ * so no request waits on, or fails because of, the link to the remote.
+ * <p>
+ * Every row committed locally is recorded by id, and pushed to the remote with
+ * the same id on a background thread. A row's collections are rewritten along
+ * with it; the entities whose collections change after they're created are all
+ * versioned, so such a change always commits an update of its owner too.
+ * <p>
+ * When replication starts, and after any attempt that fails, every row is
+ * compared instead and the remote made to match. If the local database is empty
+ * when replication starts, it is first filled from the remote.
+ */
+public class LocalFirstReplicator implements JSONSerializer {
+    private static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final SessionFactory local;
+    private final Supplier<SessionFactory> remoteFactory;
+    private final Predicate<BinarySnapshot> seedLocal;
+    private final long retryMillis;
+    // Only used on the replicator thread, and by close() once it has stopped
+    private SessionFactory remote;
+    private boolean seeded;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wake = lock.newCondition();
+    private final Map<Class<?>, Set<Integer>> pending = new HashMap<>();
+    private boolean reconcileNeeded = true;
+    private boolean closed = false;
+    private final Thread replicator;
+
+    private final LongAdder pushedRowCount = new LongAdder();
+    private final LongAdder deletedRowCount = new LongAdder();
+    private final LongAdder reconcileCount = new LongAdder();
+    private final LongAdder failedAttemptCount = new LongAdder();
+    private volatile boolean connected = false;
+    private volatile long lastReplicatedMillis;
+    private volatile String lastError;
+
+    // remoteFactory is called on the replicator thread until it returns, so it
+    // may throw while the remote is unreachable. seedLocal must refuse, returning
+    // false, if the local database is no longer empty.
+    public LocalFirstReplicator(SessionFactory local, Supplier<SessionFactory> remoteFactory,
+                                long retryMillis, Predicate<BinarySnapshot> seedLocal) {
+        this.local = local;
+        this.remoteFactory = remoteFactory;
+        this.retryMillis = retryMillis;
+        this.seedLocal = seedLocal;
+        this.seeded = hasRows(local);
+
+        EventListenerRegistry registry = ((SessionFactoryImplementor) local)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        ChangeListener listener = new ChangeListener();
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+
+        replicator = new Thread(this::run, "local-first-replicator");
+        replicator.setDaemon(true);
+        replicator.start();
+    }
+
+    private void recordChange(Class<?> type, Serializable id) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            pending.computeIfAbsent(type, key -> new HashSet<>()).add((Integer) id);
+            wake.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stops the replicator thread, then makes one last push if the remote could
+    // be reached the last time it was tried
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            wake.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            replicator.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (connected && getPendingCount() > 0) {
+            replicateOnce();
+        }
+        if (remote != null) {
+            remote.close();
+        }
+    }
+
+    private void run() {
+        long delayMillis = retryMillis;
+        while (awaitWork()) {
+            if (replicateOnce()) {
+                delayMillis = retryMillis;
+            } else if (sleep(delayMillis)) {
+                delayMillis = Math.min(delayMillis * 2, MAX_RETRY_MILLIS);
+            }
+        }
+    }
+
+    // Returns false once closed
+    private boolean awaitWork() {
+        lock.lock();
+        try {
+            while (!closed && pending.isEmpty() && !reconcileNeeded) {
+                wake.awaitUninterruptibly();
+            }
+            return !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns false if closed before the time was up
+    private boolean sleep(long millis) {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(millis);
+            while (!closed && remaining > 0) {
+                remaining = wake.awaitNanos(remaining);
+            }
+            return !closed;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean replicateOnce() {
+        Map<Class<?>, Set<Integer>> batch;
+        boolean reconcile;
+        lock.lock();
+        try {
+            batch = new HashMap<>(pending);
+            pending.clear();
+            reconcile = reconcileNeeded;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            if (remote == null) {
+                remote = remoteFactory.get();
+            }
+            if (!seeded) {
+                seedLocal();
+            }
+            if (reconcile) {
+                reconcile();
+                reconcileCount.increment();
+            } else {
+                push(batch);
+            }
+        } catch (RuntimeException e) {
+            // Whatever reached the remote was rolled back with the rest, so
+            // everything is compared once it can be reached again
+            lock.lock();
+            try {
+                batch.forEach((type, ids) ->
+                        pending.computeIfAbsent(type, key -> new HashSet<>()).addAll(ids));
+                reconcileNeeded = true;
+            } finally {
+                lock.unlock();
+            }
+            failedAttemptCount.increment();
+            connected = false;
+            lastError = e.toString();
+            return false;
+        }
+
+        if (reconcile) {
+            lock.lock();
+            try {
+                reconcileNeeded = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+        connected = true;
+        lastReplicatedMillis = System.currentTimeMillis();
+        lastError = null;
+        return true;
+    }
+
+    private void seedLocal() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinarySnapshot remoteRows;
+        try {
+            inReadOnlySession(remote, session -> {
+                try {
+                    BinarySnapshot.write(session, bytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            remoteRows = BinarySnapshot.read(local, new ByteArrayInputStream(bytes.toByteArray()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (remoteRows.getRowCount() > 0 && !seedLocal.test(remoteRows)) {
+            throw new IllegalStateException("The local database was written to before it "
+                    + "could be filled from the remote; one has to be restored from the other");
+        }
+        seeded = true;
+    }
+
+    // Rows whose ids were recorded, as the local database now has them. Rows it
+    // no longer has are deleted from the remote.
+    private void push(Map<Class<?>, Set<Integer>> batch) {
+        inReadOnlySession(local, localSession -> inRemoteWrite(remoteSession -> {
+            Map<Class<?>, List<Integer>> deleted = new HashMap<>();
+            for (Class<?> type : BinarySnapshot.ENTITY_ORDER) {
+                Set<Integer> ids = batch.get(type);
+                if (ids == null) {
+                    continue;
+                }
+                Map<Integer, Object> rows = new HashMap<>();
+                for (Object row : BinarySnapshot.loadRows(localSession, type, ids)) {
+                    rows.put(((Persistable) row).getID(), row);
+                }
+                for (int id : ids) {
+                    if (rows.containsKey(id)) {
+                        upsert(remoteSession, type, rows.get(id));
+                    } else {
+                        deleted.computeIfAbsent(type, key -> new ArrayList<>()).add(id);
+                    }
+                }
+            }
+            deleteAll(remoteSession, deleted);
+        }));
+    }
+
+    // Every row that differs is written, and every row the local database
+    // doesn't have is deleted. An empty local database is never taken to mean
+    // the remote should be emptied too.
+    private void reconcile() {
+        inReadOnlySession(local, localSession -> inReadOnlySession(remote, remoteReadSession ->
+                inRemoteWrite(remoteSession -> {
+                    boolean localIsEmpty = true;
+                    Map<Class<?>, List<Integer>> extra = new HashMap<>();
+                    for (Class<?> type : BinarySnapshot.ENTITY_ORDER) {
+                        Map<Integer, byte[]> remoteRows = new HashMap<>();
+                        for (Object row : BinarySnapshot.loadRows(remoteReadSession, type, null)) {
+                            remoteRows.put(((Persistable) row).getID(), encode(remote, type, row));
+                        }
+                        for (Object row : BinarySnapshot.loadRows(localSession, type, null)) {
+                            localIsEmpty = false;
+                            byte[] remoteRow = remoteRows.remove(((Persistable) row).getID());
+                            if (remoteRow == null
+                                    || !Arrays.equals(remoteRow, encode(local, type, row))) {
+                                upsert(remoteSession, type, row);
+                            }
+                        }
+                        extra.put(type, new ArrayList<>(remoteRows.keySet()));
+                    }
+                    if (!localIsEmpty) {
+                        deleteAll(remoteSession, extra);
+                    }
+                })));
+    }
+
+    private static byte[] encode(SessionFactory factory, Class<?> type, Object row) {
+        try {
+            return BinarySnapshot.encodeRow(factory, type, row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Inserted or updated with the id, version and values it has locally, and
+    // its collections written again from scratch
+    private void upsert(Session session, Class<?> type, Object row) {
+        SessionImplementor source = (SessionImplementor) session;
+        EntityPersister persister = source.getFactory().getEntityPersister(type.getName());
+        Serializable id = persister.getIdentifier(row, source);
+        Object[] values = persister.getPropertyValues(row);
+        Object current = getCurrentVersion(session, persister, id);
+        Type[] propertyTypes = persister.getPropertyTypes();
+
+        if (current == null) {
+            persister.insert(id, values, row, source);
+        } else {
+            Object oldVersion = persister.isVersioned() ? current : null;
+            persister.update(id, values, null, true, null, oldVersion, row, null, source);
+            for (Type propertyType : propertyTypes) {
+                if (propertyType.isCollectionType()) {
+                    source.getFactory()
+                            .getCollectionPersister(((CollectionType) propertyType).getRole())
+                            .remove(id, source);
+                }
+            }
+        }
+        for (int i = 0; i < propertyTypes.length; i++) {
+            if (propertyTypes[i].isCollectionType() && values[i] != null) {
+                CollectionType collectionType = (CollectionType) propertyTypes[i];
+                source.getFactory().getCollectionPersister(collectionType.getRole())
+                        .recreate(collectionType.wrap(source, values[i]), id, source);
+            }
+        }
+        pushedRowCount.increment();
+    }
+
+    // Rows referencing others are deleted before the rows they reference
+    private void deleteAll(Session session, Map<Class<?>, List<Integer>> ids) {
+        SessionImplementor source = (SessionImplementor) session;
+        List<Class<? extends Persistable>> order = new ArrayList<>(BinarySnapshot.ENTITY_ORDER);
+        Collections.reverse(order);
+        for (Class<?> type : order) {
+            EntityPersister persister = source.getFactory().getEntityPersister(type.getName());
+            for (int id : ids.getOrDefault(type, Collections.emptyList())) {
+                Object current = getCurrentVersion(session, persister, id);
+                if (current == null) {
+                    continue;
+                }
+                for (Type propertyType : persister.getPropertyTypes()) {
+                    if (propertyType.isCollectionType()) {
+                        source.getFactory()
+                                .getCollectionPersister(((CollectionType) propertyType).getRole())
+                                .remove(id, source);
+                    }
+                }
+                persister.delete(id, persister.isVersioned() ? current : null, null, source);
+                deletedRowCount.increment();
+            }
+        }
+    }
+
+    // The row's version, or its id if it isn't versioned. Null if there is no
+    // such row.
+    private static Object getCurrentVersion(Session session, EntityPersister persister,
+                                            Serializable id) {
+        String property = persister.isVersioned()
+                ? persister.getPropertyNames()[persister.getVersionProperty()]
+                : persister.getIdentifierPropertyName();
+        return session.createCriteria(persister.getMappedClass())
+                .add(Restrictions.idEq(id))
+                .setProjection(Projections.property(property))
+                .uniqueResult();
+    }
+
+    private static boolean hasRows(SessionFactory factory) {
+        boolean[] found = new boolean[1];
+        inReadOnlySession(factory, session -> found[0] = BinarySnapshot.hasRows(session));
+        return found[0];
+    }
+
+    // Nothing is read through the second-level cache: rows written to the remote
+    // by upsert() bypass it
+    private static void inReadOnlySession(SessionFactory factory, SessionWork work) {
+        Session session = factory.openSession();
+        Transaction tx = null;
+        try {
+            session.setDefaultReadOnly(true);
+            session.setFlushMode(FlushMode.MANUAL);
+            session.setCacheMode(CacheMode.IGNORE);
+            tx = session.beginTransaction();
+            work.execute(session);
+            tx.commit();
+        } catch (RuntimeException e) {
+            rollbackQuietly(tx);
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    private void inRemoteWrite(SessionWork work) {
+        Session session = remote.withOptions()
+                .interceptor(BinarySnapshot.ROWS_ARE_SAVED)
+                .openSession();
+        Transaction tx = null;
+        try {
+            session.setCacheMode(CacheMode.IGNORE);
+            tx = session.beginTransaction();
+            work.execute(session);
+            ((SessionImplementor) session).getJdbcCoordinator().executeBatch();
+            tx.commit();
+        } catch (RuntimeException e) {
+            rollbackQuietly(tx);
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    // The connection may be what failed
+    private static void rollbackQuietly(Transaction tx) {
+        if (tx == null) {
+            return;
+        }
+        try {
+            tx.rollback();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            int count = 0;
+            for (Set<Integer> ids : pending.values()) {
+                count += ids.size();
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isReconcileNeeded() {
+        lock.lock();
+        try {
+            return reconcileNeeded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // As of the last attempt
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public long getPushedRowCount() {
+        return pushedRowCount.sum();
+    }
+
+    public long getDeletedRowCount() {
+        return deletedRowCount.sum();
+    }
+
+    public long getReconcileCount() {
+        return reconcileCount.sum();
+    }
+
+    public long getFailedAttemptCount() {
+        return failedAttemptCount.sum();
+    }
+
+    public long getLastReplicatedMillis() {
+        return lastReplicatedMillis;
+    }
+
+    @Override
+    public String toJson() {
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("connected", isConnected());
+        jsonObject.addProperty("pending", getPendingCount());
+        jsonObject.addProperty("reconcileNeeded", isReconcileNeeded());
+        jsonObject.addProperty("pushedRows", getPushedRowCount());
+        jsonObject.addProperty("deletedRows", getDeletedRowCount());
+        jsonObject.addProperty("reconciles", getReconcileCount());
+        jsonObject.addProperty("failedAttempts", getFailedAttemptCount());
+        jsonObject.addProperty("lastReplicatedMillis", getLastReplicatedMillis());
+        jsonObject.addProperty("lastError", lastError);
+        return jsonObject.toString();
+    }
+
+    private interface SessionWork {
+        void execute(Session session);
+    }
+
+    private class ChangeListener implements PostCommitInsertEventListener,
+            PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            recordChange(event.getPersister().getMappedClass(), event.getId());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            recordChange(event.getPersister().getMappedClass(), event.getId());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            recordChange(event.getPersister().getMappedClass(), event.getId());
+        }
+
+        // Nothing was committed, so there's nothing to replicate
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return true;
+        }
+    }
+}
@@ -14,6 +14,14 @@ public abstract class Persistable {
     @Expose
     private int id;
 
+    protected Persistable() {
+    }
+
+    // For in-memory copies that stand in for the same row
+    protected Persistable(Persistable other) {
+        this.id = other.id;
+    }
+
     public int getID() {
         return id;
     }
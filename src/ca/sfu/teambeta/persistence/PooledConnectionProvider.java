@@ -0,0 +1,128 @@
+package ca.sfu.teambeta.persistence;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+/**
+ * Hibernate ConnectionProvider backed by a bounded HikariCP pool.
+ * <p>
+ * Enabled through hibernate.connection.provider_class in the cfg.xml files. The pool reads the
+ * usual hibernate.connection.* settings, plus:
+ * <p>
+ * hibernate.connection.pool_size - maximum number of connections (default 10)
+ * hibernate.connection.pool_min_idle - connections kept open while idle (default 1)
+ * hibernate.connection.pool_timeout - milliseconds to wait for a free connection (default 30000)
+ */
+public class PooledConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+    public static final String POOL_MIN_IDLE = "hibernate.connection.pool_min_idle";
+    public static final String POOL_TIMEOUT = "hibernate.connection.pool_timeout";
+
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final int DEFAULT_MIN_IDLE = 1;
+    private static final int DEFAULT_TIMEOUT_MILLIS = 30000;
+
+    private HikariDataSource dataSource;
+    private ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+
+    @Override
+    public void configure(Map configurationValues) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(getString(configurationValues, AvailableSettings.URL));
+        config.setUsername(getString(configurationValues, AvailableSettings.USER));
+        config.setPassword(getString(configurationValues, AvailableSettings.PASS));
+
+        String driver = getString(configurationValues, AvailableSettings.DRIVER);
+        if (driver != null) {
+            config.setDriverClassName(driver);
+        }
+
+        config.setMaximumPoolSize(getInt(configurationValues,
+                AvailableSettings.POOL_SIZE, DEFAULT_POOL_SIZE));
+        config.setMinimumIdle(getInt(configurationValues, POOL_MIN_IDLE, DEFAULT_MIN_IDLE));
+        config.setConnectionTimeout(getInt(configurationValues,
+                POOL_TIMEOUT, DEFAULT_TIMEOUT_MILLIS));
+        // Hibernate manages transaction boundaries itself
+        config.setAutoCommit(false);
+        config.setMetricsTrackerFactory(metrics);
+        // Connections are made as they're asked for, so the pool can be built
+        // while the database is unreachable
+        config.setInitializationFailFast(false);
+
+        dataSource = new HikariDataSource(config);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public void closeConnection(Connection conn) throws SQLException {
+        conn.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    public ConnectionPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType)
+                || PooledConnectionProvider.class.isAssignableFrom(unwrapType)
+                || DataSource.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (ConnectionProvider.class.equals(unwrapType)
+                || PooledConnectionProvider.class.isAssignableFrom(unwrapType)) {
+            return (T) this;
+        } else if (DataSource.class.isAssignableFrom(unwrapType)) {
+            return (T) dataSource;
+        } else {
+            throw new UnknownUnwrapTypeException(unwrapType);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    private static String getString(Map configurationValues, String key) {
+        Object value = configurationValues.get(key);
+        if (value == null) {
+            return null;
+        }
+        // cfg.xml values keep the whitespace around them
+        return value.toString().trim();
+    }
+
+    private static int getInt(Map configurationValues, String key, int defaultValue) {
+        String value = getString(configurationValues, key);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value);
+    }
+}
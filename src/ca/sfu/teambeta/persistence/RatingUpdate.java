@@ -0,0 +1,118 @@
+package ca.sfu.teambeta.persistence;
+
+import org.hibernate.Session;
+import org.hibernate.criterion.Restrictions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import ca.sfu.teambeta.core.Rating;
+import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.logic.RatingEngine;
+
+/**
+ * What new results do to the Rating rows of their scorecards' pairs and players,
+ * made in the same write as the results. Each scorecard's change from before is
+ * taken back and its change from now made instead, so only its own rows are
+ * read and written.
+ * <p>
+ * Created before the results are set, and finished after. Nothing is changed
+ * if the results are out of order.
+ */
+final class RatingUpdate {
+    private final Session session;
+    private final int gameSessionId;
+    private final List<Scorecard> scorecards;
+    private final Map<Long, Rating> rows;
+    private final List<Map<Long, Integer>> changesBefore = new ArrayList<>();
+    private final boolean outOfOrder;
+    private final List<Rating> changed = new ArrayList<>();
+
+    RatingUpdate(Session session, int gameSessionId, List<Scorecard> scorecards) {
+        this.session = session;
+        this.gameSessionId = gameSessionId;
+        this.scorecards = scorecards;
+        Set<Long> keys = new HashSet<>();
+        for (Scorecard scorecard : scorecards) {
+            keys.addAll(RatingEngine.getKeys(scorecard));
+        }
+        rows = loadRatings(session, keys);
+
+        boolean later = false;
+        for (Rating row : rows.values()) {
+            later |= row.getGameSessionId() > gameSessionId;
+        }
+        outOfOrder = later;
+        if (!outOfOrder) {
+            for (Scorecard scorecard : scorecards) {
+                changesBefore.add(RatingEngine.getChanges(scorecard, getPeriodRatings()));
+            }
+        }
+    }
+
+    void finish() {
+        if (outOfOrder) {
+            return;
+        }
+        Map<Long, Rating> changedRows = new HashMap<>();
+        for (int i = 0; i < scorecards.size(); i++) {
+            Map<Long, Integer> before = changesBefore.get(i);
+            Map<Long, Integer> after = RatingEngine.getChanges(scorecards.get(i),
+                    getPeriodRatings());
+            Set<Long> keys = new HashSet<>(before.keySet());
+            keys.addAll(after.keySet());
+            for (long key : keys) {
+                Rating row = rows.get(key);
+                if (row == null) {
+                    row = RatingEngine.newRating(key);
+                    session.save(row);
+                    rows.put(key, row);
+                }
+                row.startPeriod(gameSessionId);
+                row.addResults(after.getOrDefault(key, 0) - before.getOrDefault(key, 0),
+                        (after.containsKey(key) ? 1 : 0) - (before.containsKey(key) ? 1 : 0));
+                changedRows.put(key, row);
+            }
+        }
+        changed.addAll(changedRows.values());
+    }
+
+    // True if someone here already has results from a later GameSession, which
+    // these can't be rated ahead of; the ratings have to be rebuilt instead
+    boolean isOutOfOrder() {
+        return outOfOrder;
+    }
+
+    // Empty until finished
+    List<Rating> getChanged() {
+        return changed;
+    }
+
+    private ToIntFunction<Long> getPeriodRatings() {
+        return key -> RatingEngine.getPeriodRating(rows.get(key), gameSessionId);
+    }
+
+    private static Map<Long, Rating> loadRatings(Session session, Set<Long> keys) {
+        Map<Rating.OwnerType, List<Integer>> ownerIds = new HashMap<>();
+        for (long key : keys) {
+            Rating rating = RatingEngine.newRating(key);
+            ownerIds.computeIfAbsent(rating.getOwnerType(), type -> new ArrayList<>())
+                    .add(rating.getOwnerId());
+        }
+        Map<Long, Rating> loaded = new HashMap<>();
+        for (Map.Entry<Rating.OwnerType, List<Integer>> entry : ownerIds.entrySet()) {
+            List<Rating> results = DBManager.list(session.createCriteria(Rating.class)
+                    .add(Restrictions.eq("ownerType", entry.getKey()))
+                    .add(Restrictions.in("ownerId", entry.getValue())));
+            for (Rating rating : results) {
+                loaded.put(rating.getKey(), rating);
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,56 @@
+package ca.sfu.teambeta.persistence;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Rating;
+import ca.sfu.teambeta.logic.GameSession;
+
+/**
+ * The ladder's pairs, in ladder order, with their ratings and their players'.
+ * Ratings are in points; anyone without a result yet has the initial rating.
+ */
+public class RatingsJSONSerializer implements JSONSerializer {
+    private final GameSession gameSession;
+    private final Map<Long, Rating> ratings;
+
+    public RatingsJSONSerializer(GameSession gameSession, Map<Long, Rating> ratings) {
+        this.gameSession = gameSession;
+        this.ratings = ratings;
+    }
+
+    @Override
+    public String toJson() {
+        JsonArray pairsArray = new JsonArray();
+        int position = 1;
+        for (Pair pair : gameSession.getAllPairs()) {
+            JsonObject pairJson = new JsonObject();
+            JsonArray playersArray = new JsonArray();
+            for (Player player : pair.getPlayers()) {
+                JsonObject playerJson = new JsonObject();
+                playerJson.addProperty("firstName", player.getFirstName());
+                playerJson.addProperty("lastName", player.getLastName());
+                playerJson.addProperty("id", player.getID());
+                addRating(playerJson, Rating.key(Rating.OwnerType.PLAYER, player.getID()));
+                playersArray.add(playerJson);
+            }
+            pairJson.add("players", playersArray);
+            pairJson.addProperty("id", pair.getID());
+            pairJson.addProperty("position", position++);
+            addRating(pairJson, Rating.key(Rating.OwnerType.PAIR, pair.getID()));
+            pairsArray.add(pairJson);
+        }
+        return pairsArray.toString();
+    }
+
+    private void addRating(JsonObject json, long key) {
+        Rating rating = ratings.get(key);
+        json.addProperty("rating", (rating == null
+                ? Rating.INITIAL_RATING : rating.getRating()) / 100.0);
+        json.addProperty("games", rating == null ? 0 : rating.getGames());
+    }
+}
@@ -0,0 +1,66 @@
+package ca.sfu.teambeta.persistence;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Penalty;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.logic.GameSession;
+
+/**
+ * Next week's ladder as it would be if the GameSession were reordered now:
+ * each pair's would-be position, and how far that is from where it is now.
+ */
+public class ReorderPreviewJSONSerializer implements JSONSerializer {
+    private final GameSession gameSession;
+    private final List<Pair> reorderedPairs;
+
+    public ReorderPreviewJSONSerializer(GameSession gameSession, List<Pair> reorderedPairs) {
+        this.gameSession = gameSession;
+        this.reorderedPairs = reorderedPairs;
+    }
+
+    @Override
+    public String toJson() {
+        Map<Pair, Integer> currentPositions = new HashMap<>();
+        int position = 1;
+        for (Pair pair : gameSession.getAllPairs()) {
+            currentPositions.put(pair, position++);
+        }
+        Set<Pair> activePairs = gameSession.getActivePairSet();
+        Map<Pair, Penalty> penalties = gameSession.getPenalties();
+
+        JsonArray pairsArray = new JsonArray();
+        position = 1;
+        for (Pair pair : reorderedPairs) {
+            JsonObject pairJson = new JsonObject();
+            JsonArray playersArray = new JsonArray();
+            for (Player player : pair.getPlayers()) {
+                JsonObject playerJson = new JsonObject();
+                playerJson.addProperty("firstName", player.getFirstName());
+                playerJson.addProperty("lastName", player.getLastName());
+                playerJson.addProperty("id", player.getID());
+                playersArray.add(playerJson);
+            }
+            pairJson.add("players", playersArray);
+            pairJson.addProperty("id", pair.getID());
+            int currentPosition = currentPositions.get(pair);
+            pairJson.addProperty("position", position);
+            pairJson.addProperty("currentPosition", currentPosition);
+            pairJson.addProperty("positionChange", currentPosition - position);
+            pairJson.addProperty("isPlaying", activePairs.contains(pair));
+            if (penalties.containsKey(pair)) {
+                pairJson.addProperty("penalty", penalties.get(pair).toString());
+            }
+            pairsArray.add(pairJson);
+            position++;
+        }
+        return pairsArray.toString();
+    }
+}
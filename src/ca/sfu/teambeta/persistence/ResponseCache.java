@@ -0,0 +1,64 @@
+package ca.sfu.teambeta.persistence;
+
+import com.google.gson.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * UTF-8 response bodies serialized from a GameSession, kept until that GameSession
+ * changes. Entries are tagged with the GameSessionSnapshot version they were built
+ * from, so a newer version is simply a miss.
+ */
+public class ResponseCache implements JSONSerializer {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public byte[] get(String key, long version, Supplier<String> serializer) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version == version) {
+            hits.increment();
+            return entry.body;
+        }
+        misses.increment();
+        Entry built = new Entry(version, serializer.get().getBytes(StandardCharsets.UTF_8));
+        // A slow reader must not replace what a newer version already cached
+        entries.merge(key, built, (old, update) -> old.version > update.version ? old : update);
+        return built.body;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public String toJson() {
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("hits", getHits());
+        jsonObject.addProperty("misses", getMisses());
+        jsonObject.addProperty("entries", getSize());
+        return jsonObject.toString();
+    }
+
+    private static class Entry {
+        private final long version;
+        private final byte[] body;
+
+        Entry(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+}
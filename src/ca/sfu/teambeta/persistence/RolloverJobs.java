@@ -0,0 +1,268 @@
+package ca.sfu.teambeta.persistence;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Weekly rollovers, run one at a time on a background thread so the request
+ * that asks for one only waits for it to be queued. Each job can be polled by
+ * its id for how far it has got.
+ * <p>
+ * If given a file, every job is written to it as it moves on, and jobs that
+ * hadn't finished when the server stopped are run again when it starts.
+ * DBManager.rollOver commits all of a rollover or none of it, along with the
+ * job's id, so a job cut short is started over and one that had committed
+ * isn't made twice.
+ */
+public class RolloverJobs {
+    private static final Gson GSON = new Gson();
+    // Finished jobs kept for polling; older ones are forgotten
+    private static final int MAX_FINISHED_JOBS = 50;
+    private static final String[] STEPS = {
+        "Waiting for an earlier rollover",
+        "Reordering the ladder",
+        "Opening the ladder for changes",
+        "Done"
+    };
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private final DBManager dbManager;
+    private final Path file;
+    private final Runnable afterRollover;
+    // By id, oldest first; guarded by this
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final ExecutorService worker;
+    private volatile boolean closed = false;
+
+    // file may be null, to keep jobs only in memory. afterRollover is run once
+    // each rollover has committed.
+    public RolloverJobs(DBManager dbManager, Path file, Runnable afterRollover) {
+        this.dbManager = dbManager;
+        this.file = file;
+        this.afterRollover = afterRollover;
+        worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rollover");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Job job : load()) {
+            jobs.put(job.id, job);
+            if (!job.isFinished()) {
+                setStep(job, State.QUEUED, 0, null);
+                worker.execute(() -> run(job));
+            }
+        }
+    }
+
+    // A rollover of the same GameSession that hasn't finished yet is the job
+    // returned, rather than a second one
+    public synchronized Job submit(int gameSessionId, boolean startNextWeek) {
+        for (Job job : jobs.values()) {
+            if (!job.isFinished() && job.gameSessionId == gameSessionId
+                    && job.startNextWeek == startNextWeek) {
+                return job.copy();
+            }
+        }
+        Job job = new Job(UUID.randomUUID().toString(), gameSessionId, startNextWeek);
+        jobs.put(job.id, job);
+        forgetOldJobs();
+        save();
+        worker.execute(() -> run(job));
+        return job.copy();
+    }
+
+    // Null if there is no such job, or it finished long enough ago to be forgotten
+    public synchronized Job getJob(String id) {
+        Job job = jobs.get(id);
+        return job == null ? null : job.copy();
+    }
+
+    // Waits for the job being run, if any, and drops the rest; unfinished ones
+    // are run when jobs are next read from the file
+    public void close() {
+        closed = true;
+        worker.shutdown();
+        try {
+            worker.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(Job job) {
+        if (closed) {
+            return;
+        }
+        setStep(job, State.RUNNING, 1, null);
+        Integer result;
+        try {
+            result = dbManager.rollOver(job.gameSessionId, job.startNextWeek, job.id);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            setStep(job, State.FAILED, 1, e.toString());
+            return;
+        }
+        if (result == null) {
+            setStep(job, State.FAILED, 1, "The ladder couldn't be rolled over");
+            return;
+        }
+        synchronized (this) {
+            job.resultGameSessionId = result;
+        }
+        setStep(job, State.RUNNING, 2, null);
+        afterRollover.run();
+        setStep(job, State.DONE, STEPS.length - 1, null);
+    }
+
+    private synchronized void setStep(Job job, State state, int step, String error) {
+        job.state = state;
+        job.step = STEPS[step];
+        job.progress = (double) step / (STEPS.length - 1);
+        job.error = error;
+        job.updatedMillis = System.currentTimeMillis();
+        save();
+    }
+
+    private void forgetOldJobs() {
+        int finished = 0;
+        for (Job job : jobs.values()) {
+            if (job.isFinished()) {
+                finished++;
+            }
+        }
+        Iterator<Job> oldestFirst = jobs.values().iterator();
+        while (finished > MAX_FINISHED_JOBS && oldestFirst.hasNext()) {
+            if (oldestFirst.next().isFinished()) {
+                oldestFirst.remove();
+                finished--;
+            }
+        }
+    }
+
+    private List<Job> load() {
+        List<Job> loaded = new ArrayList<>();
+        if (file == null || !Files.exists(file)) {
+            return loaded;
+        }
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Job[] saved = GSON.fromJson(in, Job[].class);
+            if (saved != null) {
+                for (Job job : saved) {
+                    loaded.add(job);
+                }
+            }
+        } catch (IOException | JsonParseException e) {
+            // Unreadable; whatever was in it can be asked for again
+            e.printStackTrace();
+        }
+        return loaded;
+    }
+
+    // Written next to the file and moved over it, so a crash never leaves a
+    // partial one. A job that can't be saved still runs.
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                GSON.toJson(jobs.values().toArray(new Job[jobs.size()]), out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A rollover of one GameSession, as it was when it was asked for.
+     */
+    public static final class Job implements JSONSerializer {
+        private String id;
+        private int gameSessionId;
+        private boolean startNextWeek;
+        private State state = State.QUEUED;
+        private String step = STEPS[0];
+        private double progress;
+        private String error;
+        // The GameSession the ladder is served from once done
+        private Integer resultGameSessionId;
+        private long submittedMillis;
+        private long updatedMillis;
+
+        // Default constructor for Gson
+        private Job() {
+        }
+
+        private Job(String id, int gameSessionId, boolean startNextWeek) {
+            this.id = id;
+            this.gameSessionId = gameSessionId;
+            this.startNextWeek = startNextWeek;
+            this.submittedMillis = System.currentTimeMillis();
+            this.updatedMillis = submittedMillis;
+        }
+
+        private Job copy() {
+            Job copy = new Job(id, gameSessionId, startNextWeek);
+            copy.state = state;
+            copy.step = step;
+            copy.progress = progress;
+            copy.error = error;
+            copy.resultGameSessionId = resultGameSessionId;
+            copy.submittedMillis = submittedMillis;
+            copy.updatedMillis = updatedMillis;
+            return copy;
+        }
+
+        private boolean isFinished() {
+            return state == State.DONE || state == State.FAILED;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public double getProgress() {
+            return progress;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public Integer getResultGameSessionId() {
+            return resultGameSessionId;
+        }
+
+        @Override
+        public String toJson() {
+            return GSON.toJson(this);
+        }
+    }
+}
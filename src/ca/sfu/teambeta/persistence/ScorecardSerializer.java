@@ -17,6 +17,10 @@ import ca.sfu.teambeta.core.Scorecard;
  * Created by Gordon Shieh on 21/07/16.
  */
 public class ScorecardSerializer implements JsonSerializer<Scorecard> {
+    private static final Gson PAIR_GSON = new GsonBuilder()
+            .excludeFieldsWithoutExposeAnnotation()
+            .create();
+
     @Override
     public JsonElement serialize(Scorecard src, Type typeOfSrc, JsonSerializationContext context) {
         JsonObject jsonElement = new JsonObject();
@@ -26,11 +30,7 @@ public class ScorecardSerializer implements JsonSerializer<Scorecard> {
 
         JsonArray pairsJsonArray = new JsonArray();
         for (Pair pair : src.getReorderedPairs()) {
-            Gson gson = new GsonBuilder()
-                    .excludeFieldsWithoutExposeAnnotation()
-                    .create();
-
-            JsonObject pairJson = (JsonObject) gson.toJsonTree(pair);
+            JsonObject pairJson = (JsonObject) PAIR_GSON.toJsonTree(pair);
             int pairScore = src.getPairScore(pair);
             if (pairScore != 0) {
                 pairJson.addProperty("newRank", pairScore);
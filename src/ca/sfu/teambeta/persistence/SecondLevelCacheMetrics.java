@@ -0,0 +1,85 @@
+package ca.sfu.teambeta.persistence;
+
+import com.google.gson.JsonObject;
+
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Hit, miss and size counts for the SessionFactory's second-level cache, per region,
+ * along with the query cache used for looking up users by email. Counts are since the
+ * SessionFactory was built.
+ */
+public class SecondLevelCacheMetrics implements JSONSerializer {
+    private final Statistics statistics;
+
+    public SecondLevelCacheMetrics(Statistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public long getHitCount(String region) {
+        SecondLevelCacheStatistics regionStatistics = getRegion(region);
+        return regionStatistics == null ? 0 : regionStatistics.getHitCount();
+    }
+
+    public long getMissCount(String region) {
+        SecondLevelCacheStatistics regionStatistics = getRegion(region);
+        return regionStatistics == null ? 0 : regionStatistics.getMissCount();
+    }
+
+    public long getPutCount(String region) {
+        SecondLevelCacheStatistics regionStatistics = getRegion(region);
+        return regionStatistics == null ? 0 : regionStatistics.getPutCount();
+    }
+
+    public long getElementCount(String region) {
+        SecondLevelCacheStatistics regionStatistics = getRegion(region);
+        return regionStatistics == null ? 0 : regionStatistics.getElementCountInMemory();
+    }
+
+    public long getQueryHitCount() {
+        return statistics.getQueryCacheHitCount();
+    }
+
+    public long getQueryMissCount() {
+        return statistics.getQueryCacheMissCount();
+    }
+
+    public long getQueryPutCount() {
+        return statistics.getQueryCachePutCount();
+    }
+
+    // Null until the region has been used
+    private SecondLevelCacheStatistics getRegion(String region) {
+        for (String name : statistics.getSecondLevelCacheRegionNames()) {
+            if (name.equals(region)) {
+                return statistics.getSecondLevelCacheStatistics(region);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toJson() {
+        JsonObject regions = new JsonObject();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            JsonObject regionObject = new JsonObject();
+            regionObject.addProperty("hits", getHitCount(region));
+            regionObject.addProperty("misses", getMissCount(region));
+            regionObject.addProperty("puts", getPutCount(region));
+            regionObject.addProperty("elements", getElementCount(region));
+            regions.add(region, regionObject);
+        }
+
+        JsonObject queries = new JsonObject();
+        queries.addProperty("hits", getQueryHitCount());
+        queries.addProperty("misses", getQueryMissCount());
+        queries.addProperty("puts", getQueryPutCount());
+
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("enabled", statistics.isStatisticsEnabled());
+        jsonObject.add("regions", regions);
+        jsonObject.add("queries", queries);
+        return jsonObject.toString();
+    }
+}
@@ -0,0 +1,314 @@
+package ca.sfu.teambeta.persistence;
+
+import com.google.gson.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue of LadderEvents that have been applied in memory but not yet
+ * committed, with the background thread that hands them back to be flushed.
+ * <p>
+ * A batch is flushed once it holds maxBatchSize events or its oldest event has
+ * waited maxDelayMillis, whichever comes first. When the queue is full, offer()
+ * blocks until a flush makes room.
+ * <p>
+ * Events stay queued until their batch commits. A batch that fails is tried
+ * again, first in line, after a backoff that doubles up to MAX_RETRY_MILLIS;
+ * meanwhile the queue fills, and writers wait, rather than lose what was queued.
+ * <p>
+ * After MAX_FLUSH_ATTEMPTS failures the batch is tried one event at a time, and
+ * an event that fails that often on its own is taken out of the queue and kept
+ * with the dead letters, so one event that can never commit doesn't hold up
+ * every write behind it.
+ */
+public class WriteBehindQueue implements JSONSerializer {
+    private static final long INITIAL_RETRY_MILLIS = 50;
+    private static final long MAX_RETRY_MILLIS = 5000;
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+
+    private final int capacity;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<LadderEvent> pending = new ArrayDeque<>();
+    private long oldestQueuedNanos;
+    private int batchSize = 0;
+    private long retryDelayNanos = 0;
+    private long retryAtNanos;
+    private int failedAttempts = 0;
+    // Events left of a batch that kept failing, to be flushed one at a time
+    private int isolatedCount = 0;
+    private final List<LadderEvent> deadLetters = new ArrayList<>();
+    private boolean closed = false;
+    private final Thread flusher;
+
+    private final LongAdder queuedCount = new LongAdder();
+    private final LongAdder blockedCount = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushedEventCount = new LongAdder();
+    private final LongAdder failedFlushCount = new LongAdder();
+    private final LongAdder totalFlushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    // flush is run on the flusher thread, and must take everything it flushes
+    // through nextBatch() and report it with recordFlush()
+    public WriteBehindQueue(int capacity, int maxBatchSize, long maxDelayMillis,
+                            Runnable flush) {
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        flusher = new Thread(() -> runFlusher(flush), "write-behind-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Waits for room, then runs apply and queues the event if it returns true,
+    // all while no other event can be queued or drained. Returns false if the
+    // event wasn't queued, so the caller has to write it itself.
+    public boolean offer(LadderEvent event, BooleanSupplier apply) {
+        lock.lock();
+        try {
+            if (pending.size() >= capacity) {
+                blockedCount.increment();
+                while (pending.size() >= capacity && !closed) {
+                    notFull.awaitUninterruptibly();
+                }
+            }
+            if (closed || !apply.getAsBoolean()) {
+                return false;
+            }
+            if (pending.isEmpty()) {
+                oldestQueuedNanos = System.nanoTime();
+            }
+            pending.add(event);
+            queuedCount.increment();
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Oldest first, at most maxBatchSize of them. They stay queued, and in the
+    // read model, until recordFlush() says they were committed; only one batch
+    // may be out at a time.
+    public List<LadderEvent> nextBatch() {
+        lock.lock();
+        try {
+            List<LadderEvent> batch = new ArrayList<>();
+            int limit = isolatedCount > 0 ? 1 : maxBatchSize;
+            for (LadderEvent event : pending) {
+                if (batch.size() == limit) {
+                    break;
+                }
+                batch.add(event);
+            }
+            batchSize = batch.size();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Runs with nothing queued or drained until it returns
+    public void withPending(Consumer<List<LadderEvent>> consumer) {
+        lock.lock();
+        try {
+            consumer.accept(Collections.unmodifiableList(new ArrayList<>(pending)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Takes the last batch out of the queue if it was committed, and otherwise
+    // leaves it first in line and holds the flusher back for the backoff. True
+    // if the batch has left the queue, committed or given up on; one given up
+    // on is still in the read model, which has to be rebuilt without it.
+    public boolean recordFlush(long elapsedNanos, boolean committed) {
+        lock.lock();
+        try {
+            if (!committed) {
+                failedFlushCount.increment();
+                if (++failedAttempts < MAX_FLUSH_ATTEMPTS) {
+                    retryDelayNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(MAX_RETRY_MILLIS),
+                            Math.max(TimeUnit.MILLISECONDS.toNanos(INITIAL_RETRY_MILLIS),
+                                    retryDelayNanos * 2));
+                    retryAtNanos = System.nanoTime() + retryDelayNanos;
+                    return false;
+                }
+                failedAttempts = 0;
+                retryDelayNanos = 0;
+                if (batchSize > 1) {
+                    isolatedCount = batchSize;
+                    return false;
+                }
+                LadderEvent event = pending.poll();
+                deadLetters.add(event);
+                System.err.println("Gave up on write-behind " + event.getType() + " event for "
+                        + "pairs " + event.getPairIds() + " after " + MAX_FLUSH_ATTEMPTS
+                        + " failed flushes");
+            } else {
+                for (int i = 0; i < batchSize; i++) {
+                    pending.poll();
+                }
+                flushCount.increment();
+                flushedEventCount.add(batchSize);
+                totalFlushNanos.add(elapsedNanos);
+                maxFlushNanos.accumulateAndGet(elapsedNanos, Math::max);
+                failedAttempts = 0;
+                retryDelayNanos = 0;
+            }
+            isolatedCount = Math.max(0, isolatedCount - batchSize);
+            batchSize = 0;
+            oldestQueuedNanos = System.nanoTime();
+            notFull.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stops queueing and stops the flusher; anything still queued is left for
+    // the caller to flush
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runFlusher(Runnable flush) {
+        while (awaitBatch()) {
+            try {
+                flush.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Returns false once closed
+    private boolean awaitBatch() {
+        lock.lock();
+        try {
+            while (!closed) {
+                if (pending.isEmpty()) {
+                    notEmpty.awaitUninterruptibly();
+                    continue;
+                }
+                long now = System.nanoTime();
+                long wait = oldestQueuedNanos + maxDelayNanos - now;
+                if (retryDelayNanos > 0) {
+                    wait = retryAtNanos - now;
+                } else if (pending.size() >= maxBatchSize) {
+                    wait = 0;
+                }
+                if (wait <= 0) {
+                    return true;
+                }
+                try {
+                    notEmpty.awaitNanos(wait);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getDepth() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getQueuedCount() {
+        return queuedCount.sum();
+    }
+
+    // Writes that had to wait for a flush because the queue was full
+    public long getBlockedCount() {
+        return blockedCount.sum();
+    }
+
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    public long getFlushedEventCount() {
+        return flushedEventCount.sum();
+    }
+
+    public long getFailedFlushCount() {
+        return failedFlushCount.sum();
+    }
+
+    // Events given up on after failing MAX_FLUSH_ATTEMPTS times on their own
+    public List<LadderEvent> getDeadLetters() {
+        lock.lock();
+        try {
+            return new ArrayList<>(deadLetters);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getAverageFlushMillis() {
+        long count = flushCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        return (double) totalFlushNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxFlushMillis() {
+        return (double) maxFlushNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toJson() {
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("depth", getDepth());
+        jsonObject.addProperty("capacity", getCapacity());
+        jsonObject.addProperty("queued", getQueuedCount());
+        jsonObject.addProperty("blocked", getBlockedCount());
+        jsonObject.addProperty("flushes", getFlushCount());
+        jsonObject.addProperty("flushedEvents", getFlushedEventCount());
+        jsonObject.addProperty("failedFlushes", getFailedFlushCount());
+        jsonObject.addProperty("deadLetters", getDeadLetters().size());
+        jsonObject.addProperty("averageFlushMillis", getAverageFlushMillis());
+        jsonObject.addProperty("maxFlushMillis", getMaxFlushMillis());
+        return jsonObject.toString();
+    }
+}
@@ -0,0 +1,253 @@
+package ca.sfu.teambeta.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ca.sfu.teambeta.core.Ladder;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Penalty;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.core.Time;
+import ca.sfu.teambeta.logic.GameSession;
+import ca.sfu.teambeta.logic.LadderReorderer;
+import ca.sfu.teambeta.logic.ScorecardGenerator;
+import ca.sfu.teambeta.logic.TimeSelection;
+import ca.sfu.teambeta.logic.VrcLadderReorderer;
+import ca.sfu.teambeta.logic.VrcScorecardGenerator;
+import ca.sfu.teambeta.logic.VrcTimeSelection;
+
+/**
+ * Plays out whole seasons of made-up pairs through the same GameSession
+ * grouping and reordering as the real ladder, to see how the rules treat
+ * pairs over time. Every pair has a hidden skill, and wins or loses against
+ * its group by that skill plus some luck.
+ * <p>
+ * Seasons are independent and run in parallel on a fork-join pool. Each one
+ * draws everything, down to its players' UUIDs, from its own Random seeded by
+ * its number, so the statistics don't depend on how many threads run them.
+ * <p>
+ * Run a sweep over penalty sizes and no-show rates with: gradlew simulate
+ */
+public class SeasonSimulator {
+    private static final int DEFAULT_SEASONS = 1000;
+    private static final int MIN_PAIRS_TO_PLAY = 3;
+    private static final Time[] PLAYABLE_TIMES = Arrays.stream(Time.values())
+            .filter(time -> time != Time.NO_SLOT)
+            .toArray(Time[]::new);
+    // Skills are spread evenly over this range from the best pair to the worst,
+    // whatever the size of the ladder
+    private static final double SKILL_RANGE = 4;
+
+    private final SimulationParameters parameters;
+    private final long seed;
+
+    public SeasonSimulator(SimulationParameters parameters, long seed) {
+        this.parameters = new SimulationParameters(parameters);
+        this.seed = seed;
+    }
+
+    public SeasonStatistics run(int seasons) {
+        return run(seasons, ForkJoinPool.commonPool());
+    }
+
+    public SeasonStatistics run(int seasons, ForkJoinPool pool) {
+        return pool.invoke(new Seasons(0, seasons));
+    }
+
+    // Halves the range of seasons until one is left for each task
+    private class Seasons extends RecursiveTask<SeasonStatistics> {
+        private final int from;
+        private final int to;
+
+        Seasons(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SeasonStatistics compute() {
+            if (to - from <= 1) {
+                return from < to ? simulateSeason(from) : new SeasonStatistics();
+            }
+            int middle = (from + to) >>> 1;
+            Seasons upper = new Seasons(middle, to);
+            upper.fork();
+            SeasonStatistics lower = new Seasons(from, middle).compute();
+            return lower.merge(upper.join());
+        }
+    }
+
+    SeasonStatistics simulateSeason(int season) {
+        Random random = new Random(seed * 31 + season);
+        int pairCount = parameters.getPairs();
+        SeasonStatistics statistics = new SeasonStatistics();
+
+        // Pair number i is the i-th best; the ladder starts in a random order
+        List<Pair> pairs = new ArrayList<>(pairCount);
+        Map<Pair, Integer> skillRanks = new HashMap<>();
+        double[] attendance = new double[pairCount];
+        for (int i = 0; i < pairCount; i++) {
+            Pair pair = new Pair(
+                    new Player("Simulated", "A" + i, randomUuid(random)),
+                    new Player("Simulated", "B" + i, randomUuid(random)));
+            pairs.add(pair);
+            skillRanks.put(pair, i);
+            attendance[i] = parameters.getMinAttendance() + random.nextDouble()
+                    * (parameters.getMaxAttendance() - parameters.getMinAttendance());
+        }
+        List<Pair> startingOrder = new ArrayList<>(pairs);
+        Collections.shuffle(startingOrder, random);
+
+        // The strongest quarter of pairs, starting in the bottom half
+        int[] climbWeek = new int[pairCount];
+        boolean[] climber = new boolean[pairCount];
+        for (int position = pairCount / 2; position < pairCount; position++) {
+            int rank = skillRanks.get(startingOrder.get(position));
+            if (rank < pairCount / 4) {
+                climber[rank] = true;
+                climbWeek[rank] = -1;
+            }
+        }
+
+        LadderReorderer reorderer = new VrcLadderReorderer(parameters.getPenaltyPositions());
+        ScorecardGenerator generator = new VrcScorecardGenerator();
+        TimeSelection timeSelection = new VrcTimeSelection();
+        Ladder ladder = new Ladder(startingOrder);
+        for (int week = 0; week < parameters.getWeeks(); week++) {
+            GameSession gameSession = new GameSession(ladder);
+            if (playWeek(gameSession, random, skillRanks, attendance) < MIN_PAIRS_TO_PLAY) {
+                statistics.addCancelledWeek();
+                continue;
+            }
+            gameSession.createGroups(generator, timeSelection);
+            for (Scorecard scorecard : gameSession.getScorecards()) {
+                setResults(scorecard, random, skillRanks, pairCount);
+            }
+            gameSession.reorderLadder(reorderer, timeSelection);
+            Ladder next = gameSession.getReorderedLadder();
+
+            long moved = 0;
+            int position = 0;
+            for (Pair pair : next.getPairs()) {
+                moved += Math.abs(pair.getLastWeekPosition() - 1 - position);
+                int rank = skillRanks.get(pair);
+                if (climber[rank] && climbWeek[rank] < 0 && position < pairCount / 4) {
+                    climbWeek[rank] = week + 1;
+                }
+                position++;
+            }
+            statistics.addWeek(moved, pairCount);
+            ladder = next;
+        }
+
+        for (int rank = 0; rank < pairCount; rank++) {
+            if (climber[rank]) {
+                statistics.addClimber(climbWeek[rank]);
+            }
+        }
+        statistics.addSeason(skillCorrelation(ladder.getPairs(), skillRanks));
+        return statistics;
+    }
+
+    // Decides who plays, when they would like to, and who is penalized.
+    // Returns how many pairs play.
+    private int playWeek(GameSession gameSession, Random random, Map<Pair, Integer> skillRanks,
+                         double[] attendance) {
+        int playing = 0;
+        for (Pair pair : gameSession.getAllPairs()) {
+            if (random.nextDouble() < attendance[skillRanks.get(pair)]) {
+                gameSession.setPairActive(pair);
+                playing++;
+                if (random.nextDouble() < parameters.getTimePreferenceRate()) {
+                    gameSession.setTimeSlot(pair,
+                            PLAYABLE_TIMES[random.nextInt(PLAYABLE_TIMES.length)]);
+                }
+                if (random.nextDouble() < parameters.getLateRate()) {
+                    gameSession.setPenaltyToPair(pair, Penalty.LATE);
+                }
+            } else if (random.nextDouble() < parameters.getNoShowRate()) {
+                gameSession.setPenaltyToPair(pair, Penalty.MISSING);
+            }
+        }
+        return playing;
+    }
+
+    // Ranks the group by skill plus how each pair played on the day
+    private void setResults(Scorecard scorecard, Random random, Map<Pair, Integer> skillRanks,
+                            int pairCount) {
+        List<Pair> group = scorecard.getPairs();
+        Map<Pair, Double> form = new HashMap<>();
+        for (Pair pair : group) {
+            double skill = -SKILL_RANGE * skillRanks.get(pair) / pairCount;
+            form.put(pair, skill + random.nextGaussian() * parameters.getResultNoise());
+        }
+        List<Pair> finishingOrder = new ArrayList<>(group);
+        finishingOrder.sort(Comparator.comparing(form::get, Comparator.reverseOrder()));
+        for (int rank = 0; rank < finishingOrder.size(); rank++) {
+            scorecard.setGameResults(finishingOrder.get(rank), rank + 1);
+        }
+    }
+
+    private static UUID randomUuid(Random random) {
+        return new UUID(random.nextLong(), random.nextLong());
+    }
+
+    // Spearman's rank correlation between position and skill
+    private static double skillCorrelation(List<Pair> ladder, Map<Pair, Integer> skillRanks) {
+        long n = ladder.size();
+        if (n < 2) {
+            return 1;
+        }
+        long squaredDifferences = 0;
+        for (int position = 0; position < n; position++) {
+            long difference = position - skillRanks.get(ladder.get(position));
+            squaredDifferences += difference * difference;
+        }
+        return 1 - 6.0 * squaredDifferences / (n * (n * n - 1));
+    }
+
+    // Usage: SeasonSimulator [seasons] [weeks] [pairs]
+    public static void main(String[] args) {
+        int seasons = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SEASONS;
+        SimulationParameters base = new SimulationParameters();
+        if (args.length > 1) {
+            base.setWeeks(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            base.setPairs(Integer.parseInt(args[2]));
+        }
+        System.out.println(base);
+
+        // Warms up the JIT, so the first row's rate isn't off
+        new SeasonSimulator(base, 0).run(Math.min(seasons, 200));
+
+        for (double noShowRate : new double[] {0.02, 0.1}) {
+            for (int missing : new int[] {4, 10, 16}) {
+                for (int late : new int[] {2, 4}) {
+                    SimulationParameters parameters = new SimulationParameters(base);
+                    parameters.setNoShowRate(noShowRate);
+                    parameters.setPenaltyPositions(Penalty.MISSING, missing);
+                    parameters.setPenaltyPositions(Penalty.LATE, late);
+
+                    long start = System.nanoTime();
+                    SeasonStatistics statistics =
+                            new SeasonSimulator(parameters, 1).run(seasons);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.println(String.format(
+                            "noShow=%.2f missing=%d late=%d %s seasons/s=%.0f",
+                            noShowRate, missing, late, statistics, seasons / seconds));
+                }
+            }
+        }
+    }
+}
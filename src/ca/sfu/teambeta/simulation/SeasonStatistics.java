@@ -0,0 +1,102 @@
+package ca.sfu.teambeta.simulation;
+
+/**
+ * Totals over any number of simulated seasons, which add up across seasons
+ * simulated apart, so they can be merged in any order.
+ */
+public class SeasonStatistics {
+    private long seasons = 0;
+    private long weeksPlayed = 0;
+    private long weeksCancelled = 0;
+    // Positions pairs moved from one week's ladder to the next, over every
+    // pair and every week
+    private long positionsMoved = 0;
+    private long pairWeeks = 0;
+    // Pairs among the best quarter by skill that started in the bottom half,
+    // and how many weeks those that reached the top quarter took to
+    private long climbers = 0;
+    private long climbed = 0;
+    private long weeksToClimb = 0;
+    // How well each season's final ladder is ordered by skill
+    private double skillCorrelation = 0;
+
+    void addSeason(double finalSkillCorrelation) {
+        seasons++;
+        skillCorrelation += finalSkillCorrelation;
+    }
+
+    void addWeek(long moved, int pairs) {
+        weeksPlayed++;
+        positionsMoved += moved;
+        pairWeeks += pairs;
+    }
+
+    void addCancelledWeek() {
+        weeksCancelled++;
+    }
+
+    void addClimber(int weeks) {
+        climbers++;
+        if (weeks >= 0) {
+            climbed++;
+            weeksToClimb += weeks;
+        }
+    }
+
+    public SeasonStatistics merge(SeasonStatistics other) {
+        SeasonStatistics merged = new SeasonStatistics();
+        merged.seasons = seasons + other.seasons;
+        merged.weeksPlayed = weeksPlayed + other.weeksPlayed;
+        merged.weeksCancelled = weeksCancelled + other.weeksCancelled;
+        merged.positionsMoved = positionsMoved + other.positionsMoved;
+        merged.pairWeeks = pairWeeks + other.pairWeeks;
+        merged.climbers = climbers + other.climbers;
+        merged.climbed = climbed + other.climbed;
+        merged.weeksToClimb = weeksToClimb + other.weeksToClimb;
+        merged.skillCorrelation = skillCorrelation + other.skillCorrelation;
+        return merged;
+    }
+
+    public long getSeasons() {
+        return seasons;
+    }
+
+    public long getWeeksPlayed() {
+        return weeksPlayed;
+    }
+
+    public long getWeeksCancelled() {
+        return weeksCancelled;
+    }
+
+    // Average positions a pair moves in a week
+    public double getPositionVolatility() {
+        return pairWeeks == 0 ? 0 : (double) positionsMoved / pairWeeks;
+    }
+
+    // Average weeks a strong pair starting in the bottom half takes to reach
+    // the top quarter, of those that do within the season
+    public double getWeeksToClimb() {
+        return climbed == 0 ? 0 : (double) weeksToClimb / climbed;
+    }
+
+    // Share of strong pairs starting in the bottom half that reach the top
+    // quarter within the season
+    public double getClimbRate() {
+        return climbers == 0 ? 0 : (double) climbed / climbers;
+    }
+
+    // Average Spearman correlation between skill and final ladder position;
+    // 1 when the ladder ends up exactly in order of skill
+    public double getSkillCorrelation() {
+        return seasons == 0 ? 0 : skillCorrelation / seasons;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("seasons=%d volatility=%.2f weeksToClimb=%.1f climbRate=%.2f"
+                        + " skillCorrelation=%.3f cancelledWeeks=%d",
+                seasons, getPositionVolatility(), getWeeksToClimb(), getClimbRate(),
+                getSkillCorrelation(), weeksCancelled);
+    }
+}
@@ -0,0 +1,125 @@
+package ca.sfu.teambeta.simulation;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import ca.sfu.teambeta.core.Penalty;
+
+/**
+ * What a simulated season looks like: how big the ladder is, how often pairs
+ * play, how they behave when they do, and how far each penalty moves them.
+ * Probabilities are per pair and per week.
+ */
+public class SimulationParameters {
+    private int pairs = 60;
+    private int weeks = 30;
+    // Each pair plays with a probability drawn between these two
+    private double minAttendance = 0.4;
+    private double maxAttendance = 0.95;
+    // Of the pairs that don't play, how many said they would and never came
+    private double noShowRate = 0.05;
+    private double lateRate = 0.05;
+    // Of the pairs that play, how many choose a time slot rather than NO_SLOT
+    private double timePreferenceRate = 0.3;
+    // How much luck there is in a match: the standard deviation of each pair's
+    // form on the day, where skills run evenly from 0 for the best pair down to
+    // -4 for the worst
+    private double resultNoise = 0.5;
+    private Map<Penalty, Integer> penaltyPositions = new EnumMap<>(Penalty.class);
+
+    public SimulationParameters() {
+        for (Penalty penalty : Penalty.values()) {
+            penaltyPositions.put(penalty, penalty.getPenalty());
+        }
+    }
+
+    public SimulationParameters(SimulationParameters other) {
+        this.pairs = other.pairs;
+        this.weeks = other.weeks;
+        this.minAttendance = other.minAttendance;
+        this.maxAttendance = other.maxAttendance;
+        this.noShowRate = other.noShowRate;
+        this.lateRate = other.lateRate;
+        this.timePreferenceRate = other.timePreferenceRate;
+        this.resultNoise = other.resultNoise;
+        this.penaltyPositions = new EnumMap<>(other.penaltyPositions);
+    }
+
+    public int getPairs() {
+        return pairs;
+    }
+
+    public void setPairs(int pairs) {
+        this.pairs = pairs;
+    }
+
+    public int getWeeks() {
+        return weeks;
+    }
+
+    public void setWeeks(int weeks) {
+        this.weeks = weeks;
+    }
+
+    public double getMinAttendance() {
+        return minAttendance;
+    }
+
+    public double getMaxAttendance() {
+        return maxAttendance;
+    }
+
+    public void setAttendance(double minAttendance, double maxAttendance) {
+        this.minAttendance = minAttendance;
+        this.maxAttendance = maxAttendance;
+    }
+
+    public double getNoShowRate() {
+        return noShowRate;
+    }
+
+    public void setNoShowRate(double noShowRate) {
+        this.noShowRate = noShowRate;
+    }
+
+    public double getLateRate() {
+        return lateRate;
+    }
+
+    public void setLateRate(double lateRate) {
+        this.lateRate = lateRate;
+    }
+
+    public double getTimePreferenceRate() {
+        return timePreferenceRate;
+    }
+
+    public void setTimePreferenceRate(double timePreferenceRate) {
+        this.timePreferenceRate = timePreferenceRate;
+    }
+
+    public double getResultNoise() {
+        return resultNoise;
+    }
+
+    public void setResultNoise(double resultNoise) {
+        this.resultNoise = resultNoise;
+    }
+
+    public Map<Penalty, Integer> getPenaltyPositions() {
+        return penaltyPositions;
+    }
+
+    public void setPenaltyPositions(Penalty penalty, int positions) {
+        penaltyPositions.put(penalty, positions);
+    }
+
+    @Override
+    public String toString() {
+        return "pairs=" + pairs + " weeks=" + weeks
+                + " attendance=" + minAttendance + "-" + maxAttendance
+                + " noShow=" + noShowRate + " late=" + lateRate
+                + " timePreference=" + timePreferenceRate + " noise=" + resultNoise
+                + " penalties=" + penaltyPositions;
+    }
+}
@@ -0,0 +1,97 @@
+package ca.sfu.teambeta.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedListTest {
+    @Test
+    public void testMatchesArrayListUnderRandomChanges() {
+        Random random = new Random(7);
+        List<Integer> expected = new ArrayList<>();
+        IndexedList<Integer> actual = new IndexedList<>();
+        int nextValue = 0;
+
+        for (int step = 0; step < 5000; step++) {
+            int operation = random.nextInt(6);
+            if (expected.isEmpty() || operation <= 1) {
+                int position = random.nextInt(expected.size() + 1);
+                expected.add(position, nextValue);
+                actual.add(position, nextValue);
+                nextValue++;
+            } else if (operation == 2) {
+                int position = random.nextInt(expected.size());
+                assertEquals(expected.remove(position), actual.remove(position));
+            } else if (operation == 3) {
+                Integer value = expected.get(random.nextInt(expected.size()));
+                assertEquals(expected.remove(value), actual.remove(value));
+            } else if (operation == 4) {
+                int position = random.nextInt(expected.size());
+                Integer value = nextValue++;
+                assertEquals(expected.set(position, value), actual.set(position, value));
+            } else {
+                Integer value = random.nextInt(nextValue + 10);
+                assertEquals(expected.indexOf(value), actual.indexOf(value));
+                assertEquals(expected.contains(value), actual.contains(value));
+            }
+            assertEquals(expected.size(), actual.size());
+        }
+        assertEquals(expected, actual);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testDuplicatesAndNullsAreFound() {
+        IndexedList<String> list = new IndexedList<>(Arrays.asList("a", "b", null, "c"));
+
+        assertEquals(2, list.indexOf(null));
+        list.add("a");
+        assertEquals(0, list.indexOf("a"));
+        assertEquals(4, list.lastIndexOf("a"));
+
+        list.remove(0);
+        assertEquals(3, list.indexOf("a"));
+        assertTrue(list.remove("a"));
+        assertFalse(list.contains("a"));
+        assertEquals(Arrays.asList("b", null, "c"), list);
+    }
+
+    @Test
+    public void testDuplicateReplacedBySetIsFound() {
+        IndexedList<String> list = new IndexedList<>(Arrays.asList("a", "b", "a", "c"));
+        assertEquals(2, list.lastIndexOf("a"));
+        list.add("d");
+        assertEquals(4, list.indexOf("d"));
+
+        list.set(2, "e");
+        assertEquals(0, list.lastIndexOf("a"));
+        assertEquals(2, list.indexOf("e"));
+        list.add(0, "e");
+        assertEquals(0, list.indexOf("e"));
+        assertEquals(3, list.lastIndexOf("e"));
+    }
+
+    @Test
+    public void testIteratorRemoves() {
+        IndexedList<Integer> list = new IndexedList<>(Arrays.asList(1, 2, 3, 4, 5, 6));
+        Iterator<Integer> iterator = list.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+
+        assertEquals(Arrays.asList(1, 3, 5), list);
+        assertEquals(2, list.indexOf(5));
+    }
+}
@@ -1,8 +1,17 @@
 package ca.sfu.teambeta.core;
 
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.junit.Test;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.sfu.teambeta.persistence.DBManager;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class PairTest {
     @Test
@@ -15,4 +24,66 @@ public class PairTest {
 
         assertEquals(firstPair, secondPair);
     }
+
+    @Test
+    public void testHashDoesNotDependOnPlayerOrder() {
+        Player firstPlayer = new Player("Test", "A");
+        Player secondPlayer = new Player("Test", "B");
+
+        assertEquals(new Pair(firstPlayer, secondPlayer).hashCode(),
+                new Pair(secondPlayer, firstPlayer).hashCode());
+    }
+
+    @Test
+    public void testRenamedPlayerKeepsItsPairs() {
+        Player firstPlayer = new Player("Test", "A");
+        Player secondPlayer = new Player("Test", "B");
+        Pair pair = new Pair(firstPlayer, secondPlayer);
+        Map<Pair, Integer> positions = new HashMap<>();
+        positions.put(pair, 1);
+
+        firstPlayer.setLastName("C");
+
+        assertEquals(Integer.valueOf(1), positions.get(new Pair(secondPlayer, firstPlayer)));
+        assertTrue(pair.hasPlayer(firstPlayer));
+    }
+
+    @Test
+    public void testSameNamesAreDifferentPlayers() {
+        Pair firstPair = new Pair(new Player("Test", "A"), new Player("Test", "B"));
+        Pair secondPair = new Pair(new Player("Test", "A"), new Player("Test", "B"));
+
+        assertFalse(firstPair.equals(secondPair));
+        assertFalse(firstPair.hasPlayer(new Player("Test", "A")));
+    }
+
+    @Test
+    public void testLoadedPairMatchesOneBuiltByHand() {
+        SessionFactory sessionFactory = DBManager.getH2MemorySession();
+        try {
+            Player firstPlayer = new Player("Test", "A");
+            Player secondPlayer = new Player("Test", "B");
+            Pair pair = new Pair(firstPlayer, secondPlayer);
+            new DBManager(sessionFactory).persistEntity(pair);
+            Map<Pair, Integer> positions = new HashMap<>();
+            positions.put(new Pair(secondPlayer, firstPlayer), 1);
+            sessionFactory.getCache().evictAllRegions();
+
+            Session session = sessionFactory.openSession();
+            Pair loaded;
+            try {
+                // Hashed while its players are still to be loaded, then again after
+                loaded = session.get(Pair.class, pair.getID());
+                assertEquals(Integer.valueOf(1), positions.get(loaded));
+                assertEquals(Integer.valueOf(1), positions.get(loaded));
+            } finally {
+                session.close();
+            }
+            // And still does once the Session is gone
+            assertEquals(new Pair(firstPlayer, secondPlayer), loaded);
+            assertEquals(new Pair(firstPlayer, secondPlayer).hashCode(), loaded.hashCode());
+        } finally {
+            sessionFactory.close();
+        }
+    }
 }
@@ -57,4 +57,20 @@ public class ScorecardTest {
         Assert.assertEquals(reOrdered, expectedOrder);
     }
 
+    @Test
+    public void testResultsOnCopyLeaveOriginalUntouched() {
+        Scorecard original = new Scorecard(threePairs, null);
+        original.setGameResults(victorJoyce, 1);
+        original.setGameResults(rosStevie, 2);
+        original.setGameResults(vickyDavid, 3);
+
+        Scorecard copy = new Scorecard(original);
+        copy.setGameResults(victorJoyce, 3);
+        copy.setGameResults(vickyDavid, 1);
+
+        Assert.assertEquals(Arrays.asList(victorJoyce, rosStevie, vickyDavid),
+                original.getReorderedPairs());
+        Assert.assertEquals(Arrays.asList(vickyDavid, rosStevie, victorJoyce),
+                copy.getReorderedPairs());
+    }
 }
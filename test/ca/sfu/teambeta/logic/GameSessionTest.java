@@ -6,17 +6,25 @@ import org.hibernate.Transaction;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import ca.sfu.teambeta.core.Ladder;
 import ca.sfu.teambeta.core.Pair;
 import ca.sfu.teambeta.core.Penalty;
 import ca.sfu.teambeta.core.Player;
 import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.core.Time;
 import ca.sfu.teambeta.persistence.PersistenceTest;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class GameSessionTest extends PersistenceTest {
     private final Pair kateNick = new Pair(
@@ -142,6 +150,117 @@ public class GameSessionTest extends PersistenceTest {
         assertEquals(reorderedLadder, gameSession.getReorderedLadder());
     }
 
+    @Test
+    public void testPreviewIsTheReorderedLadderWithoutChangingAnything() {
+        List<Scorecard> scorecards = gameSession.getScorecards();
+        scorecards.get(0).setGameResults(davidBob, 2);
+        scorecards.get(0).setGameResults(kevinJasmin, 1);
+        scorecards.get(0).setGameResults(richardRobin, 3);
+        scorecards.get(1).setGameResults(ianCamden, 1);
+        scorecards.get(1).setGameResults(tonyAngelica, 2);
+        scorecards.get(1).setGameResults(anastasiaVictoria, 3);
+        List<Integer> lastWeekPositions = new ArrayList<>();
+        for (Pair pair : pairList) {
+            lastWeekPositions.add(pair.getLastWeekPosition());
+        }
+
+        List<Pair> preview = gameSession.previewReorderedLadder(new VrcLadderReorderer());
+
+        assertEquals(reorderedList, preview);
+        assertNull(gameSession.getReorderedLadder());
+        assertEquals(pairList, gameSession.getAllPairs());
+        for (int i = 0; i < pairList.size(); i++) {
+            assertEquals((int) lastWeekPositions.get(i), pairList.get(i).getLastWeekPosition());
+        }
+        assertEquals(preview, gameSession.previewReorderedLadder(new VrcLadderReorderer()));
+    }
+
+    @Test
+    public void testPlayerIsFoundInTheirActivePair() throws Exception {
+        Player kate = kateNick.getPlayers().get(0);
+        Pair kateJim = new Pair(kate, jimRyan.getPlayers().get(0));
+        gameSession.addNewPairAtEnd(kateJim);
+
+        assertNull(gameSession.getActivePair(kate));
+        assertTrue(gameSession.setPairActive(kateNick));
+        assertEquals(kateNick, gameSession.getActivePair(kate));
+        assertFalse(gameSession.setPairActive(kateJim));
+        assertEquals(kate, gameSession.getAlreadyActivePlayer(kateJim));
+
+        gameSession.removePairFromLadder(kateNick);
+        assertNull(gameSession.getActivePair(kate));
+        assertTrue(gameSession.setPairActive(kateJim));
+        assertEquals(kateJim, gameSession.getActivePair(kate));
+    }
+
+    @Test
+    public void testActivePairsAreFoundByIdOnceSaved() {
+        int key = saveGameSession();
+        Session session = getSession();
+        GameSession loaded = session.get(GameSession.class, key);
+
+        Player bob = davidBob.getPlayers().get(0);
+        assertTrue(loaded.isActivePair(davidBob.getID()));
+        assertFalse(loaded.isActivePair(kateNick.getID()));
+        assertFalse(loaded.isActivePair(-1));
+        assertEquals(davidBob, loaded.getActivePair(bob.getID()));
+
+        loaded.setPairInactive(davidBob);
+        assertFalse(loaded.isActivePair(davidBob.getID()));
+        assertNull(loaded.getActivePair(bob.getID()));
+        session.close();
+    }
+
+    @Test
+    public void testUpdatedGroupsMatchNewGroups() {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 80; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player")));
+        }
+        GameSession updated = new GameSession(new Ladder(pairs));
+        Random random = new Random(11);
+
+        for (int step = 0; step < 300; step++) {
+            Pair pair = pairs.get(random.nextInt(pairs.size()));
+            if (updated.isActivePair(pair)) {
+                updated.setPairInactive(pair);
+            } else {
+                updated.setPairActive(pair);
+                Time[] times = Time.values();
+                updated.setTimeSlot(pair, times[random.nextInt(times.length)]);
+            }
+            updated.updateGroups(new VrcScorecardGenerator(), new VrcTimeSelection());
+
+            GameSession created = new GameSession(updated);
+            created.createGroups(new VrcScorecardGenerator(), new VrcTimeSelection());
+            List<Scorecard> expected = created.getScorecards();
+            List<Scorecard> actual = updated.getScorecards();
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getReorderedPairs(),
+                        actual.get(i).getReorderedPairs());
+                assertEquals(expected.get(i).getTimeSlot(), actual.get(i).getTimeSlot());
+            }
+        }
+    }
+
+    @Test
+    public void testUpdatingGroupsKeepsScorecardsAboveTheChange() {
+        List<Scorecard> before = new ArrayList<>(gameSession.getScorecards());
+        before.get(0).setGameResults(davidBob, 1);
+
+        gameSession.setPairActive(amyMaria);
+        List<Scorecard> after = gameSession.updateGroups(
+                new VrcScorecardGenerator(), new VrcTimeSelection());
+
+        assertEquals(2, after.size());
+        assertSame(before.get(0), after.get(0));
+        assertNotSame(before.get(1), after.get(1));
+        assertEquals(Arrays.asList(amyMaria, tonyAngelica, anastasiaVictoria, ianCamden),
+                after.get(1).getReorderedPairs());
+    }
+
     private int saveGameSession() {
         Session session = getSession();
         Transaction tx = null;
@@ -5,11 +5,17 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import ca.sfu.teambeta.core.Pair;
 import ca.sfu.teambeta.core.Penalty;
@@ -89,4 +95,152 @@ public class LadderReordererTest {
         Assert.assertEquals(afterProcessing, reorderedLadder);
     }
 
+    @Test
+    public void testSameOrderAsListReorderer() {
+        Random random = new Random(2016);
+        Penalty[] penaltyValues = Penalty.values();
+        for (int ladder = 0; ladder < 500; ladder++) {
+            List<Pair> pairs = new ArrayList<>();
+            int size = 1 + random.nextInt(ladder < 450 ? 40 : 400);
+            for (int i = 0; i < size; i++) {
+                pairs.add(new Pair(new Player("First" + i, "Player"),
+                        new Player("Second" + i, "Player")));
+            }
+
+            List<Pair> active = pairs.stream()
+                    .filter(pair -> random.nextInt(4) != 0)
+                    .collect(Collectors.toList());
+            if (active.isEmpty()) {
+                active.add(pairs.get(0));
+            }
+            List<Scorecard> scorecards = new VrcScorecardGenerator().generateScorecards(active);
+            for (Scorecard scorecard : scorecards) {
+                List<Pair> ranked = new ArrayList<>(scorecard.getPairs());
+                Collections.shuffle(ranked, random);
+                for (int rank = 0; rank < ranked.size(); rank++) {
+                    scorecard.setGameResults(ranked.get(rank), rank + 1);
+                }
+            }
+
+            Map<Pair, Penalty> penalties = new HashMap<>();
+            for (Pair pair : pairs) {
+                if (random.nextInt(5) == 0) {
+                    penalties.put(pair, penaltyValues[random.nextInt(penaltyValues.length)]);
+                }
+            }
+
+            Set<Pair> activePairs = new HashSet<>(active);
+            Object expected = reorderOrFail(new ListLadderReorderer(),
+                    new LinkedList<>(pairs), scorecards, activePairs, penalties);
+            Object actual = reorderOrFail(new VrcLadderReorderer(),
+                    new LinkedList<>(pairs), scorecards, activePairs, penalties);
+            Assert.assertEquals("ladder " + ladder, expected, actual);
+        }
+    }
+
+    // The exception's class stands in for the result when a reorder fails
+    private static Object reorderOrFail(LadderReorderer reorderer, List<Pair> pairs,
+                                        List<Scorecard> scorecards, Set<Pair> activePairs,
+                                        Map<Pair, Penalty> penalties) {
+        try {
+            return reorderer.reorder(pairs, scorecards, activePairs, penalties);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    // VrcLadderReorderer as it was written against Lists, which the array-based
+    // version must match exactly
+    private static class ListLadderReorderer implements LadderReorderer {
+        @Override
+        public List<Pair> reorder(List<Pair> originalPairs, List<Scorecard> scorecards,
+                                  Set<Pair> activePairs, Map<Pair, Penalty> penalties) {
+            List<Pair> intermediateActiveOrdering = swapBetweenGroups(scorecards);
+            List<Pair> intermediatePassiveOrdering = applyPassivePenalty(
+                    originalPairs, activePairs);
+            List<Pair> intermediateOrdering = mergeActivePairs(
+                    intermediatePassiveOrdering, intermediateActiveOrdering);
+            return applyPenalties(intermediateOrdering, penalties);
+        }
+
+        private List<Pair> swapBetweenGroups(List<Scorecard> scorecards) {
+            List<Pair> completedPairs = new ArrayList<>();
+            List<Pair> previousGroup = scorecards.get(0).getReorderedPairs();
+            for (int i = 1; i < scorecards.size(); i++) {
+                List<Pair> currentGroup = scorecards.get(i).getReorderedPairs();
+                int lastIndexOfFirstGroup = previousGroup.size() - 1;
+                Pair temp = previousGroup.get(lastIndexOfFirstGroup);
+                previousGroup.set(lastIndexOfFirstGroup, currentGroup.get(0));
+                currentGroup.set(0, temp);
+                completedPairs.addAll(previousGroup);
+                previousGroup = currentGroup;
+            }
+            completedPairs.addAll(previousGroup);
+            return completedPairs;
+        }
+
+        private List<Pair> mergeActivePairs(List<Pair> originalPairs,
+                                            List<Pair> activeReorderedPairs) {
+            int activePairIndex = 0;
+            for (Pair pair : originalPairs) {
+                if (activeReorderedPairs.contains(pair)) {
+                    originalPairs.set(originalPairs.indexOf(pair), null);
+                }
+            }
+            for (int i = 0; i < originalPairs.size(); i++) {
+                Pair pair = originalPairs.get(i);
+                if (pair == null && activePairIndex < activeReorderedPairs.size()) {
+                    originalPairs.set(i, activeReorderedPairs.get(activePairIndex));
+                    activePairIndex++;
+                }
+            }
+            Iterator<Pair> itr = originalPairs.iterator();
+            while (itr.hasNext()) {
+                if (itr.next() == null) {
+                    itr.remove();
+                }
+            }
+            return originalPairs;
+        }
+
+        private List<Pair> applyPassivePenalty(List<Pair> originalPairs, Set<Pair> activePairs) {
+            Set<Pair> passivePairsSet = originalPairs.stream()
+                    .filter(pair -> !activePairs.contains(pair))
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            List<Pair> passivePairs = new ArrayList<>(passivePairsSet);
+            Collections.reverse(passivePairs);
+            originalPairs.add(null);
+            originalPairs.add(null);
+            for (Pair pair : passivePairs) {
+                int index = originalPairs.indexOf(pair);
+                originalPairs.set(index, null);
+                originalPairs.set(index + 2, pair);
+            }
+            return originalPairs;
+        }
+
+        private List<Pair> applyPenalties(List<Pair> activeReorderedPairs,
+                                          Map<Pair, Penalty> penalties) {
+            List<Penalty> availablePenalties = penalties.entrySet().stream()
+                    .map(Map.Entry::getValue)
+                    .sorted((penalty1, penalty2) -> penalty1.getPenalty() - penalty2.getPenalty())
+                    .collect(Collectors.toList());
+            for (Penalty penalty : availablePenalties) {
+                Set<Pair> penaltyPairs = penalties.entrySet().stream()
+                        .filter(pairPenaltyEntry -> pairPenaltyEntry.getValue() == penalty)
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toSet());
+                for (Pair pair : penaltyPairs) {
+                    int index = activeReorderedPairs.indexOf(pair);
+                    int newIndex = index + penalty.getPenalty();
+                    if (newIndex > activeReorderedPairs.size() - 1) {
+                        newIndex = activeReorderedPairs.size() - 1;
+                    }
+                    activeReorderedPairs.remove(index);
+                    activeReorderedPairs.add(newIndex, pair);
+                }
+            }
+            return activeReorderedPairs;
+        }
+    }
 }
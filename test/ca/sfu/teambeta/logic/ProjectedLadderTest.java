@@ -0,0 +1,131 @@
+package ca.sfu.teambeta.logic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import ca.sfu.teambeta.core.Ladder;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Penalty;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Scorecard;
+
+public class ProjectedLadderTest {
+    // ACCIDENT moves a pair up, which VrcLadderReorderer fails on at the top
+    private static final Penalty[] PENALTIES =
+            {Penalty.ZERO, Penalty.ABSENT, Penalty.LATE, Penalty.MISSING};
+
+    @Test
+    public void sameLadderAsReordererAsResultsComeIn() {
+        Random random = new Random(11);
+        VrcLadderReorderer reorderer = new VrcLadderReorderer();
+        for (int trial = 0; trial < 20; trial++) {
+            GameSession gameSession = makeGameSession(random, 20 + random.nextInt(40));
+            gameSession.createGroups(new VrcScorecardGenerator(), new VrcTimeSelection());
+            ProjectedLadder projection = new ProjectedLadder(gameSession, reorderer);
+            Assert.assertEquals(gameSession.previewReorderedLadder(reorderer),
+                    projection.getProjectedLadder());
+
+            for (int step = 0; step < 30; step++) {
+                makeChange(gameSession, random);
+                Assert.assertTrue(projection.update(gameSession));
+                Assert.assertEquals(gameSession.previewReorderedLadder(reorderer),
+                        projection.getProjectedLadder());
+            }
+        }
+    }
+
+    @Test
+    public void sameLadderAsReordererWithGroupsOfOne() {
+        Random random = new Random(4);
+        VrcLadderReorderer reorderer = new VrcLadderReorderer();
+        for (int trial = 0; trial < 20; trial++) {
+            GameSession gameSession = makeGameSession(random, 12 + random.nextInt(12));
+            List<Pair> active = gameSession.getActivePairs();
+            List<Scorecard> scorecards = new ArrayList<>();
+            for (int start = 0; start < active.size(); ) {
+                int end = Math.min(active.size(), start + 1 + random.nextInt(3));
+                scorecards.add(new Scorecard(active.subList(start, end), null));
+                start = end;
+            }
+            gameSession.setScorecards(scorecards);
+            ProjectedLadder projection = new ProjectedLadder(gameSession, reorderer);
+
+            for (int step = 0; step < 20; step++) {
+                makeChange(gameSession, random);
+                Assert.assertTrue(projection.update(gameSession));
+                Assert.assertEquals(gameSession.previewReorderedLadder(reorderer),
+                        projection.getProjectedLadder());
+            }
+        }
+    }
+
+    @Test
+    public void updateFailsOnceTheGroupsChange() {
+        GameSession gameSession = makeGameSession(new Random(2), 20);
+        ProjectedLadder projection = new ProjectedLadder(gameSession, new VrcLadderReorderer());
+        Assert.assertTrue(projection.update(new GameSession(gameSession)));
+
+        Pair pair = gameSession.getActivePairs().get(0);
+        gameSession.setPairInactive(pair);
+        gameSession.updateGroups(new VrcScorecardGenerator(), new VrcTimeSelection());
+        Assert.assertFalse(projection.update(gameSession));
+    }
+
+    @Test
+    public void updateFailsOnceACopyIsRegrouped() {
+        GameSession gameSession = makeGameSession(new Random(5), 20);
+        ProjectedLadder projection = new ProjectedLadder(gameSession, new VrcLadderReorderer());
+
+        // As a queued write changes the read model: on a copy, never saved
+        GameSession copy = new GameSession(gameSession);
+        Assert.assertTrue(copy.setPairActive(copy.getPassivePairs().get(0)));
+        copy.updateGroups(new VrcScorecardGenerator(), new VrcTimeSelection());
+        Assert.assertFalse(projection.update(copy));
+    }
+
+    @Test
+    public void emptyWithoutGroups() {
+        GameSession gameSession = makeGameSession(new Random(3), 10);
+        gameSession.setScorecards(new ArrayList<>());
+        ProjectedLadder projection = new ProjectedLadder(gameSession, new VrcLadderReorderer());
+        Assert.assertTrue(projection.getProjectedLadder().isEmpty());
+    }
+
+    private static GameSession makeGameSession(Random random, int pairCount) {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < pairCount; i++) {
+            pairs.add(new Pair(new Player("First", "A" + i), new Player("Second", "B" + i),
+                    random.nextDouble() < 0.7));
+        }
+        GameSession gameSession = new GameSession(new Ladder(pairs));
+        gameSession.initializeActivePlayers();
+        gameSession.createGroups(new VrcScorecardGenerator(), new VrcTimeSelection());
+        return gameSession;
+    }
+
+    // Results for a whole group, or a penalty given or taken away
+    private static void makeChange(GameSession gameSession, Random random) {
+        List<Scorecard> scorecards = gameSession.getScorecards();
+        List<Pair> ladder = gameSession.getAllPairs();
+        int change = random.nextInt(3);
+        if (change == 0 || scorecards.isEmpty()) {
+            Pair pair = ladder.get(random.nextInt(ladder.size()));
+            gameSession.setPenaltyToPair(pair, PENALTIES[random.nextInt(PENALTIES.length)]);
+        } else if (change == 1 && !gameSession.getPenalties().isEmpty()) {
+            List<Pair> penalized = new ArrayList<>(gameSession.getPenalties().keySet());
+            gameSession.removePenaltyFromPair(penalized.get(random.nextInt(penalized.size())));
+        } else {
+            Scorecard scorecard = scorecards.get(random.nextInt(scorecards.size()));
+            List<Pair> finishingOrder = new ArrayList<>(scorecard.getPairs());
+            Collections.shuffle(finishingOrder, random);
+            for (int rank = 0; rank < finishingOrder.size(); rank++) {
+                scorecard.setGameResults(finishingOrder.get(rank), rank + 1);
+            }
+        }
+    }
+}
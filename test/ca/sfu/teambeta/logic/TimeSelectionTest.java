@@ -8,8 +8,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 import ca.sfu.teambeta.core.Ladder;
 import ca.sfu.teambeta.core.Pair;
@@ -26,6 +29,166 @@ public class TimeSelectionTest {
     private static final int AMOUNT_TIME_SLOTS = Time.values().length - 1;
     private static final int MAX_NUM_PAIRS_PER_SLOT = 24;
 
+    @Test
+    public void sameSlotsAsOriginalTimeSelection() {
+        Random random = new Random(5);
+        TimeSelection selector = new VrcTimeSelection();
+        TimeSelection original = new OriginalTimeSelection();
+        Time[] times = Time.values();
+
+        for (int round = 0; round < 300; round++) {
+            List<Pair> pairs = new ArrayList<>();
+            Map<Pair, Time> timeSlots = new HashMap<>();
+            int size = 3 + random.nextInt(round < 150 ? 60 : 150);
+            int bias = random.nextInt(times.length);
+            for (int i = 0; i < size; i++) {
+                Pair pair = new Pair(new Player("First" + i, ""), new Player("Second" + i, ""));
+                pairs.add(pair);
+                timeSlots.put(pair, random.nextBoolean()
+                        ? times[bias] : times[random.nextInt(times.length)]);
+            }
+
+            ScorecardGenerator generator = new VrcScorecardGenerator();
+            List<Scorecard> expected = generator.generateScorecards(pairs);
+            List<Scorecard> actual = generator.generateScorecards(pairs);
+            original.distributePairs(expected, timeSlots);
+            selector.distributePairs(actual, timeSlots);
+            for (int i = 0; i < expected.size(); i++) {
+                Assert.assertEquals(expected.get(i).getTimeSlot(), actual.get(i).getTimeSlot());
+            }
+            for (Time time : times) {
+                Assert.assertEquals(original.getAmountPairsByTime(expected, time),
+                        selector.getAmountPairsByTime(actual, time));
+            }
+        }
+    }
+
+    @Test
+    public void slotsOverflowByTheirOwnCapacity() {
+        Map<Time, Integer> capacities = new HashMap<>();
+        capacities.put(Time.SLOT_1, 6);
+        capacities.put(Time.SLOT_2, 24);
+        TimeSelection selector = new VrcTimeSelection(capacities);
+
+        List<Pair> pairs = new ArrayList<>();
+        Map<Pair, Time> timeSlots = new HashMap<>();
+        for (int i = 0; i < 12; i++) {
+            Pair pair = new Pair(new Player("First" + i, ""), new Player("Second" + i, ""));
+            pairs.add(pair);
+            timeSlots.put(pair, Time.SLOT_1);
+        }
+        List<Scorecard> scorecards = new VrcScorecardGenerator().generateScorecards(pairs);
+        selector.distributePairs(scorecards, timeSlots);
+
+        Assert.assertEquals(Arrays.asList(Time.SLOT_1, Time.SLOT_1, Time.SLOT_2, Time.SLOT_2),
+                scorecards.stream().map(Scorecard::getTimeSlot).collect(Collectors.toList()));
+        Assert.assertEquals(6, selector.getAmountPairsByTime(scorecards, Time.SLOT_1));
+    }
+
+    @Test
+    public void onlyConfiguredSlotsAreUsed() {
+        TimeSelection selector = new VrcTimeSelection(Collections.singletonMap(Time.SLOT_2, 3));
+
+        List<Pair> pairs = new ArrayList<>();
+        Map<Pair, Time> timeSlots = new HashMap<>();
+        for (int i = 0; i < 9; i++) {
+            Pair pair = new Pair(new Player("First" + i, ""), new Player("Second" + i, ""));
+            pairs.add(pair);
+            timeSlots.put(pair, Time.SLOT_1);
+        }
+        List<Scorecard> scorecards = new VrcScorecardGenerator().generateScorecards(pairs);
+        selector.distributePairs(scorecards, timeSlots);
+
+        Assert.assertEquals(9, selector.getAmountPairsByTime(scorecards, Time.SLOT_2));
+    }
+
+    @Test
+    public void optimalSelectionMissesFewestTimeSlots() {
+        Random random = new Random(3);
+        Time[] times = Time.values();
+
+        for (int round = 0; round < 200; round++) {
+            int courts = 1 + random.nextInt(3);
+            List<Pair> pairs = new ArrayList<>();
+            Map<Pair, Time> timeSlots = new HashMap<>();
+            int size = 3 + random.nextInt(3 * 2 * courts - 2);
+            for (int i = 0; i < size; i++) {
+                Pair pair = new Pair(new Player("First" + i, ""), new Player("Second" + i, ""));
+                pairs.add(pair);
+                timeSlots.put(pair, times[random.nextInt(times.length)]);
+            }
+            List<Scorecard> scorecards = new VrcScorecardGenerator().generateScorecards(pairs);
+            new OptimalTimeSelection(courts).distributePairs(scorecards, timeSlots);
+
+            int missed = missed(scorecards, timeSlots);
+            for (Time time : Arrays.asList(Time.SLOT_1, Time.SLOT_2)) {
+                List<Integer> courtsUsed = scorecards.stream()
+                        .filter(scorecard -> scorecard.getTimeSlot() == time)
+                        .map(Scorecard::getCourt)
+                        .collect(Collectors.toList());
+                Assert.assertTrue(courtsUsed.size() <= courts);
+                for (int court = 1; court <= courtsUsed.size(); court++) {
+                    Assert.assertEquals(court, (int) courtsUsed.get(court - 1));
+                }
+            }
+            Assert.assertEquals(fewestMissed(scorecards, timeSlots, courts), missed);
+        }
+    }
+
+    @Test
+    public void optimalSelectionSpreadsGroupsWithoutCourts() {
+        List<Pair> pairs = new ArrayList<>();
+        Map<Pair, Time> timeSlots = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            Pair pair = new Pair(new Player("First" + i, ""), new Player("Second" + i, ""));
+            pairs.add(pair);
+            timeSlots.put(pair, Time.SLOT_1);
+        }
+        List<Scorecard> scorecards = new VrcScorecardGenerator().generateScorecards(pairs);
+        new OptimalTimeSelection(2).distributePairs(scorecards, timeSlots);
+
+        // Two courts in each of two slots for ten groups
+        for (Time time : Arrays.asList(Time.SLOT_1, Time.SLOT_2)) {
+            List<Integer> courts = scorecards.stream()
+                    .filter(scorecard -> scorecard.getTimeSlot() == time)
+                    .map(Scorecard::getCourt)
+                    .collect(Collectors.toList());
+            Assert.assertEquals(Arrays.asList(1, 2, 0, 0, 0), courts);
+        }
+        Assert.assertEquals(Time.SLOT_1, scorecards.get(0).getTimeSlot());
+        Assert.assertEquals(Time.SLOT_2, scorecards.get(scorecards.size() - 1).getTimeSlot());
+    }
+
+    private int missed(List<Scorecard> scorecards, Map<Pair, Time> timeSlots) {
+        int missed = 0;
+        for (Scorecard scorecard : scorecards) {
+            for (Pair pair : scorecard.getPairs()) {
+                Time time = timeSlots.get(pair);
+                if (time != Time.NO_SLOT && time != scorecard.getTimeSlot()) {
+                    missed++;
+                }
+            }
+        }
+        return missed;
+    }
+
+    // Tries every way of placing the groups into the two slots
+    private int fewestMissed(List<Scorecard> scorecards, Map<Pair, Time> timeSlots,
+                             int courts) {
+        int fewest = Integer.MAX_VALUE;
+        for (int mask = 0; mask < 1 << scorecards.size(); mask++) {
+            int inSecond = Integer.bitCount(mask);
+            if (inSecond > courts || scorecards.size() - inSecond > courts) {
+                continue;
+            }
+            for (int i = 0; i < scorecards.size(); i++) {
+                scorecards.get(i).setTimeSlot((mask >> i & 1) == 1 ? Time.SLOT_2 : Time.SLOT_1);
+            }
+            fewest = Math.min(fewest, missed(scorecards, timeSlots));
+        }
+        return fewest;
+    }
+
     @Ignore
     @Test
     public void getPairsByTime() {
@@ -259,4 +422,216 @@ public class TimeSelectionTest {
 
         return littlePairs;
     }
+
+    // VrcTimeSelection as it was, counting the pairs of every slot again for
+    // every slot and every group moved
+    private static class OriginalTimeSelection implements TimeSelection {
+        private static final Time DEFAULT_TIME_SLOT = Time.SLOT_1;
+
+        public int getAmountPairsByTime(List<Scorecard> scorecards, Time time) {
+            int amount = 0;
+
+            for (Scorecard scorecard : scorecards) {
+                if (scorecard.getTimeSlot() == time) {
+                    amount += scorecard.getReorderedPairs().size();
+                }
+            }
+
+            return amount;
+        }
+
+        public void distributePairs(List<Scorecard> allScorecards, Map<Pair, Time> timeSlotsMap) {
+            //Make schedule of groups by selecting most popular time slot
+            for (Scorecard scorecard : allScorecards) {
+                List<Time> timeSlots = getTimeSlotsOfGroup(scorecard, timeSlotsMap);
+                Time time = getDominantTime(timeSlots);
+                scorecard.setTimeSlot(time);
+            }
+
+            //Create Limitations which determine how to arrange groups between time slots
+            int amountPlayingPairs = getTotalPairCount(allScorecards);
+            int maxNumPairs = AMOUNT_TIME_SLOTS * MAX_NUM_PAIRS_PER_SLOT;
+            //Amount of active pairs exceed the amount the gym can contain at all
+            //time slots combined
+            boolean crowded = amountPlayingPairs > maxNumPairs;
+
+            if (crowded) {
+                //Every time slot will have equal amount of pairs
+                distributeEqually(amountPlayingPairs, allScorecards);
+            } else {
+                //Some time slots have to many groups, moves them to next time slot
+                rearrangeGroupsBetweenTimeSlots(allScorecards);
+            }
+        }
+
+        private int getTotalPairCount(List<Scorecard> allScorecards) {
+            int amount = 0;
+            for (Time time : Time.values()) {
+                amount += getAmountPairsByTime(allScorecards, time);
+            }
+            return amount;
+        }
+
+        private List<Time> getTimeSlotsOfGroup(Scorecard scorecard, Map<Pair, Time> timeSlotsMap) {
+            List<Pair> pairs = scorecard.getReorderedPairs();
+            List<Time> timeSlots = new ArrayList<>();
+
+            for (Pair pair : pairs) {
+                Time time = timeSlotsMap.get(pair);
+                timeSlots.add(time);
+            }
+
+            return timeSlots;
+        }
+
+
+        //Count how many pairs selected particular time slot
+        private Time getDominantTime(List<Time> timeSlots) {
+            Map<Time, Integer> timeFrequency = new LinkedHashMap<>();
+
+            //Initialize values
+            for (Time time : Time.values()) {
+                if (time == Time.NO_SLOT) {
+                    continue;
+                }
+                timeFrequency.put(time, 0);
+            }
+
+            //Save the amount each slot was selected
+            for (Time time : timeSlots) {
+                if (time == Time.NO_SLOT) {
+                    continue;
+                }
+                int amount = timeFrequency.get(time);
+                amount++;
+                timeFrequency.put(time, amount);
+            }
+
+            //Get the most popular time slot,
+            //if all are the same, select the earliest time slot
+            Time dominantTime = null;
+            int maxFrequency = 0;
+
+            for (Map.Entry<Time, Integer> entry : timeFrequency.entrySet()) {
+                int frequency = entry.getValue();
+
+                if (frequency > maxFrequency) {
+                    maxFrequency = frequency;
+                    dominantTime = entry.getKey();
+                }
+            }
+
+            //NO_SLOT has the lowest priority which means
+            //if there is at least one pair that selected different slot, than that's the result
+            //if the biggest num was found is 0 that means all of pairs selected NO_SLOT
+            if (maxFrequency == 0) {
+                dominantTime = DEFAULT_TIME_SLOT;
+            }
+            return dominantTime;
+        }
+
+        private void distributeEqually(int amountPlayingPairs, List<Scorecard> allScorecards) {
+            int avgPairsPerTimeSlot = amountPlayingPairs / AMOUNT_TIME_SLOTS;
+
+            //Move extra groups to the next time slot, do that for all time slots
+            for (Time time : Time.values()) {
+                //Omit undefined time slot
+                if (time == Time.NO_SLOT) {
+                    continue;
+                }
+                int amount = getAmountPairsByTime(allScorecards, time);
+                if (amount > avgPairsPerTimeSlot) {
+                    int extraPairs = amount - avgPairsPerTimeSlot;
+                    if (extraPairs != 1) {
+                        //If the difference between time slots is on 1 pair
+                        //do not move the whole group
+                        //some groups have 4 pairs and some 3, time slots cannot be perfectly equal
+                        moveOverflowedGroupsToNextTimeSlot(
+                                amount, avgPairsPerTimeSlot, extraPairs, time, allScorecards);
+                    }
+                }
+            }
+        }
+
+        private void moveOverflowedGroupsToNextTimeSlot(
+                int amountPairsByTime, int limitPairs, int numExtraPairs,
+                Time oldTime, List<Scorecard> allScorecards) {
+
+            List<Scorecard> scorecards = getScorecardsByTime(allScorecards, oldTime);
+            Time nextTimeSlot = getNextTimeSlot(oldTime);
+
+            //While we have more extra pairs and we are still having more pairs then allowed
+            //Move the scorecards to next time slot
+            while (numExtraPairs > 0 && amountPairsByTime > limitPairs) {
+
+                //Groups with the lowest ratings will be moved to another time slot
+                Scorecard group = getLastScorecard(scorecards, oldTime);
+                if (group == null) {
+                    break;
+                }
+                group.setTimeSlot(nextTimeSlot);
+
+                int numPairsMoved = group.getReorderedPairs().size();
+                numExtraPairs -= numPairsMoved;
+                amountPairsByTime -= numPairsMoved;
+            }
+        }
+
+        private Scorecard getLastScorecard(List<Scorecard> scorecards, Time oldTime) {
+            for (int i = scorecards.size() - 1; i > 0; i--) {
+                Scorecard group = scorecards.get(i);
+
+                if (group.getTimeSlot() == oldTime) {
+                    return group;
+                }
+            }
+            return null;
+        }
+
+        private List<Scorecard> getScorecardsByTime(List<Scorecard> allScorecards, Time time) {
+            List<Scorecard> scorecards = new ArrayList<>();
+
+            for (Scorecard group : allScorecards) {
+                Time timeSlot = group.getTimeSlot();
+                if (timeSlot == time) {
+                    scorecards.add(group);
+                }
+            }
+
+            return scorecards;
+        }
+
+        private Time getNextTimeSlot(Time time) {
+            //Default time slot is first time slot
+            //If the time passed is at the end of the Time.values()
+            //Then next time is the element in the beginning.
+
+            Time nextTimeSlot = DEFAULT_TIME_SLOT;
+            Time[] times = Time.values();
+
+            for (int index = 0; index < times.length; index++) {
+                if (times[index] == time) {
+                    int indexNextSlot = index + 1;
+                    if (indexNextSlot < times.length) {
+                        nextTimeSlot = times[index + 1];
+                    }
+                }
+            }
+            return nextTimeSlot;
+        }
+
+        private void rearrangeGroupsBetweenTimeSlots(List<Scorecard> allScorecards) {
+            for (Time time : Time.values()) {
+                int amount = getAmountPairsByTime(allScorecards, time);
+                int extra = amount - MAX_NUM_PAIRS_PER_SLOT;
+                boolean crowded = extra > 0;
+                if (crowded) {
+                    //Move extra groups to the next time slot, do that for all time slots
+                    moveOverflowedGroupsToNextTimeSlot(
+                            amount, MAX_NUM_PAIRS_PER_SLOT, extra, time, allScorecards);
+                }
+
+            }
+        }
+    }
 }
@@ -0,0 +1,172 @@
+package ca.sfu.teambeta.persistence;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import ca.sfu.teambeta.core.Ladder;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Penalty;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.core.Time;
+import ca.sfu.teambeta.core.User;
+import ca.sfu.teambeta.logic.GameSession;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinarySnapshotTest {
+    private SessionFactory sessionFactory;
+    private DBManager dbManager;
+    private List<Pair> pairs = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        sessionFactory = DBManager.getH2MemorySession();
+        dbManager = new DBManager(sessionFactory);
+        for (int i = 0; i < 6; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), true));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+
+        GameSession gameSession = dbManager.getGameSessionLatest();
+        dbManager.addPenaltyToPair(gameSession, pairs.get(1).getID(), Penalty.LATE);
+        dbManager.setTimeSlot(pairs.get(2).getID(), Time.SLOT_2);
+        Scorecard scorecard = dbManager.getGameSessionLatest().getScorecards().get(0);
+        Map<Integer, Integer> rankings = new HashMap<>();
+        for (int i = 0; i < scorecard.getPairs().size(); i++) {
+            rankings.put(scorecard.getPairs().get(i).getID(), i + 1);
+        }
+        dbManager.setMatchResults(scorecard.getID(), rankings);
+
+        User user = new User("someone@example.com", "hash");
+        user.associatePlayer(dbManager.getPlayerFromID(pairs.get(0).getPlayers().get(0).getID()));
+        dbManager.addNewUser(user);
+    }
+
+    @After
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void testRestoreIntoEmptyDatabase() throws Exception {
+        GameSession expected = dbManager.getGameSessionLatest();
+        String expectedLadder = dbManager.getJSONLadder(expected);
+        String expectedScorecards = dbManager.getJSONScorecards(expected);
+        // Leaves a gap in the user ids, which the restore must keep
+        dbManager.addNewUser(new User("gone@example.com", "hash"));
+        dbManager.deleteUser("gone@example.com");
+        dbManager.addNewUser(new User("kept@example.com", "hash"));
+        int keptId = dbManager.getUser("kept@example.com").getID();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dbManager.writeBinarySnapshot(out);
+
+        // Dropped and created again, so this is a new, empty database
+        sessionFactory.close();
+        sessionFactory = DBManager.getH2MemorySession();
+        dbManager = new DBManager(sessionFactory);
+        assertTrue(dbManager.restoreBinarySnapshot(new ByteArrayInputStream(out.toByteArray())));
+
+        GameSession restored = dbManager.getGameSessionLatest();
+        assertEquals(expected.getID(), restored.getID());
+        assertEquals(expected.getVersion(), restored.getVersion());
+        assertEquals(expectedLadder, dbManager.getJSONLadder(restored));
+        assertEquals(expectedScorecards, dbManager.getJSONScorecards(restored));
+        assertEquals(Penalty.LATE, restored.getPenalties().get(pairs.get(1)));
+        assertEquals(Time.SLOT_2, restored.getTimeSlots().get(pairs.get(2)));
+        User user = dbManager.getUser("someone@example.com");
+        assertEquals("hash", user.getPasswordHash());
+        assertEquals(keptId, dbManager.getUser("kept@example.com").getID());
+        User addedUser = new User("added@example.com", "hash");
+        dbManager.addNewUser(addedUser);
+        assertTrue(dbManager.getUser("added@example.com").getID() > keptId);
+
+        // Rows added afterwards don't collide with the restored ids
+        Pair added = new Pair(new Player("New", "Player"), new Player("Other", "Player"));
+        dbManager.addPairToLatestLadder(added);
+        assertTrue(added.getID() > pairs.get(pairs.size() - 1).getID());
+        assertEquals(pairs.size() + 1, dbManager.getGameSessionLatest().getAllPairs().size());
+    }
+
+    @Test
+    public void testRestoreRefusesDatabaseWithRows() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dbManager.writeBinarySnapshot(out);
+
+        assertFalse(dbManager.restoreBinarySnapshot(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(1, dbManager.getGameSessionLatest().getID());
+    }
+
+    @Test
+    public void testWarmReadModelIsServedWithoutQueries() throws Exception {
+        GameSession expected = dbManager.getGameSessionLatest();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dbManager.writeBinarySnapshot(out);
+        BinarySnapshot binarySnapshot =
+                dbManager.readBinarySnapshot(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(pairs.size(), binarySnapshot.getRows(Pair.class).size());
+
+        DBManager warmed = new DBManager(sessionFactory);
+        warmed.warmReadModel(binarySnapshot);
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        String ladder = warmed.getJSONLadder(warmed.getGameSessionLatest());
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(dbManager.getJSONLadder(expected), ladder);
+        assertTrue(warmed.refreshReadModel());
+        assertEquals(expected.getVersion(), warmed.getGameSessionLatest().getVersion());
+    }
+
+    @Test
+    public void testSnapshotOfDifferentMappingIsRejected() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        DataOutputStream data = new DataOutputStream(gzip);
+        data.writeInt(BinarySnapshot.MAGIC);
+        data.writeInt(BinarySnapshot.FORMAT_VERSION);
+        data.writeLong(System.currentTimeMillis());
+        data.writeInt(BinarySnapshot.ENTITY_ORDER.size());
+        data.writeUTF(Player.class.getName());
+        data.writeInt(1);
+        data.writeUTF("nickname");
+        data.writeInt(0);
+        data.close();
+
+        try {
+            dbManager.readBinarySnapshot(new ByteArrayInputStream(out.toByteArray()));
+            fail("Read a snapshot with properties Player doesn't have");
+        } catch (IOException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOtherFileIsRejected() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(new GZIPOutputStream(out));
+        data.writeInt(42);
+        data.close();
+
+        dbManager.readBinarySnapshot(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -0,0 +1,181 @@
+package ca.sfu.teambeta.persistence;
+
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.sfu.teambeta.core.Ladder;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.logic.GameSession;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Contention stress test for DBManager against in-memory H2: ladder and match
+ * reads running alongside writers that keep activating and deactivating pairs.
+ */
+public class DBManagerConcurrencyTest {
+    private static final int ACTIVE_PAIRS = 12;
+    private static final int TOGGLED_PAIRS_PER_WRITER = 2;
+    private static final int READERS = 4;
+    private static final int WRITERS = 2;
+    private static final long PHASE_MILLIS = 1500;
+
+    private DBManager dbManager;
+    private SessionFactory sessionFactory;
+    private List<Pair> toggledPairs = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        sessionFactory = DBManager.getH2MemorySession();
+        dbManager = new DBManager(sessionFactory);
+
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < ACTIVE_PAIRS + WRITERS * TOGGLED_PAIRS_PER_WRITER; i++) {
+            boolean playing = i < ACTIVE_PAIRS;
+            Pair pair = new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), playing);
+            pairs.add(pair);
+            if (!playing) {
+                toggledPairs.add(pair);
+            }
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+    }
+
+    @After
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void testReadThroughputHoldsWhileWriting() throws Exception {
+        // Warm up the pool and Hibernate before measuring anything
+        runReaders(PHASE_MILLIS / 2);
+
+        long readsAlone = runReaders(PHASE_MILLIS);
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong writes = new AtomicLong();
+        ExecutorService writers = startWriters(writing, writes);
+        long readsWithWriters = runReaders(PHASE_MILLIS);
+        writing.set(false);
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertTrue(writes.get() > 0);
+        // Reads never wait on the write lock, only on a commit landing mid-load,
+        // so writers may cost them CPU but not half their throughput
+        assertTrue("Reads alone: " + readsAlone + ", with writers: " + readsWithWriters,
+                readsWithWriters * 2 >= readsAlone);
+    }
+
+    @Test
+    public void testReadsSeeConsistentGameSession() throws Exception {
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong writes = new AtomicLong();
+        ExecutorService writers = startWriters(writing, writes);
+
+        // Pairs are activated and regrouped in the same commit, so every
+        // GameSession a reader gets back must have every active pair in a group
+        ExecutorService readers = Executors.newFixedThreadPool(READERS);
+        List<Future<Integer>> results = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + PHASE_MILLIS;
+        for (int i = 0; i < READERS; i++) {
+            results.add(readers.submit(() -> {
+                int inconsistent = 0;
+                while (System.currentTimeMillis() < deadline) {
+                    GameSession gameSession = dbManager.getGameSessionLatest();
+                    int grouped = 0;
+                    for (Scorecard scorecard : gameSession.getScorecards()) {
+                        grouped += scorecard.getReorderedPairs().size();
+                    }
+                    if (grouped != gameSession.getActivePairs().size()) {
+                        inconsistent++;
+                    }
+                }
+                return inconsistent;
+            }));
+        }
+        int inconsistent = 0;
+        for (Future<Integer> result : results) {
+            inconsistent += result.get();
+        }
+        readers.shutdown();
+        writing.set(false);
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertTrue(writes.get() > 0);
+        assertEquals(0, inconsistent);
+    }
+
+    // Reads that go to the database, through read-only transactions and the
+    // retry on a commit landing mid-load, rather than the in-memory read model
+    private long runReaders(long millis) throws Exception {
+        ExecutorService readers = Executors.newFixedThreadPool(READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            results.add(readers.submit(() -> {
+                start.await();
+                long deadline = System.currentTimeMillis() + millis;
+                long reads = 0;
+                while (System.currentTimeMillis() < deadline) {
+                    Ladder ladder = dbManager.getLatestLadder();
+                    List<Integer> pairIds = new ArrayList<>();
+                    for (Pair pair : ladder.getPairs()) {
+                        pairIds.add(pair.getID());
+                    }
+                    assertEquals(pairIds.size(), dbManager.getPairsFromIDs(pairIds).size());
+                    reads++;
+                }
+                return reads;
+            }));
+        }
+        start.countDown();
+
+        long total = 0;
+        for (Future<Long> result : results) {
+            total += result.get();
+        }
+        readers.shutdown();
+        return total;
+    }
+
+    private ExecutorService startWriters(AtomicBoolean writing, AtomicLong writes) {
+        ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+        for (int i = 0; i < WRITERS; i++) {
+            List<Pair> ownPairs = toggledPairs.subList(i * TOGGLED_PAIRS_PER_WRITER,
+                    (i + 1) * TOGGLED_PAIRS_PER_WRITER);
+            writers.submit(() -> {
+                int next = 0;
+                while (writing.get()) {
+                    int pairId = ownPairs.get(next++ % ownPairs.size()).getID();
+                    GameSession gameSession = dbManager.getGameSessionLatest();
+                    if (dbManager.isActivePair(gameSession, pairId)) {
+                        dbManager.setPairInactive(gameSession, pairId);
+                    } else {
+                        dbManager.setPairActive(gameSession, pairId);
+                    }
+                    writes.incrementAndGet();
+                }
+            });
+        }
+        return writers;
+    }
+}
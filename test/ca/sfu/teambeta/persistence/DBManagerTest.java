@@ -1,49 +1,68 @@
 package ca.sfu.teambeta.persistence;
 
+import ca.sfu.teambeta.logic.OptimalTimeSelection;
 import ca.sfu.teambeta.logic.TimeSelection;
+import ca.sfu.teambeta.logic.VrcLadderReorderer;
 import ca.sfu.teambeta.logic.VrcTimeSelection;
-import org.hibernate.ObjectNotFoundException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.Transaction;
+import org.hibernate.stat.Statistics;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ca.sfu.teambeta.core.Ladder;
 import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Penalty;
 import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Rating;
+import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.core.Time;
+import ca.sfu.teambeta.core.User;
 import ca.sfu.teambeta.logic.GameSession;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
 import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
 
 /**
  * Created by David on 2016-06-19.
  */
 public class DBManagerTest {
     private DBManager dbManager;
-    private Session session;
+    private SessionFactory sessionFactory;
 
     @Before
     public void setUp() throws Exception {
-        SessionFactory sessionFactory = DBManager.getTestingSession(true);
-        this.session = sessionFactory.openSession();
-        this.dbManager = new DBManager(session);
+        this.sessionFactory = DBManager.getTestingSession(true);
+        this.dbManager = new DBManager(sessionFactory);
     }
 
     @After
     public void tearDown() {
-        session.close();
+        sessionFactory.close();
     }
 
     @Test
@@ -56,7 +75,7 @@ public class DBManagerTest {
         Assert.assertEquals(playerExpected, playerActual);
     }
 
-    @Test(expected = ObjectNotFoundException.class)
+    @Test
     public void testGetPlayerFromIDNotFound() {
         Player playerActual = dbManager.getPlayerFromID(99);
 
@@ -157,6 +176,26 @@ public class DBManagerTest {
         assertEquals(expectedLatest.getID(), resultLatest.getID());
     }
 
+    @Test
+    public void testGetGameSessionByOffset() {
+        LocalDateTime dateTime = LocalDateTime.now();
+        List<GameSession> gameSessions = new ArrayList<>();
+        for (int weeksAgo = 3; weeksAgo >= 0; weeksAgo--) {
+            GameSession gameSession = generateGameSession(dateTime.minusWeeks(weeksAgo)
+                    .toEpochSecond(ZoneOffset.ofTotalSeconds(0)));
+            dbManager.persistEntity(gameSession);
+            gameSessions.add(0, gameSession);
+        }
+
+        for (int offset = 0; offset < gameSessions.size(); offset++) {
+            assertEquals(gameSessions.get(offset).getID(),
+                    dbManager.getGameSession(offset).getID());
+        }
+        assertEquals(4, dbManager.getGameSession(3).getAllPairs().size());
+        assertNull(dbManager.getGameSession(gameSessions.size()));
+        assertNull(dbManager.getGameSession(-1));
+    }
+
     @Test
     public void testAddPair() throws Exception {
         SessionFactory sessionFactory = DBManager.getTestingSession(true);
@@ -246,4 +285,521 @@ public class DBManagerTest {
 
         assertTrue(!allPairs.contains(pair));
     }
+
+    @Test
+    public void testSetPairActivePersistsDetachedGameSession() {
+        GameSession gameSession = generateGameSession(Instant.now().getEpochSecond());
+        dbManager.persistEntity(gameSession);
+
+        GameSession detached = dbManager.getGameSessionLatest();
+        Pair pair = detached.getAllPairs().get(0);
+        assertTrue(dbManager.setPairActive(detached, pair.getID()));
+
+        GameSession reloaded = dbManager.getGameSessionLatest();
+        assertTrue(reloaded.isActivePair(pair));
+        assertEquals(1, reloaded.getActivePairs().size());
+    }
+
+    @Test
+    public void testWriteLeavesPublishedGameSessionUntouched() {
+        GameSession gameSession = generateGameSession(Instant.now().getEpochSecond());
+        dbManager.persistEntity(gameSession);
+
+        GameSessionSnapshot before = dbManager.getGameSessionSnapshot();
+        GameSession published = dbManager.getGameSessionLatest();
+        Pair pair = published.getAllPairs().get(0);
+        assertTrue(dbManager.setPairActive(published, pair.getID()));
+
+        GameSessionSnapshot after = dbManager.getGameSessionSnapshot();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertTrue(!published.isActivePair(pair));
+        assertTrue(after.getCurrent().isActivePair(pair));
+        assertEquals(published.getID(), after.getCurrent().getID());
+    }
+
+    @Test
+    public void testGameSessionSnapshotHoldsPrevious() {
+        LocalDateTime dateTime = LocalDateTime.now().minusWeeks(1);
+        GameSession previous = generateGameSession(
+                dateTime.toEpochSecond(ZoneOffset.ofTotalSeconds(0)));
+        dbManager.persistEntity(previous);
+        long version = dbManager.getGameSessionVersion();
+
+        GameSession latest = generateGameSession(Instant.now().getEpochSecond());
+        dbManager.persistEntity(latest);
+
+        GameSessionSnapshot snapshot = dbManager.getGameSessionSnapshot();
+        assertTrue(snapshot.getVersion() > version);
+        assertEquals(latest.getID(), snapshot.getCurrent().getID());
+        assertEquals(previous.getID(), snapshot.getPrevious().getID());
+    }
+
+    @Test
+    public void testCachedJSONLadderInvalidatedByWrite() {
+        GameSession gameSession = generateGameSession(Instant.now().getEpochSecond());
+        dbManager.persistEntity(gameSession);
+        ResponseCache cache = dbManager.getResponseCache();
+
+        byte[] first = dbManager.getCachedJSONLadder(DBManager.GameSessionVersion.CURRENT);
+        byte[] second = dbManager.getCachedJSONLadder(DBManager.GameSessionVersion.CURRENT);
+        assertTrue(first == second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+
+        GameSession latest = dbManager.getGameSessionLatest();
+        dbManager.setPairActive(latest, latest.getAllPairs().get(0).getID());
+
+        byte[] third = dbManager.getCachedJSONLadder(DBManager.GameSessionVersion.CURRENT);
+        assertEquals(2, cache.getMisses());
+        assertEquals(dbManager.getJSONLadder(dbManager.getGameSessionLatest()),
+                new String(third, StandardCharsets.UTF_8));
+        assertNull(dbManager.getCachedJSONScorecards(DBManager.GameSessionVersion.PREVIOUS));
+    }
+
+    @Test
+    public void testImportLadderFromCsvStatementCountIsConstant() throws Exception {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player")));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+
+        List<Pair> fewPairs = new ArrayList<>(pairs.subList(0, 10));
+        List<Pair> manyPairs = new ArrayList<>(pairs);
+        Collections.reverse(manyPairs);
+
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        assertTrue(dbManager.importLadderFromCsv(toCsv(fewPairs)));
+        long fewStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        assertTrue(dbManager.importLadderFromCsv(toCsv(manyPairs)));
+        long manyStatements = statistics.getPrepareStatementCount();
+
+        assertEquals(fewStatements, manyStatements);
+        List<Pair> imported = dbManager.getGameSessionLatest().getAllPairs();
+        assertEquals(manyPairs.size(), imported.size());
+        assertEquals(manyPairs.get(0).getID(), imported.get(0).getID());
+    }
+
+    @Test
+    public void testGameSessionStatementCountIsConstant() {
+        long[] fewStatements = countGameSessionStatements(10);
+        long[] manyStatements = countGameSessionStatements(40);
+
+        assertEquals(fewStatements[0], manyStatements[0]);
+        assertEquals(fewStatements[1], manyStatements[1]);
+    }
+
+    // Statements to load and render the ladder and matches views, then to
+    // reorder the ladder, for a new latest GameSession of ladderSize pairs
+    private long[] countGameSessionStatements(int ladderSize) {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < ladderSize; i++) {
+            pairs.add(new Pair(new Player("First" + ladderSize + i, "Player"),
+                    new Player("Second" + ladderSize + i, "Player"), i % 2 == 0));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.setStatisticsEnabled(true);
+        // A new DBManager starts with an empty read model
+        DBManager reader = new DBManager(sessionFactory);
+        statistics.clear();
+        GameSession gameSession = reader.getGameSessionLatest();
+        reader.getJSONLadder(gameSession);
+        reader.getJSONScorecards(gameSession);
+        long readStatements = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        reader.reorderLadder(gameSession);
+        long reorderStatements = statistics.getPrepareStatementCount();
+
+        assertEquals(ladderSize, reader.getGameSessionLatest().getAllPairs().size());
+        return new long[]{readStatements, reorderStatements};
+    }
+
+    @Test
+    public void testGetPairsFromIDs() {
+        GameSession gameSession = generateGameSession(Instant.now().getEpochSecond());
+        dbManager.persistEntity(gameSession);
+
+        List<Integer> ids = new ArrayList<>();
+        for (Pair pair : gameSession.getAllPairs()) {
+            ids.add(pair.getID());
+        }
+        ids.add(999);
+
+        Map<Integer, Pair> pairs = dbManager.getPairsFromIDs(ids);
+        assertEquals(gameSession.getAllPairs().size(), pairs.size());
+        for (Pair pair : gameSession.getAllPairs()) {
+            assertEquals(pair, pairs.get(pair.getID()));
+        }
+    }
+
+    private InputStreamReader toCsv(List<Pair> pairs) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CSVReader.exportCsv(outputStream, pairs);
+        return new InputStreamReader(new ByteArrayInputStream(outputStream.toByteArray()));
+    }
+
+    @Test
+    public void testConcurrentReadsUseConnectionPool() throws Exception {
+        GameSession gameSession = generateGameSession(Instant.now().getEpochSecond());
+        dbManager.persistEntity(gameSession);
+
+        final int requests = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Ladder>> results = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            results.add(executor.submit(dbManager::getLatestLadder));
+        }
+        for (Future<Ladder> result : results) {
+            assertEquals(gameSession.getAllPairs().size(), result.get().getLadderLength());
+        }
+        executor.shutdown();
+
+        ConnectionPoolMetrics metrics = dbManager.getConnectionPoolMetrics();
+        assertNotNull(metrics);
+        assertTrue(metrics.getConnectionsAcquired() >= requests);
+        assertTrue(metrics.getTotalConnections() <= 10);
+        assertEquals(0, metrics.getActiveConnections());
+    }
+
+    @Test
+    public void testPairIsReadFromSecondLevelCache() {
+        Pair pair = new Pair(new Player("Cached", "First"), new Player("Cached", "Second"));
+        dbManager.persistEntity(pair);
+        dbManager.getPairFromID(pair.getID());
+
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+        Pair cached = dbManager.getPairFromID(pair.getID());
+
+        assertEquals(pair, cached);
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertTrue(dbManager.getSecondLevelCacheMetrics().getHitCount("pair") > 0);
+        assertTrue(dbManager.getSecondLevelCacheMetrics().getHitCount("player") > 0);
+    }
+
+    @Test
+    public void testUserByEmailIsCachedUntilUpdated() throws Exception {
+        User user = new User("cached@test.com", "hash");
+        dbManager.addNewUser(user);
+        dbManager.getUser("cached@test.com");
+
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+        assertNotNull(dbManager.getUser("cached@test.com"));
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(1, dbManager.getSecondLevelCacheMetrics().getQueryHitCount());
+
+        user.setFirstName("Renamed");
+        user.setEmail("renamed@test.com");
+        dbManager.updateExistingUser(user);
+
+        assertNull(dbManager.getUser("cached@test.com"));
+        assertEquals("Renamed", dbManager.getUser("renamed@test.com").getFirstName());
+    }
+
+    @Test
+    public void testDeletedUserIsEvictedFromCache() throws Exception {
+        User user = new User("deleted@test.com", "hash");
+        dbManager.addNewUser(user);
+        int userId = user.getID();
+        assertNotNull(dbManager.getUser("deleted@test.com"));
+        assertTrue(sessionFactory.getCache().containsEntity(User.class, userId));
+
+        dbManager.deleteUser("deleted@test.com");
+
+        assertNull(dbManager.getUser("deleted@test.com"));
+        Session session = sessionFactory.openSession();
+        try {
+            assertNull(session.get(User.class, userId));
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testStaleWriteIsRejectedInsteadOfOverwriting() {
+        dbManager.persistEntity(generateGameSession(Instant.now().getEpochSecond()));
+        GameSession gameSession = dbManager.getGameSessionLatest();
+        Pair pair = gameSession.getAllPairs().get(0);
+
+        Session stale = sessionFactory.openSession();
+        try {
+            Transaction tx = stale.beginTransaction();
+            GameSession staleGameSession = stale.get(GameSession.class, gameSession.getID());
+            staleGameSession.setPenaltyToPair(stale.get(Pair.class, pair.getID()), Penalty.LATE);
+
+            // Committed while the other write still holds the version it loaded
+            dbManager.addPenaltyToPair(gameSession, pair.getID(), Penalty.ABSENT);
+            try {
+                tx.commit();
+                fail("A write against a stale version was committed");
+            } catch (StaleStateException e) {
+                tx.rollback();
+            }
+        } finally {
+            stale.close();
+        }
+
+        assertEquals(Penalty.ABSENT, dbManager.getGameSessionLatest().getPenalties().get(pair));
+    }
+
+    @Test
+    public void testMatchResultsOnlyMoveTheirScorecardsVersion() {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), true));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+        GameSession before = dbManager.getGameSessionLatest();
+        assertEquals(2, before.getScorecards().size());
+
+        Scorecard scored = before.getScorecards().get(0);
+        Map<Integer, Integer> rankings = new HashMap<>();
+        for (int i = 0; i < scored.getPairs().size(); i++) {
+            rankings.put(scored.getPairs().get(i).getID(), i + 1);
+        }
+        dbManager.setMatchResults(scored.getID(), rankings);
+
+        // So results on the other scorecard wouldn't have conflicted with these
+        GameSession after = dbManager.getGameSessionLatest();
+        assertEquals(before.getVersion(), after.getVersion());
+        assertTrue(after.getScorecards().get(0).getVersion()
+                > before.getScorecards().get(0).getVersion());
+        assertEquals(before.getScorecards().get(1).getVersion(),
+                after.getScorecards().get(1).getVersion());
+    }
+
+    @Test
+    public void testProjectedLadderFollowsResultsIntoTheRollover() {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), true));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+        // Built before any results, so they reach it one at a time
+        dbManager.getCachedJSONReorderPreview(DBManager.GameSessionVersion.CURRENT);
+
+        for (Scorecard scorecard : dbManager.getGameSessionLatest().getScorecards()) {
+            Map<Integer, Integer> rankings = new HashMap<>();
+            List<Pair> group = scorecard.getPairs();
+            for (int i = 0; i < group.size(); i++) {
+                rankings.put(group.get(i).getID(), group.size() - i);
+            }
+            dbManager.setMatchResults(scorecard.getID(), rankings);
+        }
+        dbManager.addPenaltyToPair(dbManager.getGameSessionLatest(),
+                pairs.get(1).getID(), Penalty.LATE);
+
+        GameSession latest = dbManager.getGameSessionLatest();
+        List<Pair> expected = latest.previewReorderedLadder(new VrcLadderReorderer());
+        assertEquals(dbManager.getJSONReorderPreview(latest), new String(
+                dbManager.getCachedJSONReorderPreview(DBManager.GameSessionVersion.CURRENT),
+                StandardCharsets.UTF_8));
+        GameSession reordered = dbManager.reorderLadder(latest);
+        assertEquals(expected, reordered.getReorderedLadder().getPairs());
+    }
+
+    @Test
+    public void testRollingOverAgainStartsNoSecondWeek() {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), true));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+        GameSession thisWeek = dbManager.getGameSessionLatest();
+        List<Pair> expected = thisWeek.previewReorderedLadder(new VrcLadderReorderer());
+
+        Integer nextWeekId = dbManager.rollOver(thisWeek.getID(), true);
+        assertNotNull(nextWeekId);
+        GameSession nextWeek = dbManager.getGameSessionLatest();
+        assertEquals((int) nextWeekId, nextWeek.getID());
+        assertEquals(expected, nextWeek.getAllPairs());
+        assertEquals(thisWeek.getID(), dbManager.getGameSessionPrevious().getID());
+
+        assertEquals(nextWeekId, dbManager.rollOver(thisWeek.getID(), true));
+        assertEquals((int) nextWeekId, dbManager.getGameSessionLatest().getID());
+        assertEquals(thisWeek.getID(), dbManager.getGameSessionPrevious().getID());
+    }
+
+    @Test
+    public void testSameRolloverReordersOnce() {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), true));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+        setResults(true);
+        int gameSessionId = dbManager.getGameSessionLatest().getID();
+
+        assertEquals(gameSessionId, (int) dbManager.rollOver(gameSessionId, false, "job"));
+        GameSession reordered = dbManager.getGameSessionLatest();
+        List<Pair> expected = reordered.getReorderedLadder().getPairs();
+        assertEquals("job", reordered.getRolloverId());
+
+        // As when the job is run again after a crash
+        assertEquals(gameSessionId, (int) dbManager.rollOver(gameSessionId, false, "job"));
+        GameSession again = dbManager.getGameSessionLatest();
+        assertEquals(reordered.getVersion(), again.getVersion());
+        assertEquals(expected, again.getReorderedLadder().getPairs());
+    }
+
+    @Test
+    public void testWinnerTakesWhatLastPlaceGives() {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), true));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+        Scorecard scorecard = dbManager.getGameSessionLatest().getScorecards().get(0);
+        List<Pair> group = scorecard.getPairs();
+        Map<Integer, Integer> rankings = new HashMap<>();
+        for (int i = 0; i < group.size(); i++) {
+            rankings.put(group.get(i).getID(), i + 1);
+        }
+        dbManager.setMatchResults(scorecard.getID(), rankings);
+
+        Map<Long, Rating> ratings = dbManager.getRatings();
+        Pair winner = group.get(0);
+        Pair last = group.get(group.size() - 1);
+        assertEquals(Rating.INITIAL_RATING + 1600, getRating(ratings, winner).getRating());
+        assertEquals(Rating.INITIAL_RATING - 1600, getRating(ratings, last).getRating());
+        assertEquals(1, getRating(ratings, winner).getGames());
+        for (Player player : winner.getPlayers()) {
+            assertEquals(Rating.INITIAL_RATING + 1600, ratings.get(
+                    Rating.key(Rating.OwnerType.PLAYER, player.getID())).getRating());
+        }
+    }
+
+    @Test
+    public void testRatingsAfterCorrectionsMatchARebuild() {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), true));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+        setResults(false);
+        // A group's results entered wrongly, then put right
+        Scorecard corrected = dbManager.getGameSessionLatest().getScorecards().get(1);
+        Map<Integer, Integer> rankings = new HashMap<>();
+        for (Pair pair : corrected.getPairs()) {
+            rankings.put(pair.getID(), 1);
+        }
+        dbManager.setMatchResults(corrected.getID(), rankings);
+        dbManager.rollOver(dbManager.getGameSessionLatest().getID(), true);
+        setResults(true);
+
+        Map<Long, Rating> incremental = new HashMap<>(dbManager.getRatings());
+        assertEquals(9 * 3, incremental.size());
+        assertTrue(dbManager.rebuildRatings());
+        assertEquals(incremental, new HashMap<>(dbManager.getRatings()));
+    }
+
+    // Each group of the latest GameSession finishes in ladder order, or the reverse
+    private void setResults(boolean reversed) {
+        for (Scorecard scorecard : dbManager.getGameSessionLatest().getScorecards()) {
+            Map<Integer, Integer> rankings = new HashMap<>();
+            List<Pair> group = scorecard.getPairs();
+            for (int i = 0; i < group.size(); i++) {
+                rankings.put(group.get(i).getID(), reversed ? group.size() - i : i + 1);
+            }
+            dbManager.setMatchResults(scorecard.getID(), rankings);
+        }
+    }
+
+    private static Rating getRating(Map<Long, Rating> ratings, Pair pair) {
+        return ratings.get(Rating.key(Rating.OwnerType.PAIR, pair.getID()));
+    }
+
+    @Test
+    public void testOptimalTimeSelectionPlacesGroupsOnCourts() {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), true));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+        dbManager.setTimeSelection(new OptimalTimeSelection(1));
+
+        // Both groups would rather play first, but there is one court
+        dbManager.setTimeSlot(pairs.get(0).getID(), Time.SLOT_1);
+        dbManager.setTimeSlot(pairs.get(5).getID(), Time.SLOT_1);
+
+        List<Scorecard> scorecards = dbManager.getGameSessionLatest().getScorecards();
+        assertEquals(Time.SLOT_1, scorecards.get(0).getTimeSlot());
+        assertEquals(Time.SLOT_2, scorecards.get(1).getTimeSlot());
+        assertEquals(1, scorecards.get(0).getCourt());
+        assertEquals(1, scorecards.get(1).getCourt());
+    }
+
+    @Test
+    public void testReorderPreviewIsCachedUntilAPenalty() {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), true));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+        GameSession before = dbManager.getGameSessionLatest();
+
+        byte[] preview = dbManager.getCachedJSONReorderPreview(
+                DBManager.GameSessionVersion.CURRENT);
+        Assert.assertSame(preview, dbManager.getCachedJSONReorderPreview(
+                DBManager.GameSessionVersion.CURRENT));
+        GameSession after = dbManager.getGameSessionLatest();
+        assertEquals(before.getVersion(), after.getVersion());
+        assertNull(after.getReorderedLadder());
+
+        dbManager.addPenaltyToPair(after, pairs.get(0).getID(), Penalty.MISSING);
+        String penalized = new String(dbManager.getCachedJSONReorderPreview(
+                DBManager.GameSessionVersion.CURRENT), StandardCharsets.UTF_8);
+        Assert.assertNotEquals(new String(preview, StandardCharsets.UTF_8), penalized);
+        assertTrue(penalized.contains("MISSING"));
+    }
+
+    @Test
+    public void testConcurrentWritesFromTwoManagersAreAllKept() throws Exception {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), false));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+        // Each with its own write lock and read model, as two servers would have
+        DBManager[] managers = {new DBManager(sessionFactory), new DBManager(sessionFactory)};
+
+        ExecutorService executor = Executors.newFixedThreadPool(managers.length);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int i = 0; i < managers.length; i++) {
+            DBManager manager = managers[i];
+            List<Pair> ownPairs = pairs.subList(i * 8, (i + 1) * 8);
+            writes.add(executor.submit(() -> {
+                for (Pair pair : ownPairs) {
+                    manager.addPenaltyToPair(manager.getGameSessionLatest(), pair.getID(),
+                            Penalty.LATE);
+                }
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+        executor.shutdown();
+
+        Map<Pair, Penalty> penalties = new DBManager(sessionFactory)
+                .getGameSessionLatest().getPenalties();
+        assertEquals(pairs.size(), penalties.size());
+    }
 }
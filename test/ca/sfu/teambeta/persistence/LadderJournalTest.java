@@ -0,0 +1,232 @@
+package ca.sfu.teambeta.persistence;
+
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.sfu.teambeta.core.Ladder;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Penalty;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Scorecard;
+import ca.sfu.teambeta.core.Time;
+import ca.sfu.teambeta.logic.GameSession;
+import ca.sfu.teambeta.logic.OptimalTimeSelection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LadderJournalTest {
+    private static final int PAIRS = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SessionFactory sessionFactory;
+    private DBManager dbManager;
+    private LadderJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        sessionFactory = DBManager.getH2MemorySession();
+        dbManager = new DBManager(sessionFactory);
+        journal = new LadderJournal(folder.getRoot().toPath());
+        dbManager.setLadderJournal(journal);
+        dbManager.persistEntity(new GameSession(new Ladder(newPairs("Pair", PAIRS))));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+        sessionFactory.close();
+    }
+
+    @Test
+    public void testRebuildMatchesDatabase() {
+        makeChanges();
+        assertRebuildMatchesDatabase();
+    }
+
+    @Test
+    public void testCompactionFoldsJournalIntoSnapshot() throws Exception {
+        makeChanges();
+        assertTrue(dbManager.compactLadderJournal());
+
+        assertTrue(journal.readEvents().isEmpty());
+        assertEquals(journal.getLastSequence(), journal.readSnapshot().getSequence());
+        assertRebuildMatchesDatabase();
+
+        // Events after a compaction replay on top of the new snapshot
+        GameSession gameSession = dbManager.getGameSessionLatest();
+        int pairId = gameSession.getAllPairs().get(0).getID();
+        dbManager.addPenaltyToPair(gameSession, pairId, Penalty.ABSENT);
+        dbManager.setTimeSlot(pairId, Time.SLOT_2);
+        assertEquals(2, journal.readEvents().size());
+        assertRebuildMatchesDatabase();
+    }
+
+    @Test
+    public void testReopenedJournalReplaysFromDisk() throws Exception {
+        makeChanges();
+        long lastSequence = journal.getLastSequence();
+        int events = journal.getEventsSinceSnapshot();
+        journal.close();
+
+        journal = new LadderJournal(folder.getRoot().toPath());
+        dbManager.setLadderJournal(journal);
+        assertEquals(lastSequence, journal.getLastSequence());
+        assertEquals(events, journal.getEventsSinceSnapshot());
+        assertRebuildMatchesDatabase();
+    }
+
+    @Test
+    public void testTornLastLineIsCutOffOnOpen() throws Exception {
+        makeChanges();
+        long lastSequence = journal.getLastSequence();
+        int events = journal.getEventsSinceSnapshot();
+        journal.close();
+        Path journalFile = folder.getRoot().toPath().resolve("journal.log");
+        Files.write(journalFile, "{\"sequence\":".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        journal = new LadderJournal(folder.getRoot().toPath());
+        dbManager.setLadderJournal(journal);
+        assertEquals(lastSequence, journal.getLastSequence());
+        assertEquals(events, journal.getEventsSinceSnapshot());
+        assertRebuildMatchesDatabase();
+
+        // Appends start on a line of their own again
+        GameSession gameSession = dbManager.getGameSessionLatest();
+        dbManager.addPenaltyToPair(gameSession, gameSession.getAllPairs().get(0).getID(),
+                Penalty.ABSENT);
+        assertEquals(events + 1, journal.readEvents().size());
+        assertRebuildMatchesDatabase();
+    }
+
+    @Test
+    public void testCompactionKeepsOnlyLiveGameSessions() throws Exception {
+        int firstId = dbManager.getGameSessionLatest().getID();
+        makeChanges();
+        for (int week = 1; week <= 2; week++) {
+            dbManager.persistEntity(new GameSession(new Ladder(newPairs("Week" + week, PAIRS))));
+        }
+        makeChanges();
+
+        assertTrue(dbManager.compactLadderJournal());
+        List<LadderSnapshot> states = journal.readSnapshot().getGameSessions();
+        assertEquals(2, states.size());
+        for (LadderSnapshot state : states) {
+            assertNotEquals(firstId, state.getGameSessionId());
+        }
+        assertNull(dbManager.rebuildGameSession(firstId));
+        assertRebuildMatchesDatabase();
+    }
+
+    @Test
+    public void testGameSessionSavedBeforeJournalIsRecordedOnFirstWrite() throws Exception {
+        LadderJournal otherJournal = new LadderJournal(folder.newFolder().toPath());
+        dbManager.setLadderJournal(otherJournal);
+        GameSession gameSession = dbManager.getGameSessionLatest();
+        assertNull(dbManager.rebuildGameSession(gameSession.getID()));
+
+        dbManager.setPairActive(gameSession, gameSession.getAllPairs().get(1).getID());
+
+        List<LadderEvent> events = otherJournal.readEvents();
+        assertEquals(2, events.size());
+        assertEquals(LadderEvent.Type.SNAPSHOT, events.get(0).getType());
+        assertEquals(LadderEvent.Type.SET_ACTIVE, events.get(1).getType());
+        assertRebuildMatchesDatabase();
+        otherJournal.close();
+    }
+
+    @Test
+    public void testCsvImportIsJournaledAsSnapshot() throws Exception {
+        GameSession gameSession = dbManager.getGameSessionLatest();
+        List<Pair> reversed = new ArrayList<>(gameSession.getAllPairs());
+        Collections.reverse(reversed);
+        StringBuilder csv = new StringBuilder();
+        for (Pair pair : reversed) {
+            csv.append(",,,,,,,").append(pair.getID()).append("\n");
+        }
+
+        assertTrue(dbManager.importLadderFromCsv(new InputStreamReader(
+                new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)))));
+
+        List<LadderEvent> events = journal.readEvents();
+        assertEquals(LadderEvent.Type.SNAPSHOT, events.get(events.size() - 1).getType());
+        assertRebuildMatchesDatabase();
+    }
+
+    @Test
+    public void testReplayKeepsCourtsOfConfiguredTimeSelection() throws Exception {
+        dbManager.setTimeSelection(new OptimalTimeSelection(1));
+        makeChanges();
+        // Replayed from the snapshot, which groups the GameSession again
+        assertTrue(dbManager.compactLadderJournal());
+
+        GameSession latest = dbManager.getGameSessionLatest();
+        GameSession rebuilt = dbManager.rebuildGameSession(latest.getID());
+        List<Scorecard> expected = latest.getScorecards();
+        List<Scorecard> actual = rebuilt.getScorecards();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimeSlot(), actual.get(i).getTimeSlot());
+            assertEquals(expected.get(i).getCourt(), actual.get(i).getCourt());
+            assertTrue(actual.get(i).getCourt() > 0);
+        }
+    }
+
+    private void makeChanges() {
+        GameSession gameSession = dbManager.getGameSessionLatest();
+        List<Pair> pairs = gameSession.getAllPairs();
+
+        dbManager.setPairActive(gameSession, pairs.get(1).getID());
+        dbManager.setPairInactive(gameSession, pairs.get(2).getID());
+        dbManager.addPair(gameSession, newPairs("Added", 1).get(0), 3);
+        dbManager.addPair(gameSession, newPairs("Appended", 1).get(0));
+        dbManager.movePair(gameSession, pairs.get(0).getID(), 5);
+        dbManager.addPenaltyToPair(gameSession, pairs.get(4).getID(), Penalty.LATE);
+        dbManager.setTimeSlot(pairs.get(6).getID(), Time.SLOT_1);
+        dbManager.removePair(pairs.get(9).getID());
+
+        Scorecard scorecard = dbManager.getGameSessionLatest().getScorecards().get(0);
+        Map<Integer, Integer> rankings = new HashMap<>();
+        List<Pair> scorecardPairs = scorecard.getPairs();
+        for (int i = 0; i < scorecardPairs.size(); i++) {
+            rankings.put(scorecardPairs.get(i).getID(), scorecardPairs.size() - i);
+        }
+        dbManager.setMatchResults(scorecard.getID(), rankings);
+    }
+
+    private void assertRebuildMatchesDatabase() {
+        GameSession latest = dbManager.getGameSessionLatest();
+        GameSession rebuilt = dbManager.rebuildGameSession(latest.getID());
+        assertEquals(LadderSnapshot.of(latest), LadderSnapshot.of(latest.getID(), rebuilt));
+    }
+
+    private static List<Pair> newPairs(String name, int count) {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            pairs.add(new Pair(new Player(name + i, "First"), new Player(name + i, "Second"),
+                    i % 3 != 0));
+        }
+        return pairs;
+    }
+}
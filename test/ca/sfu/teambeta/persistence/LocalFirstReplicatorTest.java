@@ -0,0 +1,174 @@
+package ca.sfu.teambeta.persistence;
+
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import ca.sfu.teambeta.core.Ladder;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.User;
+import ca.sfu.teambeta.logic.GameSession;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocalFirstReplicatorTest {
+    private static final long REMOTE_LATENCY_MILLIS = 5;
+    private static final long RETRY_MILLIS = 50;
+
+    private SessionFactory localFactory;
+    private SessionFactory remoteFactory;
+    private DBManager dbManager;
+
+    @Before
+    public void setUp() {
+        localFactory = DBManager.getH2MemorySession();
+        remoteFactory = DBManager.getH2MemorySession("remote", REMOTE_LATENCY_MILLIS);
+        dbManager = new DBManager(localFactory);
+    }
+
+    @After
+    public void tearDown() {
+        LatencyInjectingDriver.setUnreachable(false);
+        dbManager.disableReplication();
+        remoteFactory.close();
+        localFactory.close();
+    }
+
+    @Test
+    public void testCommittedWritesReachRemote() throws Exception {
+        dbManager.persistEntity(new GameSession(new Ladder(newPairs(8))));
+        dbManager.enableReplication(() -> remoteFactory, RETRY_MILLIS);
+        awaitTrue(() -> getLocalLadder().equals(getRemoteLadder()));
+
+        GameSession gameSession = dbManager.getGameSessionLatest();
+        int activeId = gameSession.getAllPairs().get(0).getID();
+        int movedId = gameSession.getAllPairs().get(1).getID();
+        dbManager.setPairActive(gameSession, activeId);
+        dbManager.movePair(dbManager.getGameSessionLatest(), movedId, 5);
+
+        awaitTrue(() -> getLocalLadder().equals(getRemoteLadder()));
+        DBManager remote = getRemote();
+        assertTrue(remote.isActivePair(remote.getGameSessionLatest(), activeId));
+        assertEquals(dbManager.getGameSessionLatest().getVersion(),
+                remote.getGameSessionLatest().getVersion());
+    }
+
+    @Test
+    public void testLocalWritesSucceedWhileRemoteIsUnreachable() throws Exception {
+        dbManager.persistEntity(new GameSession(new Ladder(newPairs(8))));
+        dbManager.enableReplication(() -> remoteFactory, RETRY_MILLIS);
+        LocalFirstReplicator replicator = dbManager.getReplicator();
+        awaitTrue(() -> getLocalLadder().equals(getRemoteLadder()));
+
+        LatencyInjectingDriver.setUnreachable(true);
+        int pairId = dbManager.getGameSessionLatest().getAllPairs().get(7).getID();
+        dbManager.movePair(dbManager.getGameSessionLatest(), pairId, 0);
+        dbManager.addNewUser(new User("offline@example.com", "hash"));
+
+        assertEquals(pairId, dbManager.getGameSessionLatest().getAllPairs().get(0).getID());
+        awaitTrue(() -> replicator.getFailedAttemptCount() > 0);
+        assertTrue(replicator.isReconcileNeeded());
+
+        LatencyInjectingDriver.setUnreachable(false);
+        awaitTrue(() -> !replicator.isReconcileNeeded() && replicator.getPendingCount() == 0);
+        assertEquals(getLocalLadder(), getRemoteLadder());
+        assertNotNull(getRemote().getUser("offline@example.com"));
+    }
+
+    @Test
+    public void testReconcileUndoesRemoteOnlyChanges() throws Exception {
+        dbManager.persistEntity(new GameSession(new Ladder(newPairs(4))));
+        dbManager.addNewUser(new User("local@example.com", "hash"));
+        DBManager remote = new DBManager(remoteFactory);
+        remote.addNewUser(new User("stray@example.com", "hash"));
+        remote.addNewUser(new User("other@example.com", "hash"));
+
+        dbManager.enableReplication(() -> remoteFactory, RETRY_MILLIS);
+        LocalFirstReplicator replicator = dbManager.getReplicator();
+        awaitTrue(() -> replicator.getReconcileCount() > 0);
+
+        assertNotNull(getRemote().getUser("local@example.com"));
+        assertNull(getRemote().getUser("stray@example.com"));
+        assertNull(getRemote().getUser("other@example.com"));
+        assertEquals(1, replicator.getDeletedRowCount());
+        assertEquals(getLocalLadder(), getRemoteLadder());
+    }
+
+    @Test
+    public void testEmptyLocalDatabaseIsFilledFromRemote() throws Exception {
+        new DBManager(remoteFactory).persistEntity(new GameSession(new Ladder(newPairs(6))));
+
+        dbManager.enableReplication(() -> remoteFactory, RETRY_MILLIS);
+        awaitTrue(() -> dbManager.getGameSessionLatest() != null);
+        assertEquals(getRemoteLadder(), getLocalLadder());
+
+        // New rows are numbered after the copied ones, here and on the remote
+        Pair added = new Pair(new Player("New", "Player"), new Player("Other", "Player"));
+        dbManager.addPairToLatestLadder(added);
+        assertEquals(7, added.getID());
+        awaitTrue(() -> getLocalLadder().equals(getRemoteLadder()));
+    }
+
+    @Test
+    public void testEveryRoundTripIsDelayed() throws Exception {
+        String url = LatencyInjectingDriver.wrapUrl("jdbc:h2:mem:latency", 100);
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            long roundTrips = LatencyInjectingDriver.getRoundTripCount();
+            long start = System.nanoTime();
+            ResultSet result = statement.executeQuery("SELECT 1");
+
+            assertTrue(System.nanoTime() - start >= 100 * 1000000L);
+            assertEquals(roundTrips + 1, LatencyInjectingDriver.getRoundTripCount());
+            assertTrue(result.next());
+        }
+    }
+
+    private static List<Pair> newPairs(int count) {
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), false));
+        }
+        return pairs;
+    }
+
+    private String getLocalLadder() {
+        GameSession gameSession = dbManager.getGameSessionLatest();
+        return gameSession == null ? "" : dbManager.getJSONLadder(gameSession);
+    }
+
+    private String getRemoteLadder() {
+        DBManager remote = getRemote();
+        GameSession gameSession = remote.getGameSessionLatest();
+        return gameSession == null ? null : remote.getJSONLadder(gameSession);
+    }
+
+    // Rows are written to the remote past its second-level cache, so each look
+    // at it starts with an empty one
+    private DBManager getRemote() {
+        remoteFactory.getCache().evictAllRegions();
+        return new DBManager(remoteFactory);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,121 @@
+package ca.sfu.teambeta.persistence;
+
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import ca.sfu.teambeta.core.Ladder;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.logic.GameSession;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RolloverJobsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SessionFactory sessionFactory;
+    private DBManager dbManager;
+    private RolloverJobs rolloverJobs;
+    private final AtomicInteger afterRolloverCount = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        sessionFactory = DBManager.getH2MemorySession();
+        dbManager = new DBManager(sessionFactory);
+        List<Pair> pairs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), true));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+    }
+
+    @After
+    public void tearDown() {
+        if (rolloverJobs != null) {
+            rolloverJobs.close();
+        }
+        sessionFactory.close();
+    }
+
+    @Test
+    public void testJobStartsNextWeek() throws Exception {
+        rolloverJobs = new RolloverJobs(dbManager, null, afterRolloverCount::incrementAndGet);
+        GameSession latest = dbManager.getGameSessionLatest();
+
+        RolloverJobs.Job job = rolloverJobs.submit(latest.getID(), true);
+        awaitTrue(() -> rolloverJobs.getJob(job.getId()).getState() == RolloverJobs.State.DONE);
+
+        RolloverJobs.Job done = rolloverJobs.getJob(job.getId());
+        assertEquals(1.0, done.getProgress(), 0);
+        assertNotEquals(latest.getID(), (int) done.getResultGameSessionId());
+        assertEquals((int) done.getResultGameSessionId(), dbManager.getGameSessionLatest().getID());
+        assertEquals(1, afterRolloverCount.get());
+        assertNull(rolloverJobs.getJob("no such job"));
+    }
+
+    @Test
+    public void testAskingAgainWhileRunningReturnsTheSameJob() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        rolloverJobs = new RolloverJobs(dbManager, null, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        int gameSessionId = dbManager.getGameSessionLatest().getID();
+
+        RolloverJobs.Job first = rolloverJobs.submit(gameSessionId, true);
+        awaitTrue(() -> rolloverJobs.getJob(first.getId()).getResultGameSessionId() != null);
+        RolloverJobs.Job second = rolloverJobs.submit(gameSessionId, true);
+        release.countDown();
+
+        assertEquals(first.getId(), second.getId());
+        awaitTrue(() -> rolloverJobs.getJob(first.getId()).getState() == RolloverJobs.State.DONE);
+    }
+
+    @Test
+    public void testUnfinishedJobIsRunAgainOnStart() throws Exception {
+        int gameSessionId = dbManager.getGameSessionLatest().getID();
+        Path file = folder.getRoot().toPath().resolve("rollover-jobs.json");
+        // As left by a server stopped partway through the rollover
+        String saved = "[{\"id\":\"cut-short\",\"gameSessionId\":" + gameSessionId
+                + ",\"startNextWeek\":true,\"state\":\"RUNNING\"}]";
+        Files.write(file, saved.getBytes(StandardCharsets.UTF_8));
+
+        rolloverJobs = new RolloverJobs(dbManager, file, afterRolloverCount::incrementAndGet);
+        awaitTrue(() -> rolloverJobs.getJob("cut-short").getState() == RolloverJobs.State.DONE);
+
+        int nextWeekId = dbManager.getGameSessionLatest().getID();
+        assertNotEquals(gameSessionId, nextWeekId);
+        assertEquals(nextWeekId, (int) rolloverJobs.getJob("cut-short").getResultGameSessionId());
+        assertTrue(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)
+                .contains("\"DONE\""));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,217 @@
+package ca.sfu.teambeta.persistence;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import ca.sfu.teambeta.core.Ladder;
+import ca.sfu.teambeta.core.Pair;
+import ca.sfu.teambeta.core.Player;
+import ca.sfu.teambeta.core.Time;
+import ca.sfu.teambeta.logic.GameSession;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindQueueTest {
+    private static final long NEVER_MILLIS = 60000;
+
+    private SessionFactory sessionFactory;
+    private DBManager dbManager;
+    private List<Pair> pairs = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        sessionFactory = DBManager.getH2MemorySession();
+        dbManager = new DBManager(sessionFactory);
+        for (int i = 0; i < 8; i++) {
+            pairs.add(new Pair(new Player("First" + i, "Player"),
+                    new Player("Second" + i, "Player"), false));
+        }
+        dbManager.persistEntity(new GameSession(new Ladder(pairs)));
+    }
+
+    @After
+    public void tearDown() {
+        dbManager.disableWriteBehind();
+        sessionFactory.close();
+    }
+
+    @Test
+    public void testChangeIsReadBeforeItIsCommitted() {
+        dbManager.enableWriteBehind(100, 100, NEVER_MILLIS);
+        int pairId = pairs.get(0).getID();
+
+        assertTrue(dbManager.setPairActive(dbManager.getGameSessionLatest(), pairId));
+
+        assertTrue(dbManager.isActivePair(dbManager.getGameSessionLatest(), pairId));
+        assertFalse(getCommittedActivePairs().contains(pairId));
+        assertEquals(1, dbManager.getWriteBehindQueue().getDepth());
+    }
+
+    @Test
+    public void testDisableFlushesQueue() {
+        dbManager.enableWriteBehind(100, 100, NEVER_MILLIS);
+        WriteBehindQueue queue = dbManager.getWriteBehindQueue();
+        dbManager.setPairActive(dbManager.getGameSessionLatest(), pairs.get(0).getID());
+        dbManager.setTimeSlot(pairs.get(0).getID(), Time.SLOT_2);
+
+        dbManager.disableWriteBehind();
+
+        assertTrue(getCommittedActivePairs().contains(pairs.get(0).getID()));
+        assertEquals(0, queue.getDepth());
+        assertEquals(1, queue.getFlushCount());
+        assertEquals(2, queue.getFlushedEventCount());
+        assertEquals(Time.SLOT_2, dbManager.getGameSessionLatest().getTimeSlots()
+                .get(pairs.get(0)));
+    }
+
+    @Test
+    public void testFullBatchIsFlushedInOneTransaction() throws Exception {
+        dbManager.enableWriteBehind(100, 3, NEVER_MILLIS);
+        WriteBehindQueue queue = dbManager.getWriteBehindQueue();
+        for (int i = 0; i < 3; i++) {
+            dbManager.setPairActive(dbManager.getGameSessionLatest(), pairs.get(i).getID());
+        }
+
+        awaitTrue(() -> queue.getFlushCount() == 1);
+        assertEquals(3, queue.getFlushedEventCount());
+        assertEquals(3, getCommittedActivePairs().size());
+    }
+
+    @Test
+    public void testBatchIsFlushedAfterMaxDelay() throws Exception {
+        dbManager.enableWriteBehind(100, 100, 50);
+        WriteBehindQueue queue = dbManager.getWriteBehindQueue();
+        dbManager.setPairActive(dbManager.getGameSessionLatest(), pairs.get(0).getID());
+
+        awaitTrue(() -> queue.getFlushCount() == 1);
+        assertTrue(getCommittedActivePairs().contains(pairs.get(0).getID()));
+    }
+
+    @Test
+    public void testSynchronousWriteCommitsQueueFirst() {
+        dbManager.enableWriteBehind(100, 100, NEVER_MILLIS);
+        int activePairId = pairs.get(1).getID();
+        int movedPairId = pairs.get(0).getID();
+        dbManager.setPairActive(dbManager.getGameSessionLatest(), activePairId);
+
+        dbManager.movePair(dbManager.getGameSessionLatest(), movedPairId, 3);
+
+        assertEquals(0, dbManager.getWriteBehindQueue().getDepth());
+        assertTrue(getCommittedActivePairs().contains(activePairId));
+        assertEquals(movedPairId,
+                dbManager.getGameSessionLatest().getAllPairs().get(3).getID());
+    }
+
+    @Test
+    public void testFullQueueBlocksUntilFlushed() throws Exception {
+        dbManager.enableWriteBehind(2, 100, 300);
+        WriteBehindQueue queue = dbManager.getWriteBehindQueue();
+
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        writer.submit(() -> {
+            for (int i = 0; i < 3; i++) {
+                dbManager.setPairActive(dbManager.getGameSessionLatest(), pairs.get(i).getID());
+            }
+        }).get(30, TimeUnit.SECONDS);
+        writer.shutdown();
+
+        // The third write had to wait for the first two to be flushed
+        assertEquals(1, queue.getBlockedCount());
+        awaitTrue(() -> queue.getFlushCount() >= 1);
+        dbManager.disableWriteBehind();
+        assertEquals(3, getCommittedActivePairs().size());
+    }
+
+    @Test
+    public void testFailedBatchIsKeptAndRetried() throws Exception {
+        List<List<Integer>> attempts = new ArrayList<>();
+        WriteBehindQueue[] holder = new WriteBehindQueue[1];
+        WriteBehindQueue queue = new WriteBehindQueue(100, 2, NEVER_MILLIS, () -> {
+            List<Integer> ids = new ArrayList<>();
+            holder[0].nextBatch().forEach(event -> ids.addAll(event.getPairIds()));
+            attempts.add(ids);
+            holder[0].recordFlush(0, attempts.size() > 1);
+        });
+        holder[0] = queue;
+        try {
+            for (int i = 1; i <= 3; i++) {
+                queue.offer(LadderEvent.removePair(i), () -> true);
+            }
+
+            awaitTrue(() -> queue.getFlushCount() == 1);
+            assertEquals(1, queue.getFailedFlushCount());
+            assertEquals(Arrays.asList(1, 2), attempts.get(0));
+            assertEquals(Arrays.asList(1, 2), attempts.get(1));
+            assertEquals(1, queue.getDepth());
+        } finally {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void testEventThatNeverCommitsIsGivenUpOn() throws Exception {
+        WriteBehindQueue[] holder = new WriteBehindQueue[1];
+        WriteBehindQueue queue = new WriteBehindQueue(100, 2, NEVER_MILLIS, () -> {
+            boolean bad = false;
+            for (LadderEvent event : holder[0].nextBatch()) {
+                bad |= event.getPairIds().contains(2);
+            }
+            holder[0].recordFlush(0, !bad);
+        });
+        holder[0] = queue;
+        try {
+            for (int i = 1; i <= 4; i++) {
+                queue.offer(LadderEvent.removePair(i), () -> true);
+            }
+
+            // 1 on its own once its batch kept failing, then 3 and 4 together
+            awaitTrue(() -> queue.getDepth() == 0);
+            assertEquals(2, queue.getFlushCount());
+            assertEquals(3, queue.getFlushedEventCount());
+            assertEquals(1, queue.getDeadLetters().size());
+            assertEquals(new HashSet<>(Arrays.asList(2)),
+                    queue.getDeadLetters().get(0).getPairIds());
+        } finally {
+            queue.close();
+        }
+    }
+
+    // Straight from the database, past the read model
+    private Set<Integer> getCommittedActivePairs() {
+        Session session = sessionFactory.openSession();
+        try {
+            GameSession gameSession = session.get(GameSession.class,
+                    dbManager.getGameSessionLatest().getID());
+            Set<Integer> ids = new HashSet<>();
+            for (Pair pair : gameSession.getActivePairSet()) {
+                ids.add(pair.getID());
+            }
+            return ids;
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,50 @@
+package ca.sfu.teambeta.simulation;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SeasonSimulatorTest {
+    private SimulationParameters smallSeason() {
+        SimulationParameters parameters = new SimulationParameters();
+        parameters.setPairs(30);
+        parameters.setWeeks(12);
+        return parameters;
+    }
+
+    @Test
+    public void testSameStatisticsOnAnyNumberOfThreads() {
+        SeasonSimulator simulator = new SeasonSimulator(smallSeason(), 7);
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool several = new ForkJoinPool(4);
+        try {
+            SeasonStatistics first = simulator.run(9, single);
+            SeasonStatistics second = simulator.run(9, several);
+
+            assertEquals(9, first.getSeasons());
+            assertEquals(first.toString(), second.toString());
+            assertEquals(first.getPositionVolatility(), second.getPositionVolatility(), 0);
+            assertEquals(first.getSkillCorrelation(), second.getSkillCorrelation(), 0);
+        } finally {
+            single.shutdown();
+            several.shutdown();
+        }
+    }
+
+    @Test
+    public void testLessLuckOrdersTheLadderBySkill() {
+        SimulationParameters skillful = smallSeason();
+        skillful.setResultNoise(0.05);
+        SimulationParameters lucky = smallSeason();
+        lucky.setResultNoise(5);
+
+        SeasonStatistics bySkill = new SeasonSimulator(skillful, 3).run(20);
+        SeasonStatistics byLuck = new SeasonSimulator(lucky, 3).run(20);
+
+        assertTrue(bySkill.getSkillCorrelation() > byLuck.getSkillCorrelation());
+        assertEquals(12 * 20, bySkill.getWeeksPlayed() + bySkill.getWeeksCancelled());
+    }
+}